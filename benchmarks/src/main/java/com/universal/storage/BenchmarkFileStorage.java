@@ -0,0 +1,137 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.storage.settings.UniversalSettings;
+import com.universal.util.FileUtil;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class is a minimal file system storage used by the benchmarks, the real file system provider 
+ * lives within its own project.  The files are stored under the settings' root.
+ */
+public class BenchmarkFileStorage extends UniversalStorage {
+    /**
+     * This constructor instantiates a new BenchmarkFileStorage.
+     * 
+     * @param settings for this new storage instance.
+     */
+    public BenchmarkFileStorage(UniversalSettings settings) {
+        super(settings);
+    }
+
+    /**
+     * This method simulates the round-trip of a remote provider, the file system doesn't wait.
+     */
+    protected void roundTrip() {
+    }
+
+    void storeFile(File file, String path) throws UniversalIOException {
+        triggerOnStoreFileListeners();
+        roundTrip();
+
+        String remotePath = FileUtil.join(path, file.getName());
+        File target = resolveRootFile(remotePath);
+        try {
+            target.getParentFile().mkdirs();
+            FileUtil.copy(file, target);
+        } catch (IOException e) {
+            throw error(e);
+        }
+
+        triggerOnFileStoredListeners(new UniversalStorageData(file.getName(), target.toURI().toString(), 
+                    target.getAbsolutePath(), remotePath));
+    }
+
+    void storeFile(String path) throws UniversalIOException {
+        storeFile(new File(path), null);
+    }
+
+    void storeFile(String path, String targetPath) throws UniversalIOException {
+        storeFile(new File(path), targetPath);
+    }
+
+    void removeFile(String path) throws UniversalIOException {
+        triggerOnRemoveFileListeners();
+        roundTrip();
+        resolveRootFile(path).delete();
+        triggerOnFileRemovedListeners();
+    }
+
+    void createFolder(String path) throws UniversalIOException {
+        triggerOnCreateFolderListeners();
+        roundTrip();
+
+        File folder = resolveRootFile(path);
+        folder.mkdirs();
+        triggerOnFolderCreatedListeners(new UniversalStorageData(folder.getName(), folder.toURI().toString(), 
+                    folder.getAbsolutePath(), path));
+    }
+
+    void removeFolder(String path) throws UniversalIOException {
+        triggerOnRemoveFolderListeners();
+        roundTrip();
+        resolveRootFile(path).delete();
+        triggerOnFolderRemovedListeners();
+    }
+
+    File retrieveFile(String path) throws UniversalIOException {
+        roundTrip();
+
+        File target = new File(this.settings.getTmp() + FileUtil.getName(path));
+        try {
+            FileUtil.copy(resolveRootFile(path), target);
+        } catch (IOException e) {
+            throw error(e);
+        }
+
+        return target;
+    }
+
+    InputStream retrieveFileAsStream(String path) throws UniversalIOException {
+        roundTrip();
+
+        try {
+            return new FileInputStream(resolveRootFile(path));
+        } catch (IOException e) {
+            throw error(e);
+        }
+    }
+
+    void clean() throws UniversalIOException {
+    }
+
+    void wipe() throws UniversalIOException {
+    }
+
+    private UniversalIOException error(IOException e) {
+        UniversalIOException error = new UniversalIOException(e.getMessage());
+        triggerOnErrorListeners(error);
+        return error;
+    }
+}
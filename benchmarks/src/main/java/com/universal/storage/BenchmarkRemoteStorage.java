@@ -0,0 +1,49 @@
+package com.universal.storage;
+
+import com.universal.storage.settings.UniversalSettings;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class is an in-process stand-in of a remote provider (i.e: ftp or s3), every operation waits 
+ * a fixed round-trip before touching the local files.  The round-trip is configured through the 
+ * universal.benchmark.latency.micros jvm parameter (500 by default).
+ */
+public class BenchmarkRemoteStorage extends BenchmarkFileStorage {
+    private final long latencyNanos = Long.getLong("universal.benchmark.latency.micros", 500) * 1000;
+
+    /**
+     * This constructor instantiates a new BenchmarkRemoteStorage.
+     * 
+     * @param settings for this new storage instance.
+     */
+    public BenchmarkRemoteStorage(UniversalSettings settings) {
+        super(settings);
+    }
+
+    protected void roundTrip() {
+        LockSupport.parkNanos(this.latencyNanos);
+    }
+}
@@ -0,0 +1,146 @@
+package com.universal.storage;
+
+import com.universal.storage.settings.UniversalSettings;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import org.json.JSONObject;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class provides the fixtures shared by the benchmarks: temporary roots, settings and files.
+ */
+public class BenchmarkSupport {
+    /**
+     * The storage kinds measured by the benchmarks.
+     */
+    public static final String FILE_SYSTEM = "file.system";
+    public static final String REMOTE = "remote";
+
+    /**
+     * This method creates a new folder with a root and a tmp folder within the java tmp folder.
+     */
+    public static File newWorkspace() throws IOException {
+        File workspace = Files.createTempDirectory("universal-benchmark").toFile();
+        new File(workspace, "root").mkdirs();
+        new File(workspace, "tmp").mkdirs();
+        return workspace;
+    }
+
+    /**
+     * This method writes a settings file within the workspace and loads it.  The remote kind uses 
+     * the ftp provider, so the core treats it as a remote provider.
+     * 
+     * @param workspace created by newWorkspace.
+     * @param kind is either FILE_SYSTEM or REMOTE.
+     * @param extra is merged within the settings, i.e: the events block.
+     */
+    public static UniversalSettings newSettings(File workspace, String kind, JSONObject extra) throws Exception {
+        JSONObject json = new JSONObject();
+        json.put("root", new File(workspace, "root").getAbsolutePath());
+        json.put("tmp", new File(workspace, "tmp").getAbsolutePath());
+
+        if (REMOTE.equals(kind)) {
+            JSONObject ftp = new JSONObject();
+            ftp.put("ftp_user", "benchmark");
+            ftp.put("ftp_password", "benchmark");
+            ftp.put("ftp_host", "localhost");
+            ftp.put("ftp_port", 21);
+            ftp.put("ftp_passive", true);
+
+            json.put("provider", "ftp");
+            json.put("ftp", ftp);
+        } else {
+            json.put("provider", "file.system");
+        }
+
+        if (extra != null) {
+            for (String key : JSONObject.getNames(extra)) {
+                json.put(key, extra.get(key));
+            }
+        }
+
+        File file = new File(workspace, "settings-" + System.nanoTime() + ".json");
+        Files.write(file.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+        return new UniversalSettings(file);
+    }
+
+    /**
+     * This method creates a new storage of the passed kind.
+     * 
+     * @param settings created by newSettings.
+     * @param kind is either FILE_SYSTEM or REMOTE.
+     */
+    public static UniversalStorage newStorage(UniversalSettings settings, String kind) {
+        return REMOTE.equals(kind) ? new BenchmarkRemoteStorage(settings) : new BenchmarkFileStorage(settings);
+    }
+
+    /**
+     * This method creates a file filled with random bytes.
+     * 
+     * @param folder of the new file.
+     * @param name of the new file.
+     * @param size in bytes.
+     */
+    public static File newFile(File folder, String name, long size) throws IOException {
+        File file = new File(folder, name);
+        byte[] chunk = new byte[64 * 1024];
+        new Random(size).nextBytes(chunk);
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            long remaining = size;
+            while (remaining > 0) {
+                int length = (int) Math.min(chunk.length, remaining);
+                out.write(chunk, 0, length);
+                remaining -= length;
+            }
+        } finally {
+            out.close();
+        }
+
+        return file;
+    }
+
+    /**
+     * This method removes the workspace and its content.
+     * 
+     * @param file to be removed.
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,101 @@
+package com.universal.storage;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class benchmarks the overhead added by the listeners to every operation, both with synchronous 
+ * and async dispatching.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ListenerBenchmark {
+    @Param({"0", "1", "8"})
+    public int listeners;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    private File workspace;
+    private UniversalStorage storage;
+    private UniversalStorageData data;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        JSONObject events = new JSONObject();
+        events.put("async", this.async);
+        events.put("policy", "drop");
+
+        JSONObject extra = new JSONObject();
+        extra.put("events", events);
+
+        this.workspace = BenchmarkSupport.newWorkspace();
+        this.storage = BenchmarkSupport.newStorage(BenchmarkSupport.newSettings(this.workspace, 
+                    BenchmarkSupport.FILE_SYSTEM, extra), BenchmarkSupport.FILE_SYSTEM);
+        this.data = new UniversalStorageData("name", "link", "id", "path");
+
+        for (int i = 0; i < this.listeners; i++) {
+            this.storage.registerListener(new UniversalStorageListenerAdapter() {
+                public void onFileStored(UniversalStorageData data) {
+                    data.getRemotePath();
+                }
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.storage.close();
+        BenchmarkSupport.delete(this.workspace);
+    }
+
+    /**
+     * Cost of the events triggered by a store: onStoreFile and onFileStored.
+     */
+    @Benchmark
+    public void storeEvents() {
+        this.storage.triggerOnStoreFileListeners();
+        this.storage.triggerOnFileStoredListeners(this.data);
+    }
+}
@@ -0,0 +1,88 @@
+package com.universal.storage;
+
+import com.universal.storage.settings.UniversalSettings;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class benchmarks the settings parsing and the contention of getInstance when many threads ask 
+ * for the same storage.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SettingsBenchmark {
+    private File workspace;
+    private File settingsFile;
+    private UniversalSettings settings;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.workspace = BenchmarkSupport.newWorkspace();
+        this.settings = BenchmarkSupport.newSettings(this.workspace, BenchmarkSupport.FILE_SYSTEM, null);
+        this.settingsFile = new File(this.workspace.listFiles((dir, name) -> name.startsWith("settings-"))[0].getPath());
+
+        UniversalStorage.registerUniversalStorage(BenchmarkFileStorage.class.getName(), this.settings);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.delete(this.workspace);
+    }
+
+    /**
+     * Cost of parsing a settings file.
+     */
+    @Benchmark
+    public UniversalSettings parseSettings() throws Exception {
+        return new UniversalSettings(this.settingsFile);
+    }
+
+    /**
+     * Cost of getInstance with eight threads asking for the same storage.
+     */
+    @Benchmark
+    @Threads(8)
+    public UniversalStorage getInstanceContended() {
+        return UniversalStorage.Impl.getInstance(this.settings);
+    }
+}
@@ -0,0 +1,127 @@
+package com.universal.storage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class benchmarks the transfer operations against the file system storage and the remote stand-in:
+ * small file stores, large file streaming and retrieveFileAsStream latency.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StorageBenchmark {
+    @Param({BenchmarkSupport.FILE_SYSTEM, BenchmarkSupport.REMOTE})
+    public String kind;
+
+    @Param({"4096"})
+    public int smallSize;
+
+    @Param({"67108864"})
+    public long largeSize;
+
+    private File workspace;
+    private UniversalStorage storage;
+    private File small;
+    private File large;
+    private byte[] buffer = new byte[64 * 1024];
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        this.workspace = BenchmarkSupport.newWorkspace();
+        this.storage = BenchmarkSupport.newStorage(BenchmarkSupport.newSettings(this.workspace, this.kind, null), this.kind);
+        this.small = BenchmarkSupport.newFile(this.workspace, "small.bin", this.smallSize);
+        this.large = BenchmarkSupport.newFile(this.workspace, "large.bin", this.largeSize);
+
+        this.storage.storeFile(this.small, "read");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.storage.close();
+        BenchmarkSupport.delete(this.workspace);
+    }
+
+    /**
+     * Throughput of small file stores.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void storeSmallFile() throws Exception {
+        this.storage.storeFile(this.small, "small");
+    }
+
+    /**
+     * Time to stream a large file into the storage.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void storeLargeStream() throws Exception {
+        InputStream in = new FileInputStream(this.large);
+        try {
+            this.storage.storeStream(in, "large/large.bin", this.largeSize);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Latency distribution of retrieving and reading a small file as stream.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void retrieveFileAsStream(Blackhole blackhole) throws Exception {
+        InputStream in = this.storage.retrieveFileAsStream("read/small.bin");
+        try {
+            int read;
+            while ((read = in.read(this.buffer)) != -1) {
+                blackhole.consume(read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
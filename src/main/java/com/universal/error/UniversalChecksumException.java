@@ -0,0 +1,69 @@
+package com.universal.error;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class represents an error when the checksum computed during a transfer doesn't match the hash 
+ * reported by the provider, i.e: the file was corrupted on its way.
+ */
+public class UniversalChecksumException extends UniversalIOException {
+    private final String path;
+    private final String expected;
+    private final String actual;
+
+    /**
+     * This constructor instantiates a new UniversalChecksumException.
+     * 
+     * @param path of the transferred file.
+     * @param expected is the checksum of the source, the local content of an upload or the provider's 
+     *                 hash of a download.
+     * @param actual is the checksum of the received content.
+     */
+    public UniversalChecksumException(String path, String expected, String actual) {
+        super("The checksum of " + path + " doesn't match, expected " + expected + " but was " + actual + ".");
+        this.path = path;
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    /**
+     * Returns the path of the transferred file.
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * Returns the checksum of the source of the transfer.
+     */
+    public String getExpected() {
+        return this.expected;
+    }
+
+    /**
+     * Returns the checksum of the received content.
+     */
+    public String getActual() {
+        return this.actual;
+    }
+}
@@ -0,0 +1,146 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class represents the report of a batch operation, every item keeps the result of one path.
+ * A failing item doesn't abort the batch, its error is kept within the item.
+ */
+public class UniversalBatchResult {
+    private final List<Item> items;
+
+    /**
+     * This constructor instantiates a new UniversalBatchResult with the passed items.
+     *
+     * @param items of this batch.
+     */
+    public UniversalBatchResult(List<Item> items) {
+        this.items = Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Returns every item of this batch following the order of the request.
+     */
+    public List<Item> getItems() {
+        return this.items;
+    }
+
+    /**
+     * Returns the items that failed.
+     */
+    public List<Item> getFailures() {
+        List<Item> failures = new ArrayList<Item>();
+        for (Item item : this.items) {
+            if (!item.isSuccessful()) {
+                failures.add(item);
+            }
+        }
+
+        return failures;
+    }
+
+    /**
+     * Returns true if every item of this batch was successful.
+     */
+    public boolean isSuccessful() {
+        for (Item item : this.items) {
+            if (!item.isSuccessful()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * This class represents the result of one path within a batch.
+     */
+    public static class Item {
+        private final String source;
+        private final String path;
+        private volatile File file;
+        private volatile UniversalIOException error;
+
+        /**
+         * This constructor instantiates a new Item.
+         *
+         * @param source is the local path for store operations, null otherwise.
+         * @param path is the path within the storage.
+         */
+        public Item(String source, String path) {
+            this.source = source;
+            this.path = path;
+        }
+
+        /**
+         * Returns the local path of a store operation.
+         */
+        public String getSource() {
+            return this.source;
+        }
+
+        /**
+         * Returns the path within the storage.
+         */
+        public String getPath() {
+            return this.path;
+        }
+
+        /**
+         * Returns the retrieved file of a retrieve operation.
+         */
+        public File getFile() {
+            return this.file;
+        }
+        public void setFile(File file) {
+            this.file = file;
+        }
+
+        /**
+         * Returns the error of this item, null if this item was successful.
+         */
+        public UniversalIOException getError() {
+            return this.error;
+        }
+        public void setError(UniversalIOException error) {
+            this.error = error;
+        }
+
+        /**
+         * Returns true if this item didn't fail.
+         */
+        public boolean isSuccessful() {
+            return this.error == null;
+        }
+
+        public String toString() {
+            return this.path + (this.error == null ? "" : " -> " + this.error.getMessage());
+        }
+    }
+}
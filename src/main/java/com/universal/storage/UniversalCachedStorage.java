@@ -0,0 +1,642 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.util.BoundedInputStream;
+import com.universal.util.FileUtil;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class keeps the retrieved files within the settings' tmp folder, so the next retrievals of
+ * the same path are served locally.  The cache is bounded by the settings' cache max bytes, the least
+ * recently used files are evicted first.
+ * 
+ * The cached files are invalidated when they are stored or removed through this storage and when the
+ * decorated storage triggers the onFileStored event.  Every invalidation increments a generation, a file 
+ * retrieved before an invalidation is not cached since it could be stale.
+ * 
+ * The callers never get the cached files themselves, they get hard links to them (copies when the file 
+ * system doesn't support links), so an evicted or invalidated file doesn't break a stream handed out 
+ * before.  The streams and the channels delete their link when they are closed.  A file returned by 
+ * retrieveFile is valid until the next retrieval of the same path, the eviction of the path or the clean 
+ * of the storage, whichever comes first; then it's deleted, so the disk usage stays 
+ * bounded by the max bytes plus one handed out file per path.
+ * 
+ * Every cached file keeps the stat of the remote file taken before it was retrieved, a hit is only served 
+ * if the current stat (see stat, cached for the settings' metadata ttl) has the same size, modification 
+ * time, hash and id; otherwise the file is retrieved again.
+ */
+public class UniversalCachedStorage extends UniversalStorageDecorator {
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final Map<String, File> handed = new HashMap<String, File>();
+    private final File folder;
+    private final File handedOut;
+    private final long maxBytes;
+    private long bytes;
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * This constructor instantiates a new cache for the passed storage.
+     * 
+     * @param delegate is the decorated storage.
+     * @param maxBytes is the max amount of bytes kept within the cache.
+     */
+    public UniversalCachedStorage(UniversalStorage delegate, long maxBytes) {
+        super(delegate);
+        this.maxBytes = maxBytes;
+        this.folder = new File(this.settings.getTmp() + "cache");
+        this.handedOut = new File(this.folder, "out");
+    }
+
+    /*
+     * The stored paths are invalidated before and after the store, so a retrieval running during the store 
+     * doesn't cache the previous content.
+     */
+
+    void storeFile(File file, String path) throws UniversalIOException {
+        String target = FileUtil.join(path, file.getName());
+        invalidate(target);
+        try {
+            super.storeFile(file, path);
+        } finally {
+            invalidate(target);
+        }
+    }
+
+    void storeFile(String path) throws UniversalIOException {
+        String target = new File(path).getName();
+        invalidate(target);
+        try {
+            super.storeFile(path);
+        } finally {
+            invalidate(target);
+        }
+    }
+
+    void storeFile(String path, String targetPath) throws UniversalIOException {
+        String target = FileUtil.join(targetPath, new File(path).getName());
+        invalidate(target);
+        try {
+            super.storeFile(path, targetPath);
+        } finally {
+            invalidate(target);
+        }
+    }
+
+    public void storeStream(InputStream stream, String path, long contentLengthHint) throws UniversalIOException {
+        invalidate(path);
+        try {
+            super.storeStream(stream, path, contentLengthHint);
+        } finally {
+            invalidate(path);
+        }
+    }
+
+    public void resumeStore(File file, String path) throws UniversalIOException {
+        String target = FileUtil.join(path, file.getName());
+        invalidate(target);
+        try {
+            super.resumeStore(file, path);
+        } finally {
+            invalidate(target);
+        }
+    }
+
+    public UniversalOutputStream openForWrite(final String path) throws UniversalIOException {
+        invalidate(path);
+
+        final UniversalOutputStream target = super.openForWrite(path);
+        return new UniversalOutputStream(target, () -> invalidate(path), () -> {
+            try {
+                target.abort();
+            } catch (IOException ignore) {
+            } finally {
+                invalidate(path);
+            }
+        });
+    }
+
+    void removeFile(String path) throws UniversalIOException {
+        try {
+            super.removeFile(path);
+        } finally {
+            invalidate(path);
+        }
+    }
+
+    void removeFolder(String path) throws UniversalIOException {
+        try {
+            super.removeFolder(path);
+        } finally {
+            invalidateFolder(path);
+        }
+    }
+
+    void wipe() throws UniversalIOException {
+        try {
+            super.wipe();
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    void clean() throws UniversalIOException {
+        invalidateAll();
+        synchronized (this) {
+            for (File file : this.handed.values()) {
+                delete(file);
+            }
+
+            this.handed.clear();
+        }
+
+        super.clean();
+    }
+
+    public UniversalBatchResult storeFiles(Map<String, String> files) {
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            invalidate(FileUtil.join(entry.getValue(), new File(entry.getKey()).getName()));
+        }
+
+        try {
+            return super.storeFiles(files);
+        } finally {
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                invalidate(FileUtil.join(entry.getValue(), new File(entry.getKey()).getName()));
+            }
+        }
+    }
+
+    public UniversalBatchResult removeFiles(Collection<String> paths) {
+        try {
+            return super.removeFiles(paths);
+        } finally {
+            for (String path : paths) {
+                invalidate(path);
+            }
+        }
+    }
+
+    public UniversalBatchResult retrieveFiles(Collection<String> paths) {
+        List<UniversalBatchResult.Item> items = new ArrayList<UniversalBatchResult.Item>(paths.size());
+        for (String path : paths) {
+            items.add(new UniversalBatchResult.Item(null, path));
+        }
+
+        return executeBatch(items, item -> item.setFile(retrieveFile(item.getPath())));
+    }
+
+    /**
+     * This method returns a link to the cached file of the passed path, the file will be retrieved and cached 
+     * if it's missing.  The returned file belongs to the caller.
+     * 
+     * @param path in context.
+     */
+    File retrieveFile(String path) throws UniversalIOException {
+        return retrieve(path, true);
+    }
+
+    /**
+     * This method returns a link to the cached file of the passed path, the file is retrieved and cached if 
+     * it's missing.
+     * 
+     * @param path in context.
+     * @param named indicates if the link keeps the name of the file, the unnamed links are used by the streams.
+     */
+    private File retrieve(String path, boolean named) throws UniversalIOException {
+        long generation = getGeneration();
+        UniversalFileStat stat;
+        try {
+            stat = stat(path);
+        } catch (UniversalIOException e) {
+            /*
+             * The cached files can't be validated without a stat, so the file is retrieved without the cache.
+             */
+            this.misses.incrementAndGet();
+            return super.retrieveFile(path);
+        }
+
+        File cached = lookup(path, named, stat);
+        if (cached != null) {
+            return cached;
+        }
+
+        File retrieved = super.retrieveFile(path);
+        if (retrieved.length() > this.maxBytes) {
+            return retrieved;
+        }
+
+        File file = new File(this.folder, UUID.randomUUID().toString());
+        try {
+            this.folder.mkdirs();
+            if (retrieved.getAbsolutePath().startsWith(new File(this.settings.getTmp()).getAbsolutePath())) {
+                /*
+                 * The retrieved file is a copy within the tmp folder, so it's moved to avoid leaving it behind.
+                 */
+                Files.move(retrieved.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+                /*
+                 * The providers retrieve every file within its own folder of the tmp folder, the emptied 
+                 * folder is removed (the tmp folder itself isn't empty, so it's kept).
+                 */
+                retrieved.getParentFile().delete();
+            } else {
+                FileUtil.copy(retrieved, file);
+            }
+        } catch (IOException e) {
+            file.delete();
+            return retrieved;
+        }
+
+        try {
+            File linked = put(path, file, stat, generation, named);
+            if (linked != null) {
+                return linked;
+            }
+
+            /*
+             * The path was invalidated during the retrieval, the retrieved file is handed out without being cached.
+             */
+            return handOut(path, file, named, true);
+        } catch (IOException e) {
+            file.delete();
+            UniversalIOException error = new UniversalIOException(e.getMessage());
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+    }
+
+    InputStream retrieveFileAsStream(String path) throws UniversalIOException {
+        File file = retrieve(path, false);
+        try {
+            return Files.newInputStream(file.toPath(), openOptions(file));
+        } catch (IOException e) {
+            UniversalIOException error = new UniversalIOException(e.getMessage());
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+    }
+
+    public SeekableByteChannel retrieveFileAsChannel(String path) throws UniversalIOException {
+        File file = retrieve(path, false);
+        try {
+            return FileChannel.open(file.toPath(), openOptions(file));
+        } catch (IOException e) {
+            UniversalIOException error = new UniversalIOException(e.getMessage());
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+    }
+
+    /**
+     * This method reads the range from the cached file, if the path is not cached the range is requested
+     * to the decorated storage without caching the whole file.
+     */
+    public InputStream retrieveRange(String path, long offset, long length) throws UniversalIOException {
+        File cached;
+        try {
+            cached = lookup(path, false, stat(path));
+        } catch (UniversalIOException e) {
+            cached = null;
+        }
+
+        if (cached == null) {
+            return super.retrieveRange(path, offset, length);
+        }
+
+        try {
+            FileChannel channel = FileChannel.open(cached.toPath(), StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+            try {
+                channel.position(offset);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+
+            return new BoundedInputStream(Channels.newInputStream(channel), length);
+        } catch (IOException e) {
+            return super.retrieveRange(path, offset, length);
+        }
+    }
+
+    /**
+     * This method invalidates the stored file through the onFileStored event.
+     */
+    protected void triggerOnFileStoredListeners(UniversalStorageData data) {
+        if (data != null && data.getRemotePath() != null) {
+            invalidate(data.getRemotePath());
+        }
+
+        super.triggerOnFileStoredListeners(data);
+    }
+
+    /**
+     * Returns the amount of retrievals served from the cache.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the amount of retrievals that needed the decorated storage.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the amount of files evicted to keep the cache within its max bytes.
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Returns the current amount of bytes within the cache.
+     */
+    public synchronized long getCachedBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * This method removes the passed path from the cache.
+     * 
+     * @param path in context.
+     */
+    public synchronized void invalidate(String path) {
+        this.generation++;
+        Entry entry = this.entries.remove(normalize(path));
+        if (entry != null) {
+            discard(entry);
+        }
+    }
+
+    /**
+     * This method removes every cached path within the passed folder.
+     * 
+     * @param path of the folder.
+     */
+    public synchronized void invalidateFolder(String path) {
+        this.generation++;
+        String prefix = normalize(path);
+        prefix = prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+
+        Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                iterator.remove();
+                discard(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * This method removes every file from the cache.
+     */
+    public synchronized void invalidateAll() {
+        this.generation++;
+        for (Entry entry : this.entries.values()) {
+            discard(entry);
+        }
+
+        this.entries.clear();
+    }
+
+    /**
+     * This method returns the options to read a retrieved file, the files handed out by this cache are 
+     * deleted when they are closed.  The files too large to be cached are read as they were retrieved.
+     */
+    private OpenOption[] openOptions(File file) {
+        if (file.getAbsolutePath().startsWith(this.folder.getAbsolutePath() + File.separator)) {
+            return new OpenOption[] {StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE};
+        }
+
+        return new OpenOption[] {StandardOpenOption.READ};
+    }
+
+    private synchronized long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * This method returns a link to the cached file of the passed path.
+     * 
+     * @param path in context.
+     * @param named indicates if the link keeps the name of the file.
+     * @param stat is the current stat of the remote file.
+     * @returns the link, null if the path is not cached or the cached file is stale.
+     */
+    private synchronized File lookup(String path, boolean named, UniversalFileStat stat) {
+        String key = normalize(path);
+        Entry entry = this.entries.get(key);
+        if (entry != null && entry.file.exists() && same(entry.stat, stat)) {
+            try {
+                File linked = handOut(path, entry.file, named, false);
+                this.hits.incrementAndGet();
+                return linked;
+            } catch (IOException ignore) {
+                /*
+                 * The cached file can't be linked nor copied, so it's retrieved again.
+                 */
+            }
+        }
+
+        if (entry != null) {
+            /*
+             * The file was removed from the tmp folder (i.e: by the clean method of the decorated storage) or 
+             * the remote file changed.
+             */
+            this.entries.remove(key);
+            discard(entry);
+        }
+
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * This method caches the retrieved file of the passed path if there wasn't an invalidation since the 
+     * passed generation.
+     * 
+     * @param path in context.
+     * @param file within the cache folder.
+     * @param stat of the remote file taken before it was retrieved.
+     * @param generation read before the file was retrieved.
+     * @param named indicates if the link keeps the name of the file.
+     * @returns a link to the cached file, null if the file wasn't cached.
+     */
+    private synchronized File put(String path, File file, UniversalFileStat stat, long generation, boolean named) throws IOException {
+        if (generation != this.generation || stat == null) {
+            return null;
+        }
+
+        String key = normalize(path);
+        Entry entry = new Entry(file, file.length(), stat);
+        File linked = handOut(path, file, named, false);
+        Entry previous = this.entries.put(key, entry);
+        if (previous != null) {
+            discard(previous);
+        }
+
+        this.bytes += entry.size;
+
+        Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+        while (this.bytes > this.maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (eldest.getValue() == entry) {
+                break;
+            }
+
+            iterator.remove();
+            evict(eldest.getKey(), eldest.getValue());
+            this.evictions.incrementAndGet();
+        }
+
+        return linked;
+    }
+
+    /**
+     * This method creates a hard link to a cached file within the hand out folder, the named links are 
+     * created within a new folder so they keep the name of the file.  The file is copied if the file system 
+     * doesn't support links.  The named link replaces (and deletes) the previous named link of the path, 
+     * the unnamed links are deleted by the streams that read them.
+     * 
+     * @param path of the file within the storage.
+     * @param file within the cache.
+     * @param named indicates if the link keeps the name of the file.
+     * @param move indicates if the file is moved instead of linked, i.e: a file that wasn't cached.
+     */
+    private synchronized File handOut(String path, File file, boolean named, boolean move) throws IOException {
+        File linked = !named ? new File(this.handedOut, UUID.randomUUID().toString()) 
+                    : new File(this.handedOut, UUID.randomUUID() + File.separator + FileUtil.getName(path));
+        linked.getParentFile().mkdirs();
+        if (move) {
+            Files.move(file.toPath(), linked.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            try {
+                Files.createLink(linked.toPath(), file.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(file.toPath(), linked.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        if (named) {
+            File previous = this.handed.put(normalize(path), linked);
+            if (previous != null) {
+                delete(previous);
+            }
+        }
+
+        return linked;
+    }
+
+    private void discard(Entry entry) {
+        this.bytes -= entry.size;
+        entry.file.delete();
+    }
+
+    /**
+     * This method deletes an evicted file and the file handed out for its path.  The invalidations don't 
+     * delete the handed out file, the caller could be storing it (i.e: a file retrieved, modified and stored 
+     * again within the same path).
+     */
+    private void evict(String key, Entry entry) {
+        discard(entry);
+
+        File previous = this.handed.remove(key);
+        if (previous != null) {
+            delete(previous);
+        }
+    }
+
+    /**
+     * This method deletes a named link and its folder.
+     */
+    private static void delete(File linked) {
+        linked.delete();
+        linked.getParentFile().delete();
+    }
+
+    /**
+     * This method verifies if the stat of a cached file matches the current stat of the remote file.
+     */
+    private static boolean same(UniversalFileStat cached, UniversalFileStat current) {
+        return current != null && cached.getSize() == current.getSize() 
+                    && cached.getModified() == current.getModified() 
+                    && equals(cached.getHash(), current.getHash()) 
+                    && equals(cached.getRemoteId(), current.getRemoteId());
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private String normalize(String path) {
+        String normalized = path.replace(File.separatorChar, '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+
+        return normalized;
+    }
+
+    /**
+     * This class represents a cached file, its size at the moment it was cached and the stat of the 
+     * remote file it was retrieved from.
+     */
+    private static class Entry {
+        private final File file;
+        private final long size;
+        private final UniversalFileStat stat;
+
+        private Entry(File file, long size, UniversalFileStat stat) {
+            this.file = file;
+            this.size = size;
+            this.stat = stat;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.universal.storage;
+
+import com.universal.storage.settings.UniversalSettings;
+import com.universal.util.FileUtil;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import org.json.JSONObject;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class represents the checkpoint of a resumable transfer, it's kept as a json file within the 
+ * checkpoints folder of the settings' tmp folder.  The checkpoint keeps the attributes of the transfer 
+ * (i.e: the remote upload id) and the completed parts, it's saved every time a part is completed.
+ */
+class UniversalCheckpoint {
+    private final File file;
+    private final JSONObject json;
+
+    private UniversalCheckpoint(File file, JSONObject json) {
+        this.file = file;
+        this.json = json;
+    }
+
+    /**
+     * This method returns the checkpoint file of a transfer.
+     * 
+     * @param settings in context.
+     * @param type of the transfer, i.e: store or retrieve.
+     * @param path of the file within the storage.
+     */
+    static File fileOf(UniversalSettings settings, String type, String path) {
+        return new File(settings.getTmp() + "checkpoints" + File.separator + type + "-" + idOf(path) + ".json");
+    }
+
+    /**
+     * This method returns an id derived from the passed path, useful to name the files of a transfer.
+     * 
+     * @param path of the file within the storage.
+     */
+    static String idOf(String path) {
+        String normalized = path.replace(File.separatorChar, '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+
+        return UUID.nameUUIDFromBytes(normalized.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * This method loads a checkpoint.
+     * 
+     * @param file of the checkpoint.
+     * @returns the checkpoint, null if the file doesn't exist or it's not valid.
+     */
+    static UniversalCheckpoint load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            return new UniversalCheckpoint(file, new JSONObject(FileUtil.readAsString(file)));
+        } catch (Exception e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * This method creates and saves a new checkpoint.
+     * 
+     * @param file of the checkpoint.
+     * @param attributes of the transfer.
+     */
+    static UniversalCheckpoint create(File file, JSONObject attributes) throws IOException {
+        attributes.put("done", new JSONObject());
+
+        UniversalCheckpoint checkpoint = new UniversalCheckpoint(file, attributes);
+        checkpoint.save();
+        return checkpoint;
+    }
+
+    /**
+     * Returns the json with the attributes of the transfer.
+     */
+    synchronized JSONObject getAttributes() {
+        return this.json;
+    }
+
+    /**
+     * Returns the completed parts and their tags, sorted by index.
+     */
+    synchronized Map<Integer, String> getDone() {
+        Map<Integer, String> done = new TreeMap<Integer, String>();
+        JSONObject parts = this.json.getJSONObject("done");
+        Iterator<String> keys = parts.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            done.put(Integer.valueOf(key), parts.getString(key));
+        }
+
+        return done;
+    }
+
+    /**
+     * This method records a completed part with its checksum and saves the checkpoint.  A failure saving the 
+     * checkpoint doesn't lose the part, the part is kept in memory and saved with the next completed part, but 
+     * the caller should report it because the part would be transferred again if the transfer is resumed.
+     * 
+     * @param index of the part.
+     * @param tag of the part, i.e: s3's etag.
+     * @param checksum of the part (see TransferChecksum.getValue), null if it wasn't computed.
+     * @throws IOException when the checkpoint can't be saved.
+     */
+    synchronized void complete(int index, String tag, String checksum) throws IOException {
+        this.json.getJSONObject("done").put(String.valueOf(index), tag);
+        if (checksum != null) {
+            if (!this.json.has("checksums")) {
+                this.json.put("checksums", new JSONObject());
+            }
+
+            this.json.getJSONObject("checksums").put(String.valueOf(index), checksum);
+        }
+
+        save();
+    }
+
+    /**
+     * Returns the checksum of a completed part, null if it wasn't recorded.
+     * 
+     * @param index of the part.
+     */
+    synchronized String getChecksum(int index) {
+        JSONObject checksums = this.json.optJSONObject("checksums");
+        return checksums == null ? null : checksums.optString(String.valueOf(index), null);
+    }
+
+    /**
+     * This method removes the checkpoint file.
+     */
+    void delete() {
+        this.file.delete();
+    }
+
+    /**
+     * This method writes the checkpoint within a temporal file which replaces the checkpoint file, so a 
+     * crash while saving doesn't corrupt the checkpoint.
+     */
+    private synchronized void save() throws IOException {
+        this.file.getParentFile().mkdirs();
+
+        File temporal = new File(this.file.getPath() + ".tmp");
+        Files.write(temporal.toPath(), this.json.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temporal.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,493 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalChecksumException;
+import com.universal.error.UniversalIOException;
+import com.universal.util.BufferPool;
+import com.universal.util.ChecksumInputStream;
+import com.universal.util.ChecksumOutputStream;
+import com.universal.util.FileUtil;
+import com.universal.util.PathValidator;
+import com.universal.util.SegmentChecksum;
+import com.universal.util.TransferChecksum;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class computes the checksums of the transferred files within the same loop that copies the bytes, 
+ * so the content is read once.  The CRC32C (and the SHA-256 if enabled) of a stored file is reported 
+ * through the onFileStored event (see UniversalStorageData.getChecksum).
+ * 
+ * The files are transferred through the file operations of the decorated storage, so the multipart uploads 
+ * and the parallel downloads keep their parts and their checkpoints.  The CRC of every part is computed by 
+ * the thread that transfers it and the CRCs are combined (see SegmentChecksum).  The files stored in one 
+ * request are streamed through the decorated storage when it writes the streams directly (see 
+ * hasDirectStreams), so their CRC is computed while they are stored.  The rest of the files and the 
+ * SHA-256 of the stored files are computed reading the local file.
+ * 
+ * When the provider reports the hash of a file (see UniversalFileStat.getHash) with the same algorithm 
+ * through a cheap stat (see hasCheapStat), the stored files are verified after the upload and the retrieved 
+ * files are verified when their content ends, a mismatch raises an UniversalChecksumException and the 
+ * corrupted copy is removed.  The file system provider doesn't report hashes, so the stored and retrieved 
+ * files are verified against the CRC of the file within the root, the streams read that same file so they 
+ * aren't verified.  The ranges are not verified because they don't contain the whole file.
+ */
+public class UniversalChecksumStorage extends UniversalStorageDecorator {
+    private static final int MAX_STORED = 1024;
+
+    private final Map<String, TransferChecksum> storing = new ConcurrentHashMap<String, TransferChecksum>();
+    private final Map<String, Upload> uploading = new ConcurrentHashMap<String, Upload>();
+    private final Map<String, String[]> stored = new LinkedHashMap<String, String[]>() {
+        protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+            return size() > MAX_STORED;
+        }
+    };
+    private final boolean sha256;
+
+    /**
+     * This constructor instantiates a new checksum storage for the passed storage.
+     * 
+     * @param delegate is the decorated storage.
+     */
+    public UniversalChecksumStorage(UniversalStorage delegate) {
+        super(delegate);
+        this.sha256 = this.settings.isChecksumSha256Enabled();
+    }
+
+    void storeFile(File file, String path) throws UniversalIOException {
+        store(file, path, false);
+    }
+
+    void storeFile(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), null);
+    }
+
+    void storeFile(String path, String targetPath) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), targetPath);
+    }
+
+    /**
+     * This method continues the interrupted upload of the file, the CRCs of the parts uploaded before the 
+     * interruption are kept within the checkpoint of the decorated storage.
+     * 
+     * @param file to be stored.
+     * @param path is the path for this new file within the root.
+     */
+    public void resumeStore(File file, String path) throws UniversalIOException {
+        store(file, path, true);
+    }
+
+    public void storeStream(InputStream stream, String path, long contentLengthHint) throws UniversalIOException {
+        UniversalOutputStream out = openForWrite(path);
+        try {
+            out.transferFrom(stream);
+            out.close();
+        } catch (IOException e) {
+            try {out.abort();}catch(IOException ignore) {}
+            throw toUniversalIOException(e);
+        }
+    }
+
+    /**
+     * This method opens a stream that computes the checksums of the bytes written into the stream of 
+     * the decorated storage, the file is verified after it's committed.
+     * 
+     * @param path is the path for this new file within the root, including its name.
+     */
+    public UniversalOutputStream openForWrite(final String path) throws UniversalIOException {
+        final UniversalOutputStream target = super.openForWrite(path);
+        final TransferChecksum checksum = new TransferChecksum(this.sha256);
+        final String key = normalize(path);
+
+        /*
+         * The checksum stream must not close the target, the target is committed or aborted by the returned stream.
+         */
+        OutputStream shield = new FilterOutputStream(target) {
+            public void write(byte[] b, int off, int len) throws IOException {
+                this.out.write(b, off, len);
+            }
+
+            public void close() throws IOException {
+                flush();
+            }
+        };
+
+        forgetStored(key);
+        this.storing.put(key, checksum);
+        return new UniversalOutputStream(new ChecksumOutputStream(shield, checksum), () -> {
+            try {
+                target.close();
+            } catch (IOException e) {
+                throw toUniversalIOException(e);
+            } finally {
+                this.storing.remove(key, checksum);
+            }
+
+            remember(key, checksum.getValue(), checksum.getSha256());
+            verify(path, checksum.getValue());
+        }, () -> {
+            this.storing.remove(key, checksum);
+            try {target.abort();}catch(IOException ignore) {}
+        });
+    }
+
+    public UniversalBatchResult storeFiles(Map<String, String> files) {
+        List<UniversalBatchResult.Item> items = new ArrayList<UniversalBatchResult.Item>(files.size());
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            items.add(new UniversalBatchResult.Item(entry.getKey(), entry.getValue()));
+        }
+
+        return executeBatch(items, item -> storeFile(item.getSource(), item.getPath()));
+    }
+
+    /**
+     * This method retrieves a file through the decorated storage and verifies its checksum, the file is 
+     * retrieved as is when the provider doesn't report its hash.
+     * 
+     * @param path in context.
+     */
+    File retrieveFile(String path) throws UniversalIOException {
+        return retrieve(path, false);
+    }
+
+    /**
+     * This method continues the interrupted retrieval of the file and verifies its checksum, the CRCs of 
+     * the segments retrieved before the interruption are kept within the checkpoint of the decorated storage.
+     * 
+     * @param path in context.
+     */
+    public File resumeRetrieve(String path) throws UniversalIOException {
+        return retrieve(path, true);
+    }
+
+    /**
+     * This method retrieves a file as InputStream, the stream fails when its content ends if the checksum 
+     * doesn't match the hash reported by the provider.
+     * 
+     * @param path in context.
+     */
+    InputStream retrieveFileAsStream(final String path) throws UniversalIOException {
+        final String expected = expected(path, false);
+        InputStream stream = super.retrieveFileAsStream(path);
+        if (expected == null) {
+            return stream;
+        }
+
+        return new ChecksumInputStream(stream, new TransferChecksum(false)) {
+            private boolean verified;
+
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read == -1 && !this.verified) {
+                    this.verified = true;
+                    String actual = getChecksum().getValue();
+                    if (!expected.equals(actual)) {
+                        throw new IOException("The checksum of " + path + " doesn't match.", mismatch(path, expected, actual));
+                    }
+                }
+
+                return read;
+            }
+        };
+    }
+
+    public SeekableByteChannel retrieveFileAsChannel(String path) throws UniversalIOException {
+        if (this.settings.getProvider() == UniversalProvider.FILE_SYSTEM) {
+            return super.retrieveFileAsChannel(path);
+        }
+
+        File file = retrieveFile(path);
+        try {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        }
+    }
+
+    public UniversalBatchResult retrieveFiles(Collection<String> paths) {
+        List<UniversalBatchResult.Item> items = new ArrayList<UniversalBatchResult.Item>(paths.size());
+        for (String path : paths) {
+            items.add(new UniversalBatchResult.Item(null, path));
+        }
+
+        return executeBatch(items, item -> item.setFile(retrieveFile(item.getPath())));
+    }
+
+    /**
+     * This method sets the checksums of the files stored through this storage.  The checksums of the 
+     * completed uploads are kept for a while, so an event triggered after the store returned (i.e: by an 
+     * asynchronous provider) gets the checksums too.
+     */
+    protected void triggerOnFileStoredListeners(UniversalStorageData data) {
+        if (data != null && data.getRemotePath() != null) {
+            String key = normalize(data.getRemotePath());
+            String[] checksums = null;
+
+            TransferChecksum checksum = this.storing.get(key);
+            Upload upload = this.uploading.get(key);
+            if (checksum != null) {
+                checksums = new String[] {checksum.getValue(), checksum.getSha256()};
+            } else if (upload != null) {
+                try {
+                    checksums = new String[] {upload.getValue(), upload.getSha256()};
+                } catch (IOException ignore) {
+                    /*
+                     * The local file can't be read, so the event is triggered without checksums.
+                     */
+                }
+            } else {
+                synchronized (this.stored) {
+                    checksums = this.stored.get(key);
+                }
+            }
+
+            if (checksums != null) {
+                data.setChecksum(checksums[0]);
+                data.setSha256(checksums[1]);
+            }
+        }
+
+        super.triggerOnFileStoredListeners(data);
+    }
+
+    /**
+     * This method stores a file through the file operations of the decorated storage, recording the CRCs 
+     * of the uploaded parts.  The stored file is verified when the provider reports its hash.
+     * 
+     * @param file to be stored.
+     * @param path is the path for this new file within the root.
+     * @param resume indicates if the interrupted upload of the file is continued.
+     */
+    private void store(File file, String path, boolean resume) throws UniversalIOException {
+        if (file.isDirectory()) {
+            if (resume) {
+                super.resumeStore(file, path);
+            } else {
+                super.storeFile(file, path);
+            }
+
+            return;
+        }
+
+        String target = FileUtil.join(path, file.getName());
+        String key = normalize(target);
+        Upload upload = new Upload(file);
+
+        forgetStored(key);
+        this.uploading.put(key, upload);
+        String value;
+        try {
+            this.delegate.storeFile(file, path, resume, upload.segments);
+            value = upload.getValue();
+            remember(key, value, upload.getSha256());
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        } finally {
+            this.uploading.remove(key, upload);
+            invalidateMetadata(target);
+        }
+
+        verify(target, value);
+    }
+
+    /**
+     * This method retrieves a file through the file operations of the decorated storage, recording the CRCs 
+     * of the retrieved segments, and compares its CRC with the hash reported by the provider.
+     * 
+     * @param path in context.
+     * @param resume indicates if the interrupted retrieval of the file is continued.
+     */
+    private File retrieve(String path, boolean resume) throws UniversalIOException {
+        String expected = expected(path, true);
+        if (expected == null) {
+            return resume ? super.resumeRetrieve(path) : super.retrieveFile(path);
+        }
+
+        SegmentChecksum segments = new SegmentChecksum();
+        File file = this.delegate.retrieveFile(path, resume, segments);
+        try {
+            String actual = segments.getValue(file.length());
+            if (actual == null) {
+                actual = compute(new FileInputStream(file), false).getValue();
+            }
+
+            if (!expected.equals(actual)) {
+                file.delete();
+                throw mismatch(path, expected, actual);
+            }
+
+            return file;
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        }
+    }
+
+    /**
+     * This method compares the checksum of a stored file with the hash reported by the provider, the 
+     * stored file is removed if they don't match.
+     * 
+     * @param path of the file within the storage.
+     * @param checksum computed during the upload.
+     */
+    private void verify(String path, String checksum) throws UniversalIOException {
+        String reported = expected(path, true);
+        if (reported == null || reported.equals(checksum)) {
+            return;
+        }
+
+        try {super.removeFile(path);}catch(Exception ignore) {}
+        throw mismatch(path, checksum, reported);
+    }
+
+    /**
+     * This method returns the hash reported by the provider for the passed path, null if the provider 
+     * doesn't report a hash with the algorithm of this runtime.  The stat is only requested when it's 
+     * cheap, the rest of the providers would list the parent folder for every transfer.
+     * 
+     * The file system provider doesn't report hashes, so the CRC of the file within the root is computed 
+     * when a local value is accepted.
+     * 
+     * @param path in context.
+     * @param local indicates if the CRC of the file within the root is computed for the file system provider.
+     */
+    private String expected(String path, boolean local) throws UniversalIOException {
+        if (!this.delegate.hasCheapStat()) {
+            return null;
+        }
+
+        UniversalFileStat stat = this.delegate.fetchStat(path);
+        if (stat == null) {
+            return null;
+        }
+
+        String hash = stat.getHash();
+        if (hash == null && local && this.settings.getProvider() == UniversalProvider.FILE_SYSTEM) {
+            try {
+                return compute(Channels.newInputStream(this.delegate.retrieveFileAsChannel(path)), false).getValue();
+            } catch (IOException e) {
+                throw toUniversalIOException(e);
+            }
+        }
+
+        return hash != null && hash.startsWith(TransferChecksum.getAlgorithm() + ":") ? hash : null;
+    }
+
+    private void remember(String key, String checksum, String sha256) {
+        synchronized (this.stored) {
+            this.stored.put(key, new String[] {checksum, sha256});
+        }
+    }
+
+    private void forgetStored(String key) {
+        synchronized (this.stored) {
+            this.stored.remove(key);
+        }
+    }
+
+    private UniversalChecksumException mismatch(String path, String expected, String actual) {
+        UniversalChecksumException error = new UniversalChecksumException(path, expected, actual);
+        triggerOnErrorListeners(error);
+        return error;
+    }
+
+    private String normalize(String path) {
+        String normalized = path.replace(File.separatorChar, '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+
+        return normalized;
+    }
+
+    /**
+     * This method computes the checksums of the content of a stream, the stream is closed.
+     * 
+     * @param in is the stream in context.
+     * @param sha256 indicates if the SHA-256 is computed too.
+     */
+    private static TransferChecksum compute(InputStream in, boolean sha256) throws IOException {
+        TransferChecksum checksum = new TransferChecksum(sha256);
+        ByteBuffer buffer = BufferPool.heap().acquire(FileUtil.BUFFER_SIZE);
+        try {
+            byte[] bytes = buffer.array();
+            int read;
+            while ((read = in.read(bytes, 0, buffer.limit())) != -1) {
+                checksum.update(bytes, 0, read);
+            }
+        } finally {
+            in.close();
+            BufferPool.heap().release(buffer);
+        }
+
+        return checksum;
+    }
+
+    /**
+     * This class keeps the checksums of a file being stored, the CRC is combined from the CRCs of the 
+     * uploaded parts.  The local file is read only when the parts don't cover it or the SHA-256 is enabled.
+     */
+    private final class Upload {
+        private final File file;
+        private final SegmentChecksum segments = new SegmentChecksum();
+        private TransferChecksum computed;
+
+        private Upload(File file) {
+            this.file = file;
+        }
+
+        private String getValue() throws IOException {
+            String value = this.segments.getValue(this.file.length());
+            return value == null ? read().getValue() : value;
+        }
+
+        private String getSha256() throws IOException {
+            return sha256 ? read().getSha256() : null;
+        }
+
+        private synchronized TransferChecksum read() throws IOException {
+            if (this.computed == null) {
+                this.computed = compute(new FileInputStream(this.file), sha256);
+            }
+
+            return this.computed;
+        }
+    }
+}
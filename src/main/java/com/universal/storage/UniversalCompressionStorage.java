@@ -0,0 +1,124 @@
+package com.universal.storage;
+
+import com.universal.storage.codec.UniversalCodec;
+import com.universal.storage.codec.UniversalCodecs;
+import com.universal.util.FileUtil;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class compresses the files on store and decompresses them on retrieve.  The codec of a file is 
+ * selected by the first compression rule (a glob pattern) matching its path, the patterns without a 
+ * separator are matched against the name of the file (i.e: *.log).
+ * 
+ * The compressed files start with a header with the name of their codec, so the reads pick the codec 
+ * automatically and the files without header (i.e: stored before enabling the compression) are returned as is.  
+ * The sizes reported by the provider (i.e: stat) are the compressed sizes.
+ */
+public class UniversalCompressionStorage extends UniversalTransformStorage {
+    private static final byte[] MAGIC = {'U', 'C', 'Z', 1};
+
+    private final Map<PathMatcher, UniversalCodec> rules = new LinkedHashMap<PathMatcher, UniversalCodec>();
+    private final Map<PathMatcher, Boolean> nameRules = new LinkedHashMap<PathMatcher, Boolean>();
+
+    /**
+     * This constructor instantiates a new compression storage with the rules of the settings.
+     * 
+     * @param delegate is the decorated storage.
+     */
+    public UniversalCompressionStorage(UniversalStorage delegate) {
+        super(delegate);
+        for (Map.Entry<String, String> rule : this.settings.getCompressionRules().entrySet()) {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + rule.getKey());
+            this.rules.put(matcher, UniversalCodecs.get(rule.getValue()));
+            this.nameRules.put(matcher, rule.getKey().indexOf('/') == -1);
+        }
+    }
+
+    protected byte[] getMagic() {
+        return MAGIC.clone();
+    }
+
+    protected boolean isEncoded(String path) {
+        return codecOf(path) != null;
+    }
+
+    /**
+     * This method writes the name of the codec and compresses the written bytes.
+     */
+    protected OutputStream encode(OutputStream out, String path) throws IOException {
+        UniversalCodec codec = codecOf(path);
+        new DataOutputStream(out).writeUTF(codec.getName());
+        return codec.compress(out);
+    }
+
+    /**
+     * This method reads the name of the codec and decompresses the read bytes.
+     */
+    protected InputStream decode(InputStream in) throws IOException {
+        String name = new DataInputStream(in).readUTF();
+        try {
+            return UniversalCodecs.get(name).decompress(in);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * This method returns the codec of the first rule matching the passed path, null if the file 
+     * must not be compressed.
+     * 
+     * @param path of the file within the storage.
+     */
+    private UniversalCodec codecOf(String path) {
+        String normalized = path.replace(File.separatorChar, '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+
+        if (normalized.isEmpty()) {
+            return null;
+        }
+
+        for (Map.Entry<PathMatcher, UniversalCodec> rule : this.rules.entrySet()) {
+            String subject = this.nameRules.get(rule.getKey()) ? FileUtil.getName(normalized) : normalized;
+            if (rule.getKey().matches(Paths.get(subject))) {
+                return rule.getValue();
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,601 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.util.BufferPool;
+import com.universal.util.FileUtil;
+import com.universal.util.PathValidator;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class avoids uploading the same content twice.  The SHA-256 of every stored file is kept within 
+ * a local index (tmp/dedup/index.log) with the path where the content was stored, when the same content 
+ * is stored again the file is copied within the provider (see copyFile) instead of being uploaded.
+ * 
+ * The streams are hashed while they are written within the tmp folder, so they are read once.  The 
+ * remote id of the onFileStored event is replaced by the content address (sha256:hex).
+ * 
+ * The index only knows the changes made through this storage, so it keeps the size, the modification time 
+ * and the hash reported by the provider of every indexed file.  The indexed file is compared with its 
+ * stat before being copied, if they differ (i.e: the file was replaced by another client) or the copy 
+ * fails the file is uploaded.  When the stat of the decorated storage isn't cheap (see hasCheapStat) the 
+ * index is trusted without requesting the stats, so a file replaced by another client is only detected 
+ * if the copy fails.
+ * 
+ * The index is appended through a writer kept open, it's rewritten with the current locations when it's 
+ * loaded and when the appended records are more than twice the indexed contents.
+ */
+public class UniversalDedupStorage extends UniversalStorageDecorator {
+    private static final String ADDRESS_PREFIX = "sha256:";
+    private static final int MIN_COMPACT_RECORDS = 10000;
+
+    private final Map<String, String> paths = new HashMap<String, String>();
+    private final Map<String, String> hashes = new HashMap<String, String>();
+    private final Map<String, UniversalFileStat> stats = new HashMap<String, UniversalFileStat>();
+    private final Map<String, String> storing = new ConcurrentHashMap<String, String>();
+    private final File indexFile;
+    private final long minSize;
+    private Writer writer;
+    private int records;
+
+    /**
+     * This constructor instantiates a new dedup storage and loads the index of the tmp folder.
+     * 
+     * @param delegate is the decorated storage.
+     */
+    public UniversalDedupStorage(UniversalStorage delegate) throws IOException {
+        super(delegate);
+        this.minSize = this.settings.getDedupMinSize();
+        this.indexFile = new File(this.settings.getTmp() + "dedup" + File.separator + "index.log");
+
+        load();
+    }
+
+    void storeFile(File file, String path) throws UniversalIOException {
+        if (file.isDirectory()) {
+            super.storeFile(file, path);
+            return;
+        }
+
+        if (file.length() < this.minSize) {
+            forget(FileUtil.join(path, file.getName()));
+            super.storeFile(file, path);
+            return;
+        }
+
+        String hash;
+        try {
+            hash = hash(file);
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        }
+
+        store(file, path, hash);
+    }
+
+    void storeFile(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), null);
+    }
+
+    void storeFile(String path, String targetPath) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), targetPath);
+    }
+
+    /**
+     * This method continues an interrupted upload through the decorated storage, the content of the 
+     * file is not indexed.
+     * 
+     * @param file to be stored.
+     * @param path is the path for this new file within the root.
+     */
+    public void resumeStore(File file, String path) throws UniversalIOException {
+        if (!file.isDirectory()) {
+            forget(FileUtil.join(path, file.getName()));
+        }
+
+        super.resumeStore(file, path);
+    }
+
+    public void storeStream(InputStream stream, String path, long contentLengthHint) throws UniversalIOException {
+        UniversalOutputStream out = openForWrite(path);
+        try {
+            out.transferFrom(stream);
+            out.close();
+        } catch (IOException e) {
+            try {out.abort();}catch(IOException ignore) {}
+            throw toUniversalIOException(e);
+        }
+    }
+
+    /**
+     * This method opens a stream that writes the new file within the tmp folder and hashes the written 
+     * bytes, the file is stored (or copied) when the stream is closed.
+     * 
+     * @param path is the path for this new file within the root, including its name.
+     */
+    public UniversalOutputStream openForWrite(final String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        try {
+            final File staged = stageFile(path);
+            final MessageDigest digest = newDigest();
+            return new UniversalOutputStream(new DigestOutputStream(new FileOutputStream(staged), digest), () -> {
+                try {
+                    if (staged.length() < this.minSize) {
+                        forget(path);
+                        super.storeFile(staged, FileUtil.getParent(path));
+                    } else {
+                        store(staged, FileUtil.getParent(path), toHex(digest.digest()));
+                    }
+                } finally {
+                    discardStagedFile(staged);
+                }
+            }, () -> discardStagedFile(staged));
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        }
+    }
+
+    public UniversalBatchResult storeFiles(Map<String, String> files) {
+        List<UniversalBatchResult.Item> items = new ArrayList<UniversalBatchResult.Item>(files.size());
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            items.add(new UniversalBatchResult.Item(entry.getKey(), entry.getValue()));
+        }
+
+        return executeBatch(items, item -> storeFile(item.getSource(), item.getPath()));
+    }
+
+    void removeFile(String path) throws UniversalIOException {
+        try {
+            super.removeFile(path);
+        } finally {
+            forget(path);
+        }
+    }
+
+    public UniversalBatchResult removeFiles(Collection<String> paths) {
+        try {
+            return super.removeFiles(paths);
+        } finally {
+            for (String path : paths) {
+                forget(path);
+            }
+        }
+    }
+
+    void removeFolder(String path) throws UniversalIOException {
+        try {
+            super.removeFolder(path);
+        } finally {
+            forgetFolder(path);
+        }
+    }
+
+    void wipe() throws UniversalIOException {
+        try {
+            super.wipe();
+        } finally {
+            forgetFolder("");
+        }
+    }
+
+    /**
+     * This method closes the writer of the index.
+     */
+    void close() {
+        synchronized (this) {
+            closeWriter();
+        }
+
+        super.close();
+    }
+
+    /**
+     * This method replaces the remote id of the files stored by this storage with their content address.  
+     * The index is updated by the store operations, so an event triggered after the store returned (i.e: by 
+     * an asynchronous provider) finds the content address within the index.
+     */
+    protected void triggerOnFileStoredListeners(UniversalStorageData data) {
+        if (data != null && data.getRemotePath() != null) {
+            String key = normalize(data.getRemotePath());
+            String hash = this.storing.get(key);
+            if (hash == null) {
+                hash = indexed(key);
+            }
+
+            if (hash != null) {
+                data.setRemoteId(ADDRESS_PREFIX + hash);
+            }
+        }
+
+        super.triggerOnFileStoredListeners(data);
+    }
+
+    /**
+     * Returns the amount of distinct contents within the index.
+     */
+    public synchronized int getIndexedContents() {
+        return this.paths.size();
+    }
+
+    /**
+     * This method stores the passed file, if its content was already stored the file is copied within 
+     * the provider instead.
+     * 
+     * @param file to be stored.
+     * @param path of the folder within the storage.
+     * @param hash is the SHA-256 of the file.
+     */
+    private void store(File file, String path, String hash) throws UniversalIOException {
+        String target = normalize(FileUtil.join(path, file.getName()));
+        String source = lookup(hash);
+
+        this.storing.put(target, hash);
+        try {
+            if (source != null && verify(source)) {
+                try {
+                    if (!source.equals(target)) {
+                        copyFile(source, target);
+                        index(hash, target, file);
+                    } else {
+                        /*
+                         * The same content is already within the target.
+                         */
+                        triggerOnStoreFileListeners();
+                        triggerOnFileStoredListeners(new UniversalStorageData(file.getName(), null, null, target));
+                    }
+
+                    return;
+                } catch (UniversalIOException ignore) {
+                    /*
+                     * The copy failed, i.e: the indexed file was removed by another client.
+                     */
+                }
+            }
+
+            forget(target);
+            super.storeFile(file, path);
+            index(hash, target, file);
+        } finally {
+            this.storing.remove(target, hash);
+        }
+    }
+
+    /**
+     * This method verifies if the indexed file wasn't changed since it was indexed, the size, the 
+     * modification time and the hash reported by the decorated storage must be the indexed ones.  When 
+     * the stat is not available the file can't be verified, so it will be uploaded.  The index is trusted 
+     * when the stat isn't cheap.
+     * 
+     * @param source is the indexed path of the content.
+     */
+    private boolean verify(String source) {
+        UniversalFileStat expected;
+        synchronized (this) {
+            expected = this.stats.get(source);
+        }
+
+        if (!hasCheapStat()) {
+            return expected != null;
+        }
+
+        UniversalFileStat actual;
+        try {
+            actual = expected == null ? null : super.fetchStat(source);
+        } catch (UniversalIOException e) {
+            actual = null;
+        }
+
+        if (actual == null) {
+            return false;
+        }
+
+        return actual.getSize() == expected.getSize() && actual.getModified() == expected.getModified() 
+                    && (expected.getHash() == null || expected.getHash().equals(actual.getHash()));
+    }
+
+    private synchronized String lookup(String hash) {
+        return this.paths.get(hash);
+    }
+
+    private synchronized String indexed(String path) {
+        return this.hashes.get(path);
+    }
+
+    /**
+     * This method keeps the passed path as the location of the passed content with the current stat of 
+     * the stored file, a file without stat is not indexed because it couldn't be verified.  When the stat 
+     * isn't cheap it's not requested, the size of the local file is indexed instead.
+     * 
+     * @param hash is the SHA-256 of the content.
+     * @param path of the stored file.
+     * @param file that was stored.
+     */
+    private void index(String hash, String path, File file) {
+        UniversalFileStat stat;
+        try {
+            stat = hasCheapStat() ? super.fetchStat(path) 
+                        : new UniversalFileStat(FileUtil.getName(path), file.length(), 0, null, null, path);
+        } catch (UniversalIOException e) {
+            stat = null;
+        }
+
+        if (stat == null) {
+            forget(path);
+            return;
+        }
+
+        synchronized (this) {
+            String previous = this.hashes.put(path, hash);
+            if (previous != null && !previous.equals(hash) && path.equals(this.paths.get(previous))) {
+                this.paths.remove(previous);
+            }
+
+            this.paths.put(hash, path);
+            this.stats.put(path, stat);
+            append(record(hash, path, stat));
+        }
+    }
+
+    private static JSONObject record(String hash, String path, UniversalFileStat stat) {
+        JSONObject record = new JSONObject();
+        record.put("hash", hash);
+        record.put("path", path);
+        record.put("size", stat.getSize());
+        record.put("modified", stat.getModified());
+        if (stat.getHash() != null) {
+            record.put("etag", stat.getHash());
+        }
+
+        return record;
+    }
+
+    /**
+     * This method removes the passed path from the index.
+     */
+    private synchronized void forget(String path) {
+        String key = normalize(path);
+        this.stats.remove(key);
+        String hash = this.hashes.remove(key);
+        if (hash == null) {
+            return;
+        }
+
+        if (key.equals(this.paths.get(hash))) {
+            this.paths.remove(hash);
+        }
+
+        JSONObject record = new JSONObject();
+        record.put("path", key);
+        append(record);
+    }
+
+    /**
+     * This method removes the files of the passed folder from the index.
+     */
+    private synchronized void forgetFolder(String path) {
+        String prefix = normalize(path);
+        prefix = prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+
+        List<String> keys = new ArrayList<String>();
+        for (String key : this.hashes.keySet()) {
+            if (key.startsWith(prefix)) {
+                keys.add(key);
+            }
+        }
+
+        for (String key : keys) {
+            forget(key);
+        }
+    }
+
+    /**
+     * This method appends a record to the index, the index is a hint so the errors are ignored.  The index 
+     * is compacted when the appended records are more than twice the indexed contents.  The caller must 
+     * hold the lock of this storage.
+     */
+    private void append(JSONObject record) {
+        try {
+            if (this.writer == null) {
+                this.writer = new OutputStreamWriter(new FileOutputStream(this.indexFile, true), StandardCharsets.UTF_8);
+            }
+
+            this.writer.write(record.toString());
+            this.writer.write("\n");
+            this.writer.flush();
+            this.records++;
+        } catch (IOException ignore) {
+            closeWriter();
+        }
+
+        if (this.records > MIN_COMPACT_RECORDS && this.records > 2 * this.paths.size()) {
+            try {compact();}catch(IOException ignore) {}
+        }
+    }
+
+    private void closeWriter() {
+        if (this.writer != null) {
+            try {this.writer.close();}catch(IOException ignore) {}
+            this.writer = null;
+        }
+    }
+
+    /**
+     * This method loads the index and rewrites it without the removed paths.
+     */
+    private synchronized void load() throws IOException {
+        this.indexFile.getParentFile().mkdirs();
+        if (this.indexFile.exists()) {
+            BufferedReader reader = Files.newBufferedReader(this.indexFile.toPath(), StandardCharsets.UTF_8);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JSONObject record;
+                    try {
+                        record = new JSONObject(line);
+                    } catch (JSONException e) {
+                        /*
+                         * The last line could be incomplete if the process crashed while appending it.
+                         */
+                        continue;
+                    }
+
+                    String path = record.optString("path", null);
+                    String hash = record.optString("hash", null);
+                    if (path == null) {
+                        continue;
+                    }
+
+                    String previous = this.hashes.remove(path);
+                    if (previous != null && path.equals(this.paths.get(previous))) {
+                        this.paths.remove(previous);
+                    }
+
+                    this.stats.remove(path);
+                    if (hash != null && record.has("size") && record.has("modified")) {
+                        this.hashes.put(path, hash);
+                        this.paths.put(hash, path);
+                        this.stats.put(path, new UniversalFileStat(FileUtil.getName(path), record.getLong("size"), 
+                                    record.getLong("modified"), record.optString("etag", null), null, path));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        compact();
+    }
+
+    /**
+     * This method rewrites the index with the location of every content, the rest of the paths are 
+     * removed from the index.  The caller must hold the lock of this storage.
+     */
+    private void compact() throws IOException {
+        closeWriter();
+
+        File compacted = new File(this.indexFile.getPath() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(compacted), StandardCharsets.UTF_8);
+        try {
+            Iterator<Map.Entry<String, String>> iterator = this.paths.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, String> entry = iterator.next();
+                JSONObject record = record(entry.getKey(), entry.getValue(), this.stats.get(entry.getValue()));
+                writer.write(record.toString());
+                writer.write("\n");
+            }
+        } finally {
+            writer.close();
+        }
+
+        /*
+         * Only the location of every content is kept.
+         */
+        this.hashes.clear();
+        for (Map.Entry<String, String> entry : this.paths.entrySet()) {
+            this.hashes.put(entry.getValue(), entry.getKey());
+        }
+
+        this.stats.keySet().retainAll(this.hashes.keySet());
+
+        Files.move(compacted.toPath(), this.indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        this.records = this.paths.size();
+    }
+
+    /**
+     * This method computes the SHA-256 of the passed file.
+     */
+    private static String hash(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer pooled = BufferPool.heap().acquire(FileUtil.BUFFER_SIZE);
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = pooled.array();
+            int read;
+            while ((read = in.read(buffer, 0, FileUtil.BUFFER_SIZE)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+            BufferPool.heap().release(pooled);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            /*
+             * Every jvm must support SHA-256.
+             */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return builder.toString();
+    }
+
+    private String normalize(String path) {
+        String normalized = path.replace(File.separatorChar, '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+
+        return normalized;
+    }
+}
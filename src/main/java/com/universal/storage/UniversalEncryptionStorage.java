@@ -0,0 +1,530 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.util.BoundedInputStream;
+import com.universal.util.BufferPool;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class encrypts the files on store and decrypts them on retrieve with AES/GCM, the encryption 
+ * doesn't depend on the provider.  The content is split in chunks of the settings' chunk size and every 
+ * chunk is authenticated on its own, so a range of the file only needs the chunks within that range and 
+ * the encrypted file keeps a fixed layout for the parallel parts.
+ * 
+ * The encrypted files start with a header with the format version, the chunk size and a random salt of 
+ * 128 bits.  Every file is encrypted with its own key derived from the key of the settings and the salt 
+ * through HKDF-SHA256, so the nonce of a chunk is just its index and the nonces are never reused across 
+ * files.  The header, the index and a flag of the last chunk are authenticated with every chunk, so a 
+ * modified header and reordered, removed, truncated or swapped chunks are detected.  The files of the first 
+ * format (a random nonce prefix with the key of the settings) are still decrypted.  Reading a file without 
+ * header (i.e: stored before enabling the encryption) fails unless the plain files are allowed by the settings.
+ * 
+ * The sizes reported by the provider (i.e: stat) are the encrypted sizes.
+ */
+public class UniversalEncryptionStorage extends UniversalTransformStorage {
+    private static final byte[] MAGIC = {'U', 'C', 'E'};
+    private static final byte LEGACY_VERSION = 1;
+    private static final byte VERSION = 2;
+    private static final int NONCE_PREFIX_SIZE = 8;
+    private static final int SALT_SIZE = 16;
+    private static final int LEGACY_HEADER_SIZE = MAGIC.length + 1 + 4 + NONCE_PREFIX_SIZE;
+    private static final int HEADER_SIZE = MAGIC.length + 1 + 4 + SALT_SIZE;
+    private static final int TAG_SIZE = 16;
+    private static final byte[] KEY_INFO = "universal-storage-encryption".getBytes(StandardCharsets.UTF_8);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * The ciphers are reused by the thread, Cipher.getInstance is expensive and the instances aren't thread-safe.
+     */
+    private static final ThreadLocal<Cipher> CIPHERS = new ThreadLocal<Cipher>() {
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance("AES/GCM/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("AES/GCM is not available: " + e.getMessage());
+            }
+        }
+    };
+
+    private static final ThreadLocal<Mac> MACS = new ThreadLocal<Mac>() {
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance("HmacSHA256");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available: " + e.getMessage());
+            }
+        }
+    };
+
+    private final SecretKeySpec key;
+    private final int chunkSize;
+    private final boolean plainAllowed;
+
+    /**
+     * This constructor instantiates a new encryption storage with the key of the settings.
+     * 
+     * @param delegate is the decorated storage.
+     */
+    public UniversalEncryptionStorage(UniversalStorage delegate) {
+        super(delegate);
+        this.key = new SecretKeySpec(this.settings.getClientEncryptionKey(), "AES");
+        this.chunkSize = this.settings.getClientEncryptionChunkSize();
+        this.plainAllowed = this.settings.isClientEncryptionPlaintextAllowed();
+    }
+
+    protected byte[] getMagic() {
+        return MAGIC.clone();
+    }
+
+    protected boolean isEncoded(String path) {
+        return true;
+    }
+
+    protected boolean isPlainAllowed() {
+        return this.plainAllowed;
+    }
+
+    /**
+     * This method writes the version, the chunk size and a new salt and encrypts the written bytes with 
+     * the key derived from that salt.
+     */
+    protected OutputStream encode(OutputStream out, String path) throws IOException {
+        byte[] salt = new byte[SALT_SIZE];
+        RANDOM.nextBytes(salt);
+
+        Header header = new Header(VERSION, this.chunkSize, salt);
+        out.write(header.bytes, MAGIC.length, header.bytes.length - MAGIC.length);
+
+        return new EncryptingOutputStream(out, keyOf(header), header, this.chunkSize);
+    }
+
+    /**
+     * This method reads the header and decrypts the read bytes.
+     */
+    protected InputStream decode(InputStream in) throws IOException {
+        Header header = readHeader(new DataInputStream(in));
+        return new DecryptingInputStream(in, keyOf(header), header, header.chunkSize, 0);
+    }
+
+    /**
+     * This method reads a range of the decrypted content, only the encrypted chunks within the range 
+     * are requested to the decorated storage.
+     */
+    public InputStream retrieveRange(String path, long offset, long length) throws UniversalIOException {
+        if (offset < 0) {
+            throw new IllegalArgumentException("The offset must be a positive number.");
+        }
+
+        Header header;
+        SecretKeySpec fileKey;
+        InputStream stream = this.delegate.retrieveRange(path, 0, HEADER_SIZE);
+        try {
+            byte[] bytes = new byte[HEADER_SIZE];
+            int read = readFully(stream, bytes);
+            if (read < LEGACY_HEADER_SIZE || !Arrays.equals(Arrays.copyOf(bytes, MAGIC.length), MAGIC)) {
+                checkPlain(path);
+                return this.delegate.retrieveRange(path, offset, length);
+            }
+
+            header = readHeader(new DataInputStream(new ByteArrayInputStream(bytes, MAGIC.length, read - MAGIC.length)));
+            fileKey = keyOf(header);
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        } finally {
+            try {stream.close();}catch(IOException ignore) {}
+        }
+
+        int size = header.chunkSize;
+        if (length == 0) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        long first = offset / size;
+        long encryptedLength = -1;
+        if (length > 0) {
+            long last = (offset + length - 1) / size;
+            /*
+             * One byte of the next chunk is requested too, that's how the decryption knows whether the 
+             * last requested chunk is the last chunk of the file.
+             */
+            encryptedLength = (last - first + 1) * (size + TAG_SIZE) + 1;
+        }
+
+        InputStream encrypted = this.delegate.retrieveRange(path, header.bytes.length + first * (size + TAG_SIZE), encryptedLength);
+        InputStream decrypted = new DecryptingInputStream(encrypted, fileKey, header, size, first);
+        try {
+            BoundedInputStream.skip(decrypted, offset - first * size);
+        } catch (IOException e) {
+            try {decrypted.close();}catch(IOException ignore) {}
+            throw toUniversalIOException(e);
+        }
+
+        return new BoundedInputStream(decrypted, length);
+    }
+
+    /**
+     * This method reads the header that follows the magic bytes.
+     * 
+     * @param in is the stream positioned after the magic bytes.
+     */
+    private static Header readHeader(DataInputStream in) throws IOException {
+        byte version = in.readByte();
+        if (version != LEGACY_VERSION && version != VERSION) {
+            throw new IOException("Unsupported version " + version + " of the encrypted header.");
+        }
+
+        int size = checkChunkSize(in.readInt());
+        byte[] random = new byte[version == LEGACY_VERSION ? NONCE_PREFIX_SIZE : SALT_SIZE];
+        in.readFully(random);
+
+        return new Header(version, size, random);
+    }
+
+    /**
+     * This method returns the key of the passed file.  The files of the first format are encrypted with the 
+     * key of the settings, the rest with a key derived from the salt of their header through HKDF-SHA256 
+     * (RFC 5869), the derived key has the length of the key of the settings.
+     * 
+     * @param header of the file.
+     */
+    private SecretKeySpec keyOf(Header header) throws IOException {
+        if (header.version == LEGACY_VERSION) {
+            return this.key;
+        }
+
+        try {
+            Mac mac = MACS.get();
+            mac.init(new SecretKeySpec(header.random, "HmacSHA256"));
+            byte[] pseudoRandomKey = mac.doFinal(this.key.getEncoded());
+
+            mac.init(new SecretKeySpec(pseudoRandomKey, "HmacSHA256"));
+            mac.update(KEY_INFO);
+            mac.update((byte) 1);
+            return new SecretKeySpec(Arrays.copyOf(mac.doFinal(), this.key.getEncoded().length), "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * This method checks the chunk size read from the header, the header is only authenticated when the 
+     * first chunk is decrypted so a corrupted size must not allocate more than the biggest pooled buffer.
+     * 
+     * @param size within the header.
+     */
+    private static int checkChunkSize(int size) throws IOException {
+        if (size <= 0 || size > BufferPool.MAX_SIZE) {
+            throw new IOException("Invalid chunk size within the encrypted header.");
+        }
+
+        return size;
+    }
+
+    /**
+     * This method returns the nonce of the passed chunk, the prefix of the file followed by the index.  The 
+     * prefix is random within the files of the first format and zero within the rest, their keys are unique.
+     */
+    private static GCMParameterSpec nonce(byte[] prefix, long index) {
+        byte[] iv = Arrays.copyOf(prefix, NONCE_PREFIX_SIZE + 4);
+        iv[NONCE_PREFIX_SIZE] = (byte) (index >>> 24);
+        iv[NONCE_PREFIX_SIZE + 1] = (byte) (index >>> 16);
+        iv[NONCE_PREFIX_SIZE + 2] = (byte) (index >>> 8);
+        iv[NONCE_PREFIX_SIZE + 3] = (byte) index;
+
+        return new GCMParameterSpec(TAG_SIZE * 8, iv);
+    }
+
+    /**
+     * This method returns the authenticated data of the passed chunk, the header of the file, the index and 
+     * the flag of the last chunk.  The header isn't authenticated within the files of the first format.
+     */
+    private static byte[] aad(Header header, long index, boolean last) {
+        int offset = header.version == LEGACY_VERSION ? 0 : header.bytes.length;
+        byte[] aad = Arrays.copyOf(header.bytes, offset + 9);
+        for (int i = 0; i < 8; i++) {
+            aad[offset + i] = (byte) (index >>> (56 - i * 8));
+        }
+
+        aad[offset + 8] = (byte) (last ? 1 : 0);
+        return aad;
+    }
+
+    /**
+     * This class represents the header of an encrypted file, including its magic bytes.
+     */
+    private static class Header {
+        private final byte version;
+        private final int chunkSize;
+        private final byte[] random;
+        private final byte[] bytes;
+        private final byte[] prefix;
+
+        /**
+         * @param version of the format.
+         * @param chunkSize is the size of the plain chunks.
+         * @param random is the nonce prefix within the first format and the salt within the rest.
+         */
+        private Header(byte version, int chunkSize, byte[] random) throws IOException {
+            this.version = version;
+            this.chunkSize = chunkSize;
+            this.random = random;
+            this.prefix = version == LEGACY_VERSION ? random : new byte[NONCE_PREFIX_SIZE];
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeByte(version);
+            out.writeInt(chunkSize);
+            out.write(random);
+            this.bytes = bytes.toByteArray();
+        }
+    }
+
+    /**
+     * This class encrypts the written bytes chunk by chunk.  A full chunk is kept until more bytes are 
+     * written or the stream is closed, so the last chunk is always known when it's encrypted.
+     */
+    private static class EncryptingOutputStream extends FilterOutputStream {
+        private final SecretKeySpec key;
+        private final Header header;
+        private final int chunkSize;
+        private final ByteBuffer chunkBuffer;
+        private final ByteBuffer encryptedBuffer;
+        private final byte[] chunk;
+        private final byte[] encrypted;
+        private int count;
+        private long index;
+        private boolean closed;
+
+        private EncryptingOutputStream(OutputStream out, SecretKeySpec key, Header header, int chunkSize) {
+            super(out);
+            this.key = key;
+            this.header = header;
+            this.chunkSize = chunkSize;
+            this.chunkBuffer = BufferPool.heap().acquire(chunkSize);
+            this.encryptedBuffer = BufferPool.heap().acquire(chunkSize + TAG_SIZE);
+            this.chunk = this.chunkBuffer.array();
+            this.encrypted = this.encryptedBuffer.array();
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (this.closed) {
+                throw new IOException("The stream is closed.");
+            }
+
+            while (len > 0) {
+                if (this.count == this.chunkSize) {
+                    encrypt(false);
+                }
+
+                int n = Math.min(len, this.chunkSize - this.count);
+                System.arraycopy(b, off, this.chunk, this.count, n);
+                this.count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+            try {
+                encrypt(true);
+            } finally {
+                BufferPool.heap().release(this.encryptedBuffer);
+                BufferPool.heap().release(this.chunkBuffer);
+                this.out.close();
+            }
+        }
+
+        private void encrypt(boolean last) throws IOException {
+            if (this.index >= 1L << 32) {
+                throw new IOException("The file exceeds the max amount of encrypted chunks.");
+            }
+
+            try {
+                Cipher cipher = CIPHERS.get();
+                cipher.init(Cipher.ENCRYPT_MODE, this.key, nonce(this.header.prefix, this.index));
+                cipher.updateAAD(aad(this.header, this.index, last));
+                int n = cipher.doFinal(this.chunk, 0, this.count, this.encrypted, 0);
+                this.out.write(this.encrypted, 0, n);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+
+            this.index++;
+            this.count = 0;
+        }
+    }
+
+    /**
+     * This class decrypts the read bytes chunk by chunk, one byte after every chunk is read in advance 
+     * to know if the chunk is the last chunk of the file.
+     */
+    private static class DecryptingInputStream extends InputStream {
+        private final InputStream in;
+        private final SecretKeySpec key;
+        private final Header header;
+        private final int encryptedSize;
+        private final ByteBuffer encryptedBuffer;
+        private final ByteBuffer chunkBuffer;
+        private final byte[] encrypted;
+        private final byte[] chunk;
+        private final long first;
+        private long index;
+        private int position;
+        private int limit;
+        private int next = -1;
+        private boolean finished;
+        private boolean closed;
+
+        private DecryptingInputStream(InputStream in, SecretKeySpec key, Header header, int chunkSize, long first) {
+            this.in = in;
+            this.key = key;
+            this.header = header;
+            this.encryptedSize = chunkSize + TAG_SIZE;
+            this.encryptedBuffer = BufferPool.heap().acquire(this.encryptedSize);
+            this.chunkBuffer = BufferPool.heap().acquire(chunkSize);
+            this.encrypted = this.encryptedBuffer.array();
+            this.chunk = this.chunkBuffer.array();
+            this.first = first;
+            this.index = first;
+        }
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.closed) {
+                throw new IOException("The stream is closed.");
+            }
+
+            if (len == 0) {
+                return 0;
+            }
+
+            while (this.position == this.limit) {
+                if (this.finished) {
+                    return -1;
+                }
+
+                decrypt();
+            }
+
+            int n = Math.min(len, this.limit - this.position);
+            System.arraycopy(this.chunk, this.position, b, off, n);
+            this.position += n;
+            return n;
+        }
+
+        public int available() {
+            return this.limit - this.position;
+        }
+
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                BufferPool.heap().release(this.chunkBuffer);
+                BufferPool.heap().release(this.encryptedBuffer);
+            }
+
+            this.in.close();
+        }
+
+        private void decrypt() throws IOException {
+            int n = 0;
+            if (this.next != -1) {
+                this.encrypted[n++] = (byte) this.next;
+                this.next = -1;
+            }
+
+            int count;
+            while (n < this.encryptedSize && (count = this.in.read(this.encrypted, n, this.encryptedSize - n)) != -1) {
+                n += count;
+            }
+
+            if (n == 0 && this.index == this.first && this.first > 0) {
+                /*
+                 * The range starts beyond the end of the file.
+                 */
+                this.finished = true;
+                return;
+            }
+
+            if (n < TAG_SIZE) {
+                throw new IOException("The encrypted file is truncated at the chunk " + this.index + ".");
+            }
+
+            this.next = this.in.read();
+            boolean last = this.next == -1;
+
+            try {
+                Cipher cipher = CIPHERS.get();
+                cipher.init(Cipher.DECRYPT_MODE, this.key, nonce(this.header.prefix, this.index));
+                cipher.updateAAD(aad(this.header, this.index, last));
+                this.limit = cipher.doFinal(this.encrypted, 0, n, this.chunk, 0);
+            } catch (AEADBadTagException e) {
+                throw new IOException("The chunk " + this.index + " of the encrypted file couldn't be authenticated.", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+
+            this.position = 0;
+            this.index++;
+            this.finished = last;
+        }
+    }
+}
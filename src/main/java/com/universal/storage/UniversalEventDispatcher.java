@@ -0,0 +1,180 @@
+package com.universal.storage;
+
+import com.universal.util.ExecutorUtil;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class dispatches the events of a storage within its own thread, so a slow listener doesn't add 
+ * latency to the storage operations.  The events are queued within a bounded queue and delivered following 
+ * their order, when the queue is full the event is either dropped or the caller waits according to the policy.
+ */
+class UniversalEventDispatcher {
+    /**
+     * This event is queued by close, the dispatcher's thread stops when it takes it.
+     */
+    private static final Runnable POISON = () -> {};
+    private static final long OFFER_TIMEOUT = 100;
+
+    private final BlockingQueue<Runnable> queue;
+    private final boolean drop;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * This constructor instantiates a new dispatcher and starts its thread.
+     * 
+     * @param queueSize is the max amount of pending events.
+     * @param drop indicates if the events will be dropped when the queue is full, otherwise the caller waits.
+     */
+    UniversalEventDispatcher(int queueSize, boolean drop) {
+        this.queue = new ArrayBlockingQueue<Runnable>(queueSize);
+        this.drop = drop;
+        this.thread = ExecutorUtil.newThreadFactory("universal-storage-events").newThread(() -> run());
+        this.thread.start();
+    }
+
+    /**
+     * This method queues an event to be delivered by the dispatcher's thread.  When the caller waits for 
+     * room within the queue the closed flag is checked again on every timeout, so the caller doesn't wait 
+     * forever for a dispatcher that was closed meanwhile.
+     * 
+     * @param event to be delivered.
+     */
+    void dispatch(Runnable event) {
+        if (this.closed) {
+            return;
+        }
+
+        if (this.drop) {
+            if (!this.queue.offer(event)) {
+                this.dropped.incrementAndGet();
+            }
+
+            return;
+        }
+
+        try {
+            while (!this.queue.offer(event, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                if (this.closed) {
+                    this.dropped.incrementAndGet();
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the amount of events that were dropped because the queue was full.
+     */
+    long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * This method stops the dispatcher after delivering the pending events, the thread isn't interrupted so 
+     * a listener doing I/O isn't disturbed.  A poison event is queued behind the pending events, the thread 
+     * stops when it takes it.
+     */
+    void close() {
+        this.closed = true;
+
+        /*
+         * A listener could close the storage within the dispatcher's thread, in that case the thread can't 
+         * wait for room within its own queue and it stops as soon as the queue is empty.
+         */
+        if (Thread.currentThread() == this.thread) {
+            this.queue.offer(POISON);
+            return;
+        }
+
+        boolean interrupted = false;
+        while (this.thread.isAlive()) {
+            try {
+                if (this.queue.offer(POISON, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This method delivers the queued events until the poison event is taken.  A listener failing with an 
+     * Error doesn't stop the dispatcher, only a ThreadDeath does and in that case the dispatcher is marked 
+     * as closed, so the producers waiting for room within the queue give up instead of waiting forever.
+     */
+    private void run() {
+        try {
+            while (true) {
+                Runnable event;
+                try {
+                    event = this.closed ? this.queue.poll() : this.queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+
+                if (event == POISON || (event == null && this.closed)) {
+                    break;
+                }
+
+                if (event != null) {
+                    try {
+                        event.run();
+                    } catch (ThreadDeath e) {
+                        throw e;
+                    } catch (Throwable ignore) {}
+                }
+            }
+        } finally {
+            this.closed = true;
+            drain();
+        }
+    }
+
+    private void drain() {
+        /*
+         * The events queued by the producers that passed the closed check before the poison event aren't delivered.
+         */
+        Runnable event;
+        while ((event = this.queue.poll()) != null) {
+            if (event != POISON) {
+                this.dropped.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.universal.storage;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class represents the attributes of a file within the storage, returned by stat.
+ */
+public class UniversalFileStat {
+    private final String name;
+    private final long size;
+    private final long modified;
+    private final String hash;
+    private final String remoteId;
+    private final String remotePath;
+
+    /**
+     * This constructor instantiates a new UniversalFileStat with the passed attributes.
+     * 
+     * @param name of the file.
+     * @param size in bytes.
+     * @param modified is the last modification time in milliseconds, 0 when unknown.
+     * @param hash of the content as reported by the provider (i.e: s3's ETag), null when unknown.
+     * @param remoteId is the id of the file within the provider, as in UniversalStorageData.
+     * @param remotePath is the path within the root, as in UniversalStorageData.
+     */
+    public UniversalFileStat(String name, long size, long modified, String hash, String remoteId, String remotePath) {
+        this.name = name;
+        this.size = size;
+        this.modified = modified;
+        this.hash = hash;
+        this.remoteId = remoteId;
+        this.remotePath = remotePath;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public long getSize() {
+        return this.size;
+    }
+
+    public long getModified() {
+        return this.modified;
+    }
+
+    public String getHash() {
+        return this.hash;
+    }
+
+    public String getRemoteId() {
+        return this.remoteId;
+    }
+
+    public String getRemotePath() {
+        return this.remotePath;
+    }
+
+    public String toString() {
+        return this.remotePath + " " + this.size;
+    }
+}
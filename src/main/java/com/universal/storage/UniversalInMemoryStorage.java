@@ -0,0 +1,1139 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.storage.settings.UniversalSettings;
+import com.universal.util.BoundedInputStream;
+import com.universal.util.BufferPool;
+import com.universal.util.ByteBufferInputStream;
+import com.universal.util.FileUtil;
+import com.universal.util.PathValidator;
+import com.universal.util.TransferChecksum;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class is the implementation of a storage that keeps its files in memory, the content of every 
+ * file is kept within a direct (off-heap) ByteBuffer.  The root of the settings is not used by this provider.
+ * 
+ * The tree is a sorted concurrent map of normalized paths (i.e: folder/file.txt), so the content of a 
+ * folder is a range of the map.  The files that don't fit within the settings' in memory capacity are 
+ * written within the tmp folder (spill), if the spill is disabled the store operation fails.
+ */
+public class UniversalInMemoryStorage extends UniversalStorage implements UniversalMultipartProvider {
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final ConcurrentSkipListMap<String, Node> nodes = new ConcurrentSkipListMap<String, Node>();
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<String, Upload>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
+    private final long capacity;
+    private final boolean spill;
+    private final File spillFolder;
+
+    /**
+     * This constructor receives the settings for this new in memory storage.
+     * 
+     * @param settings for this new storage.
+     */
+    public UniversalInMemoryStorage(UniversalSettings settings) {
+        super(settings);
+        this.capacity = settings.getInMemoryCapacity() == 0 ? Long.MAX_VALUE : settings.getInMemoryCapacity();
+        this.spill = settings.isInMemorySpill();
+        this.spillFolder = new File(settings.getTmp() + "in.memory" + File.separator + UUID.randomUUID());
+    }
+
+    /**
+     * This method stores a file within the storage provider according to the current settings.
+     * The method will replace the file if already exists within the root.
+     * 
+     * @param file to be stored within the storage.
+     * @param path is the path for this new file within the root.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    void storeFile(File file, String path) throws UniversalIOException {
+        if (file.isDirectory()) {
+            UniversalIOException error = new UniversalIOException(file.getName() + " is a folder.  You should call the createFolder method.");
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+
+        triggerOnStoreFileListeners();
+
+        String key = FileUtil.join(path, file.getName());
+        try {
+            FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                triggerOnFileStoredListeners(put(key, source, source.size()));
+            } finally {
+                source.close();
+            }
+        } catch (IOException e) {
+            UniversalIOException error = new UniversalIOException(e.getMessage());
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+    }
+
+    /**
+     * This method stores a file according to the provided path within the storage provider according to the current settings.
+     * 
+     * @param path pointing to the file which will be stored within the storage.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    void storeFile(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), null);
+    }
+
+    /**
+     * This method stores a file according to the provided path within the storage provider according to the current settings.
+     * 
+     * @param path pointing to the file which will be stored within the storage.
+     * @param targetPath is the path within the storage.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    void storeFile(String path, String targetPath) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), targetPath);
+    }
+
+    /**
+     * This method opens a stream to write a new file within the storage, the written bytes are buffered 
+     * within pooled off-heap chunks reserved from the capacity.  When the capacity is exhausted the chunks 
+     * are spilled and the rest of the bytes are written within the spilled file, so the stream follows the 
+     * same rules than the other store operations.
+     * 
+     * @param path is the path for this new file within the root, including its name.
+     * @returns a stream to write the content of the file.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    public UniversalOutputStream openForWrite(final String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        triggerOnStoreFileListeners();
+
+        final Content content = new Content();
+        return new UniversalOutputStream(content, () -> {
+            try {
+                String key = fileKey(path);
+                triggerOnFileStoredListeners(put(key, content.toNode()));
+            } catch (IOException e) {
+                content.discard();
+                UniversalIOException error = new UniversalIOException(e.getMessage());
+                triggerOnErrorListeners(error);
+                throw error;
+            } catch (UniversalIOException e) {
+                content.discard();
+                throw e;
+            }
+        }, () -> content.discard());
+    }
+
+    /**
+     * This method removes a file from the storage.  This method will use the path parameter 
+     * to localte the file and remove it from the storage.
+     * 
+     * @param path is the file's path.  
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    void removeFile(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        triggerOnRemoveFileListeners();
+
+        String key = normalize(path);
+        Node node = this.nodes.get(key);
+        if (node == null || node.folder) {
+            UniversalIOException error = new UniversalIOException(path + " is not a file.");
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+
+        if (this.nodes.remove(key, node)) {
+            release(node);
+        }
+
+        triggerOnFileRemovedListeners();
+    }
+
+    /**
+     * This method creates a new folder within the storage, the missing parent folders are created too.
+     * 
+     * @param path is the folder's path.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    void createFolder(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        triggerOnCreateFolderListeners();
+
+        String key = normalize(path);
+        createFolders(key);
+
+        triggerOnFolderCreatedListeners(new UniversalStorageData(FileUtil.getName(key), 
+                    link(key), key, key));
+    }
+
+    /**
+     * This method removes the folder located on that path and its content.
+     * 
+     * @param path of the folder.
+     */
+    void removeFolder(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        triggerOnRemoveFolderListeners();
+
+        String key = normalize(path);
+        Node node = this.nodes.get(key);
+        if (!"".equals(key) && (node == null || !node.folder)) {
+            UniversalIOException error = new UniversalIOException(path + " is not a folder.");
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+
+        removeAll("".equals(key) ? this.nodes : this.nodes.subMap(key + "/", key + "0"));
+        if (node != null) {
+            this.nodes.remove(key, node);
+        }
+
+        triggerOnFolderRemovedListeners();
+    }
+
+    /**
+     * This method retrieves a file from the storage.
+     * The method will retrieve the file according to the passed path.  A file will be stored within the settings' tmp folder.
+     * 
+     * @param path in context.
+     * @returns a file pointing to the retrieved file.
+     */
+    File retrieveFile(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        /*
+         * Every retrieval gets its own folder, so the files with the same name within different folders 
+         * don't overwrite each other.
+         */
+        Node node = file(path);
+        File file = new File(this.settings.getTmp() + UUID.randomUUID() + File.separator + FileUtil.getName(normalize(path)));
+        try {
+            file.getParentFile().mkdirs();
+            if (node.spilled != null) {
+                FileUtil.copy(node.spilled, file);
+            } else {
+                FileChannel target = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, 
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                try {
+                    ByteBuffer buffer = node.buffer.duplicate();
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                } finally {
+                    target.close();
+                }
+            }
+        } catch (IOException e) {
+            UniversalIOException error = new UniversalIOException(e.getMessage());
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+
+        return file;
+    }
+
+    /**
+     * This method retrieves a file from the storage as InputStream, the stream reads the 
+     * content from memory without copies within the tmp folder.
+     * 
+     * @param path in context.
+     * @returns an InputStream pointing to the retrieved file.
+     */
+    InputStream retrieveFileAsStream(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        Node node = file(path);
+        if (node.spilled == null) {
+            return new ByteBufferInputStream(node.buffer.duplicate());
+        }
+
+        try {
+            return new FileInputStream(node.spilled);
+        } catch (IOException e) {
+            UniversalIOException error = new UniversalIOException(e.getMessage());
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+    }
+
+    /**
+     * This method retrieves a file from the storage as a SeekableByteChannel over its content in memory.
+     * 
+     * @param path in context.
+     * @returns a read only channel, the caller must close it.
+     */
+    public SeekableByteChannel retrieveFileAsChannel(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        Node node = file(path);
+        if (node.spilled == null) {
+            return new BufferChannel(node.buffer.duplicate());
+        }
+
+        try {
+            return FileChannel.open(node.spilled.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            UniversalIOException error = new UniversalIOException(e.getMessage());
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+    }
+
+    /**
+     * This method retrieves a range of bytes of a file from the storage as InputStream, the range is 
+     * a view of the content in memory.
+     * 
+     * @param path in context.
+     * @param offset is the position of the first byte to be read.
+     * @param length is the max amount of bytes to be read, -1 to read until the end of the file.
+     * @returns an InputStream with the requested range.
+     */
+    public InputStream retrieveRange(String path, long offset, long length) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        if (offset < 0) {
+            throw new IllegalArgumentException("The offset must be a positive number.");
+        }
+
+        Node node = file(path);
+        if (node.spilled != null) {
+            return super.retrieveRange(path, offset, length);
+        }
+
+        ByteBuffer buffer = node.buffer.duplicate();
+        buffer.position((int) Math.min(offset, buffer.limit()));
+        if (length >= 0) {
+            buffer.limit((int) Math.min(buffer.limit(), buffer.position() + length));
+        }
+
+        return new ByteBufferInputStream(buffer);
+    }
+
+    /**
+     * The ranges are views of the content in memory.
+     */
+    protected boolean supportsRanges() {
+        return true;
+    }
+
+    /**
+     * This method returns the size of a file within this storage.
+     * 
+     * @param path in context.
+     */
+    protected long getRemoteLength(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        Node node = this.nodes.get(normalize(path));
+        return node == null || node.folder ? -1 : node.size;
+    }
+
+    /**
+     * This method copies a file within the tree, the content is copied from memory without streams.
+     * 
+     * @param sourcePath is the path of the file to be copied.
+     * @param targetPath is the path of the copy, including its name.
+     */
+    protected void copyFile(String sourcePath, String targetPath) throws UniversalIOException {
+        PathValidator.validatePath(sourcePath);
+        PathValidator.validatePath(targetPath);
+        triggerOnStoreFileListeners();
+
+        Node node = file(sourcePath);
+        try {
+            ReadableByteChannel source = node.spilled == null 
+                        ? Channels.newChannel(new ByteBufferInputStream(node.buffer.duplicate())) 
+                        : FileChannel.open(node.spilled.toPath(), StandardOpenOption.READ);
+            try {
+                triggerOnFileStoredListeners(put(targetPath, source, node.size));
+            } finally {
+                source.close();
+            }
+        } catch (IOException e) {
+            UniversalIOException error = new UniversalIOException(e.getMessage());
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+    }
+
+    /**
+     * The stats are read from the tree, so they are cheap.
+     */
+    protected boolean hasCheapStat() {
+        return true;
+    }
+
+    /**
+     * The streams are written into the chunks of the tree without staging them.
+     */
+    protected boolean hasDirectStreams() {
+        return true;
+    }
+
+    /**
+     * This method returns the attributes of a file from the tree.
+     * 
+     * @param path of the file.
+     * @returns the stat of the file, null if the file doesn't exist.
+     */
+    protected UniversalFileStat fetchStat(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        String key = normalize(path);
+        Node node = this.nodes.get(key);
+        if (node == null || node.folder) {
+            return null;
+        }
+
+        return new UniversalFileStat(FileUtil.getName(key), node.size, node.modified, checksum(node), key, key);
+    }
+
+    /**
+     * This method returns a page of the content of a folder, the content is a range of the tree, so the 
+     * page starts right after the marker (the path of the last entry of the previous page).  The subfolders 
+     * are skipped as a whole when the listing is not recursive.
+     * 
+     * @param path of the folder.
+     * @param recursive indicates if the content of the subfolders is listed too.
+     * @param marker returned within the previous page, null for the first page.
+     * @param limit is the max amount of entries of the page.
+     */
+    protected UniversalListPage listPage(String path, boolean recursive, String marker, int limit) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        String key = normalize(path);
+        Node folder = this.nodes.get(key);
+        if (!"".equals(key) && (folder == null || !folder.folder)) {
+            UniversalIOException error = new UniversalIOException(path + " is not a folder.");
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+
+        String prefix = "".equals(key) ? "" : key + "/";
+        List<UniversalListEntry> entries = new ArrayList<UniversalListEntry>(Math.min(limit, 1024));
+        Map.Entry<String, Node> entry = marker == null ? this.nodes.ceilingEntry(prefix) : this.nodes.higherEntry(marker);
+        while (entry != null && entry.getKey().startsWith(prefix)) {
+            String child = entry.getKey();
+            int separator = child.indexOf('/', prefix.length());
+            if (!recursive && separator != -1) {
+                /*
+                 * The entry is within a subfolder, '0' follows '/' so the rest of the subfolder is skipped.
+                 */
+                entry = this.nodes.ceilingEntry(child.substring(0, separator) + "0");
+                continue;
+            }
+
+            if (entries.size() == limit) {
+                return new UniversalListPage(entries, entries.get(entries.size() - 1).getRemotePath());
+            }
+
+            Node node = entry.getValue();
+            entries.add(new UniversalListEntry(FileUtil.getName(child), node.size, node.modified, child, node.folder));
+            entry = this.nodes.higherEntry(child);
+        }
+
+        return new UniversalListPage(entries, null);
+    }
+
+    /**
+     * This method cleans the context of this storage.  This method doesn't remove any file from the storage.
+     * The method will clean the tmp folder to release disk usage, the spilled files are kept.
+     */
+    void clean() throws UniversalIOException {
+        File[] children = new File(this.settings.getTmp()).listFiles();
+        if (children == null) {
+            return;
+        }
+
+        for (File child : children) {
+            if (!"in.memory".equals(child.getName())) {
+                delete(child);
+            }
+        }
+    }
+
+    /**
+     * This method wipes the root folder of a storage, basically, will remove all files and folder in it.  
+     * Be careful with this method because in too many cases this action won't provide a rollback action.
+     */
+    void wipe() throws UniversalIOException {
+        removeAll(this.nodes);
+    }
+
+    /**
+     * This method releases the memory and the spilled files of this storage.
+     */
+    void close() {
+        removeAll(this.nodes);
+        delete(this.spillFolder);
+        super.close();
+    }
+
+    /**
+     * This method starts a new multipart upload, the parts are kept within the heap until the upload is completed.
+     * 
+     * @param path is the path for the new file within the root, including its name.
+     * @param size is the size of the file, -1 when unknown.
+     * @returns the id of the upload.
+     */
+    public String initUpload(String path, long size) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        String uploadId = UUID.randomUUID().toString();
+        this.uploads.put(uploadId, new Upload(path));
+        return uploadId;
+    }
+
+    /**
+     * This method keeps the content of a part of a multipart upload.
+     * 
+     * @param uploadId returned by initUpload.
+     * @param partNumber is the position of this part within the file, starting with 1.
+     * @param stream with the content of this part.
+     * @param length is the amount of bytes of this part.
+     * @returns the part number as tag.
+     */
+    public String uploadPart(String uploadId, int partNumber, InputStream stream, long length) throws UniversalIOException {
+        Upload upload = upload(uploadId);
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream((int) Math.max(0, Math.min(length, Integer.MAX_VALUE)));
+        try {
+            FileUtil.copy(stream, content);
+        } catch (IOException e) {
+            throw new UniversalIOException(e.getMessage());
+        }
+
+        upload.parts.put(partNumber, content.toByteArray());
+        return String.valueOf(partNumber);
+    }
+
+    /**
+     * This method stores the parts of a multipart upload as a new file.
+     * 
+     * @param uploadId returned by initUpload.
+     * @param tags of the parts following the order of the part numbers.
+     * @returns useful information about the stored file.
+     */
+    public UniversalStorageData completeUpload(String uploadId, List<String> tags) throws UniversalIOException {
+        Upload upload = upload(uploadId);
+
+        Vector<InputStream> streams = new Vector<InputStream>(tags.size());
+        long size = 0;
+        for (String tag : tags) {
+            byte[] part = upload.parts.get(Integer.valueOf(tag));
+            if (part == null) {
+                throw new UniversalIOException("The part " + tag + " of " + upload.path + " was not uploaded.");
+            }
+
+            streams.add(new ByteArrayInputStream(part));
+            size += part.length;
+        }
+
+        try {
+            return put(upload.path, Channels.newChannel(new SequenceInputStream(streams.elements())), size);
+        } catch (IOException e) {
+            throw new UniversalIOException(e.getMessage());
+        } finally {
+            this.uploads.remove(uploadId);
+        }
+    }
+
+    /**
+     * This method discards a multipart upload and its parts.
+     * 
+     * @param uploadId returned by initUpload.
+     */
+    public void abortUpload(String uploadId) throws UniversalIOException {
+        this.uploads.remove(uploadId);
+    }
+
+    /**
+     * Returns the amount of off-heap bytes used by the files of this storage.
+     */
+    public long getUsedBytes() {
+        return this.usedBytes.get();
+    }
+
+    /**
+     * Returns the amount of bytes written within the tmp folder because they didn't fit within the capacity.
+     */
+    public long getSpilledBytes() {
+        return this.spilledBytes.get();
+    }
+
+    /**
+     * This method stores the content of the passed source within the passed path.
+     * 
+     * @param path of the file within the storage, including its name.
+     * @param source with the content.
+     * @param size is the amount of bytes of the source.
+     */
+    private UniversalStorageData put(String path, ReadableByteChannel source, long size) throws IOException, UniversalIOException {
+        String key = fileKey(path);
+        return put(key, newNode(source, size));
+    }
+
+    /**
+     * This method stores the passed node within the passed key, the node is released if it can't be stored.
+     * 
+     * @param key is the normalized path of the file.
+     * @param node with the content.
+     */
+    private UniversalStorageData put(String key, Node node) throws UniversalIOException {
+        try {
+            createFolders(FileUtil.getParent(key));
+        } catch (UniversalIOException e) {
+            release(node);
+            throw e;
+        }
+
+        Node previous = this.nodes.put(key, node);
+        if (previous != null) {
+            release(previous);
+        }
+
+        return new UniversalStorageData(FileUtil.getName(key), link(key), key, key);
+    }
+
+    /**
+     * This method returns the normalized path of a file to be stored.
+     * 
+     * @param path of the file within the storage, including its name.
+     * @throws IOException if the path is a folder.
+     */
+    private String fileKey(String path) throws IOException {
+        String key = normalize(path);
+        Node current = this.nodes.get(key);
+        if ("".equals(key) || (current != null && current.folder)) {
+            throw new IOException(path + " is a folder.");
+        }
+
+        return key;
+    }
+
+    /**
+     * This method creates a file node with the content of the passed source, the content is kept within a 
+     * direct buffer when it fits within the capacity, otherwise it's spilled.
+     * 
+     * @param source with the content.
+     * @param size is the amount of bytes of the source.
+     */
+    private Node newNode(ReadableByteChannel source, long size) throws IOException {
+        if (size <= Integer.MAX_VALUE && reserve(size)) {
+            ByteBuffer buffer;
+            try {
+                buffer = ByteBuffer.allocateDirect((int) size);
+            } catch (OutOfMemoryError e) {
+                /*
+                 * The direct memory of the JVM is exhausted (see -XX:MaxDirectMemorySize).
+                 */
+                this.usedBytes.addAndGet(-size);
+                return spill(source);
+            }
+
+            while (buffer.hasRemaining() && source.read(buffer) != -1);
+            buffer.flip();
+
+            this.usedBytes.addAndGet(buffer.limit() - size);
+            return new Node(buffer.asReadOnlyBuffer(), null, buffer.limit());
+        }
+
+        return spill(source);
+    }
+
+    /**
+     * This method writes the content of the passed source within the spill folder.
+     * 
+     * @param source with the content.
+     */
+    private Node spill(ReadableByteChannel source) throws IOException {
+        File file = newSpilledFile();
+        boolean written = false;
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel target = out.getChannel();
+            long position = 0;
+            long transferred;
+            while ((transferred = target.transferFrom(source, position, FileUtil.BUFFER_SIZE)) > 0) {
+                position += transferred;
+            }
+
+            written = true;
+        } finally {
+            out.close();
+            if (!written) {
+                file.delete();
+            }
+        }
+
+        this.spilledBytes.addAndGet(file.length());
+        return new Node(null, file, file.length());
+    }
+
+    /**
+     * This method returns a new file within the spill folder.
+     * 
+     * @throws IOException if the spill is disabled.
+     */
+    private File newSpilledFile() throws IOException {
+        if (!this.spill) {
+            throw new IOException("The in memory storage is full, its capacity is " + this.capacity + " bytes.");
+        }
+
+        this.spillFolder.mkdirs();
+        return new File(this.spillFolder, UUID.randomUUID().toString());
+    }
+
+    /**
+     * This method reserves the passed amount of bytes within the capacity.
+     * 
+     * @param size in bytes.
+     * @returns false if the bytes don't fit.
+     */
+    private boolean reserve(long size) {
+        long used;
+        do {
+            used = this.usedBytes.get();
+            if (used + size > this.capacity) {
+                return false;
+            }
+        } while (!this.usedBytes.compareAndSet(used, used + size));
+
+        return true;
+    }
+
+    /**
+     * This method returns the CRC of the content of the passed node, like the checksums reported by the 
+     * remote providers.  The CRC is computed on the first request and kept within the node.
+     * 
+     * @param node in context.
+     */
+    private String checksum(Node node) throws UniversalIOException {
+        if (node.checksum == null) {
+            TransferChecksum checksum = new TransferChecksum(false);
+            if (node.spilled == null) {
+                checksum.update(node.buffer.duplicate());
+            } else {
+                try {
+                    ByteBuffer pooled = BufferPool.heap().acquire(FileUtil.BUFFER_SIZE);
+                    InputStream in = new FileInputStream(node.spilled);
+                    try {
+                        byte[] buffer = pooled.array();
+                        int read;
+                        while ((read = in.read(buffer, 0, FileUtil.BUFFER_SIZE)) != -1) {
+                            checksum.update(buffer, 0, read);
+                        }
+                    } finally {
+                        in.close();
+                        BufferPool.heap().release(pooled);
+                    }
+                } catch (IOException e) {
+                    UniversalIOException error = new UniversalIOException(e.getMessage());
+                    triggerOnErrorListeners(error);
+                    throw error;
+                }
+            }
+
+            node.checksum = checksum.getValue();
+        }
+
+        return node.checksum;
+    }
+
+    /**
+     * This method releases the memory or the spilled file of the passed node.
+     * 
+     * @param node in context.
+     */
+    private void release(Node node) {
+        if (node.buffer != null) {
+            this.usedBytes.addAndGet(-node.size);
+        } else if (node.spilled != null) {
+            this.spilledBytes.addAndGet(-node.size);
+            node.spilled.delete();
+        }
+    }
+
+    /**
+     * This method removes and releases every node of the passed map.
+     * 
+     * @param map is either the whole tree or the range of a folder.
+     */
+    private void removeAll(ConcurrentNavigableMap<String, Node> map) {
+        List<Map.Entry<String, Node>> entries = new ArrayList<Map.Entry<String, Node>>(map.entrySet());
+        for (Map.Entry<String, Node> entry : entries) {
+            if (this.nodes.remove(entry.getKey(), entry.getValue())) {
+                release(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * This method creates the passed folder and its missing parents.
+     * 
+     * @param key is the normalized path of the folder.
+     */
+    private void createFolders(String key) throws UniversalIOException {
+        String current = key;
+        while (!"".equals(current)) {
+            Node node = this.nodes.putIfAbsent(current, Node.FOLDER);
+            if (node != null && !node.folder) {
+                UniversalIOException error = new UniversalIOException(current + " is a file.");
+                triggerOnErrorListeners(error);
+                throw error;
+            }
+
+            current = FileUtil.getParent(current);
+        }
+    }
+
+    /**
+     * This method returns the file node of the passed path.
+     * 
+     * @param path in context.
+     * @throws UniversalIOException if the path is not a file.
+     */
+    private Node file(String path) throws UniversalIOException {
+        Node node = this.nodes.get(normalize(path));
+        if (node == null || node.folder) {
+            UniversalIOException error = new UniversalIOException(path + " is not a file.");
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+
+        return node;
+    }
+
+    private Upload upload(String uploadId) throws UniversalIOException {
+        Upload upload = this.uploads.get(uploadId);
+        if (upload == null) {
+            throw new UniversalIOException(uploadId + " is not a multipart upload.");
+        }
+
+        return upload;
+    }
+
+    private String normalize(String path) {
+        String normalized = path.replace(File.separatorChar, '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+
+        return normalized;
+    }
+
+    private String link(String key) {
+        return "memory:///" + key;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+    /**
+     * This class represents a folder or a file of the tree, the content of a file is either a read 
+     * only direct buffer or a spilled file.
+     */
+    private static class Node {
+        private static final Node FOLDER = new Node(null, null, 0);
+
+        private final ByteBuffer buffer;
+        private final File spilled;
+        private final long size;
+        private final long modified;
+        private final boolean folder;
+        private volatile String checksum;
+
+        private Node(ByteBuffer buffer, File spilled, long size) {
+            this.buffer = buffer;
+            this.spilled = spilled;
+            this.size = size;
+            this.folder = buffer == null && spilled == null;
+            this.modified = this.folder ? 0 : System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * This class represents a multipart upload and its parts.
+     */
+    private static class Upload {
+        private final String path;
+        private final Map<Integer, byte[]> parts = new ConcurrentHashMap<Integer, byte[]>();
+
+        private Upload(String path) {
+            this.path = path;
+        }
+    }
+
+    /**
+     * This class buffers the bytes written through openForWrite within pooled direct chunks, every chunk is 
+     * reserved from the capacity.  When a chunk doesn't fit (or the content reaches the max size of a buffer) 
+     * the chunks are written within a spilled file and the next bytes are written directly within it.
+     */
+    private final class Content extends OutputStream {
+        private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+        private long reserved;
+        private long size;
+        private File spilled;
+        private FileChannel spilledChannel;
+
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (this.spilledChannel != null) {
+                    ByteBuffer source = ByteBuffer.wrap(b, off, len);
+                    while (source.hasRemaining()) {
+                        this.spilledChannel.write(source);
+                    }
+
+                    this.size += len;
+                    return;
+                }
+
+                ByteBuffer chunk = this.chunks.isEmpty() ? null : this.chunks.get(this.chunks.size() - 1);
+                if (chunk == null || !chunk.hasRemaining()) {
+                    if (this.reserved + CHUNK_SIZE > Integer.MAX_VALUE || !reserve(CHUNK_SIZE)) {
+                        spillChunks();
+                        continue;
+                    }
+
+                    this.reserved += CHUNK_SIZE;
+                    chunk = BufferPool.direct().acquire(CHUNK_SIZE);
+                    chunk.limit(CHUNK_SIZE);
+                    this.chunks.add(chunk);
+                }
+
+                int n = Math.min(len, chunk.remaining());
+                chunk.put(b, off, n);
+                this.size += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        public void close() throws IOException {
+            if (this.spilledChannel != null) {
+                this.spilledChannel.close();
+            }
+        }
+
+        /**
+         * This method returns a node with the written content, the chunks are copied within a direct buffer 
+         * of the exact size which takes their reservation.
+         */
+        private Node toNode() throws IOException {
+            if (this.spilled != null) {
+                close();
+                spilledBytes.addAndGet(this.size);
+
+                Node node = new Node(null, this.spilled, this.size);
+                this.spilled = null;
+                return node;
+            }
+
+            ByteBuffer buffer;
+            try {
+                buffer = ByteBuffer.allocateDirect((int) this.size);
+            } catch (OutOfMemoryError e) {
+                /*
+                 * The direct memory of the JVM is exhausted (see -XX:MaxDirectMemorySize).
+                 */
+                spillChunks();
+                return toNode();
+            }
+
+            for (ByteBuffer chunk : this.chunks) {
+                chunk.flip();
+                buffer.put(chunk);
+            }
+
+            buffer.flip();
+            releaseChunks(this.size);
+            return new Node(buffer.asReadOnlyBuffer(), null, this.size);
+        }
+
+        /**
+         * This method discards the written content.
+         */
+        private void discard() {
+            try {close();}catch(IOException ignore) {}
+            if (this.spilled != null) {
+                this.spilled.delete();
+                this.spilled = null;
+            }
+
+            releaseChunks(0);
+        }
+
+        /**
+         * This method writes the chunks within a new spilled file and releases them.
+         */
+        private void spillChunks() throws IOException {
+            File file = newSpilledFile();
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try {
+                for (ByteBuffer chunk : this.chunks) {
+                    chunk.flip();
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                }
+            } catch (IOException e) {
+                channel.close();
+                file.delete();
+                throw e;
+            }
+
+            this.spilled = file;
+            this.spilledChannel = channel;
+            releaseChunks(0);
+        }
+
+        /**
+         * This method returns the chunks to the pool, the reservation of the chunks is reduced to the passed 
+         * amount of bytes.
+         */
+        private void releaseChunks(long keep) {
+            for (ByteBuffer chunk : this.chunks) {
+                BufferPool.direct().release(chunk);
+            }
+
+            this.chunks.clear();
+            usedBytes.addAndGet(keep - this.reserved);
+            this.reserved = 0;
+        }
+    }
+
+    /**
+     * This class is a read only channel over a buffer.
+     */
+    private static class BufferChannel implements SeekableByteChannel {
+        private final ByteBuffer buffer;
+        private volatile boolean open = true;
+
+        private BufferChannel(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            ensureOpen();
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int read = Math.min(dst.remaining(), this.buffer.remaining());
+            ByteBuffer slice = this.buffer.duplicate();
+            slice.limit(slice.position() + read);
+            dst.put(slice);
+            this.buffer.position(this.buffer.position() + read);
+            return read;
+        }
+
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        public synchronized long position() throws IOException {
+            ensureOpen();
+            return this.buffer.position();
+        }
+
+        public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+            ensureOpen();
+            if (newPosition < 0) {
+                throw new IllegalArgumentException("The position must be a positive number.");
+            }
+
+            this.buffer.position((int) Math.min(newPosition, this.buffer.limit()));
+            return this;
+        }
+
+        public long size() throws IOException {
+            ensureOpen();
+            return this.buffer.limit();
+        }
+
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        public boolean isOpen() {
+            return this.open;
+        }
+
+        public void close() {
+            this.open = false;
+        }
+
+        private void ensureOpen() throws IOException {
+            if (!this.open) {
+                throw new ClosedChannelException();
+            }
+        }
+    }
+}
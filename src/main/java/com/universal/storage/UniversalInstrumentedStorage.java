@@ -0,0 +1,403 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.storage.metrics.JmxUniversalMetrics;
+import com.universal.storage.metrics.UniversalMetrics;
+import com.universal.util.BufferPool;
+import com.universal.util.CountingInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class measures the operations of the decorated storage: latency, transferred bytes, errors by type 
+ * and in-flight operations.  The measures are reported to a UniversalMetrics tagged by the settings' provider.
+ */
+public class UniversalInstrumentedStorage extends UniversalStorageDecorator {
+    private static final Map<String, UniversalMetrics> IMPLEMENTATIONS = new ConcurrentHashMap<String, UniversalMetrics>();
+
+    private final UniversalMetrics metrics;
+    private final UniversalProvider provider;
+
+    /**
+     * This constructor instantiates a new instrumented storage.
+     * 
+     * @param delegate is the decorated storage.
+     * @param metrics receives the measures.
+     */
+    public UniversalInstrumentedStorage(UniversalStorage delegate, UniversalMetrics metrics) {
+        super(delegate);
+        this.metrics = metrics;
+        this.provider = this.settings.getProvider();
+    }
+
+    /**
+     * This method returns the metrics implementation of the passed class, the implementations are shared 
+     * by the storages.  A null class name returns the default JMX implementation.
+     * 
+     * @param className of the implementation.
+     */
+    static UniversalMetrics resolveMetrics(String className) throws Exception {
+        if (className == null || "".equals(className.trim())) {
+            return JmxUniversalMetrics.getDefault();
+        }
+
+        UniversalMetrics metrics = IMPLEMENTATIONS.get(className);
+        if (metrics == null) {
+            metrics = (UniversalMetrics) Class.forName(className).getConstructor().newInstance();
+            UniversalMetrics previous = IMPLEMENTATIONS.putIfAbsent(className, metrics);
+            metrics = previous == null ? metrics : previous;
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics implementation of this storage.
+     */
+    public UniversalMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    void storeFile(File file, String path) throws UniversalIOException {
+        long start = begin("storeFile");
+        long length = file.length();
+        long bytes = 0;
+        Exception error = null;
+        try {
+            super.storeFile(file, path);
+            bytes = length;
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("storeFile", start, bytes, error);
+        }
+    }
+
+    void storeFile(String path) throws UniversalIOException {
+        long start = begin("storeFile");
+        long length = new File(path).length();
+        long bytes = 0;
+        Exception error = null;
+        try {
+            super.storeFile(path);
+            bytes = length;
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("storeFile", start, bytes, error);
+        }
+    }
+
+    void storeFile(String path, String targetPath) throws UniversalIOException {
+        long start = begin("storeFile");
+        long length = new File(path).length();
+        long bytes = 0;
+        Exception error = null;
+        try {
+            super.storeFile(path, targetPath);
+            bytes = length;
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("storeFile", start, bytes, error);
+        }
+    }
+
+    public void storeStream(InputStream stream, String path, long contentLengthHint) throws UniversalIOException {
+        CountingInputStream counting = new CountingInputStream(stream);
+        long start = begin("storeStream");
+        Exception error = null;
+        try {
+            super.storeStream(counting, path, contentLengthHint);
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("storeStream", start, counting.getCount(), error);
+        }
+    }
+
+    public UniversalOutputStream openForWrite(String path) throws UniversalIOException {
+        long start = begin("openForWrite");
+        Exception error = null;
+        try {
+            return super.openForWrite(path);
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("openForWrite", start, 0, error);
+        }
+    }
+
+    void removeFile(String path) throws UniversalIOException {
+        long start = begin("removeFile");
+        Exception error = null;
+        try {
+            super.removeFile(path);
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("removeFile", start, 0, error);
+        }
+    }
+
+    void createFolder(String path) throws UniversalIOException {
+        long start = begin("createFolder");
+        Exception error = null;
+        try {
+            super.createFolder(path);
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("createFolder", start, 0, error);
+        }
+    }
+
+    void removeFolder(String path) throws UniversalIOException {
+        long start = begin("removeFolder");
+        Exception error = null;
+        try {
+            super.removeFolder(path);
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("removeFolder", start, 0, error);
+        }
+    }
+
+    File retrieveFile(String path) throws UniversalIOException {
+        long start = begin("retrieveFile");
+        Exception error = null;
+        File file = null;
+        try {
+            file = super.retrieveFile(path);
+            return file;
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("retrieveFile", start, file == null ? 0 : file.length(), error);
+        }
+    }
+
+    public void resumeStore(File file, String path) throws UniversalIOException {
+        long start = begin("resumeStore");
+        long length = file.length();
+        long bytes = 0;
+        Exception error = null;
+        try {
+            super.resumeStore(file, path);
+            bytes = length;
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("resumeStore", start, bytes, error);
+        }
+    }
+
+    public File resumeRetrieve(String path) throws UniversalIOException {
+        long start = begin("resumeRetrieve");
+        Exception error = null;
+        File file = null;
+        try {
+            file = super.resumeRetrieve(path);
+            return file;
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("resumeRetrieve", start, file == null ? 0 : file.length(), error);
+        }
+    }
+
+    /**
+     * The latency is measured until the stream is returned, the bytes are reported when the stream is closed.
+     */
+    InputStream retrieveFileAsStream(String path) throws UniversalIOException {
+        long start = begin("retrieveFileAsStream");
+        Exception error = null;
+        try {
+            return count("retrieveFileAsStream", super.retrieveFileAsStream(path));
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("retrieveFileAsStream", start, 0, error);
+        }
+    }
+
+    /**
+     * The latency is measured until the stream is returned, the bytes are reported when the stream is closed.
+     */
+    public InputStream retrieveRange(String path, long offset, long length) throws UniversalIOException {
+        long start = begin("retrieveRange");
+        Exception error = null;
+        try {
+            return count("retrieveRange", super.retrieveRange(path, offset, length));
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("retrieveRange", start, 0, error);
+        }
+    }
+
+    public SeekableByteChannel retrieveFileAsChannel(String path) throws UniversalIOException {
+        long start = begin("retrieveFileAsChannel");
+        Exception error = null;
+        try {
+            return super.retrieveFileAsChannel(path);
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("retrieveFileAsChannel", start, 0, error);
+        }
+    }
+
+    void clean() throws UniversalIOException {
+        long start = begin("clean");
+        Exception error = null;
+        try {
+            super.clean();
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("clean", start, 0, error);
+        }
+    }
+
+    void wipe() throws UniversalIOException {
+        long start = begin("wipe");
+        Exception error = null;
+        try {
+            super.wipe();
+        } catch (UniversalIOException | RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            end("wipe", start, 0, error);
+        }
+    }
+
+    public UniversalBatchResult storeFiles(Map<String, String> files) {
+        long start = begin("storeFiles");
+        UniversalBatchResult result = null;
+        try {
+            result = super.storeFiles(files);
+            return result;
+        } finally {
+            end("storeFiles", start, 0, firstError(result));
+        }
+    }
+
+    public UniversalBatchResult removeFiles(Collection<String> paths) {
+        long start = begin("removeFiles");
+        UniversalBatchResult result = null;
+        try {
+            result = super.removeFiles(paths);
+            return result;
+        } finally {
+            end("removeFiles", start, 0, firstError(result));
+        }
+    }
+
+    public UniversalBatchResult retrieveFiles(Collection<String> paths) {
+        long start = begin("retrieveFiles");
+        UniversalBatchResult result = null;
+        try {
+            result = super.retrieveFiles(paths);
+            return result;
+        } finally {
+            end("retrieveFiles", start, 0, firstError(result));
+        }
+    }
+
+    private long begin(String operation) {
+        this.metrics.operationStarted(this.provider, operation);
+        return System.nanoTime();
+    }
+
+    private void end(String operation, long start, long bytes, Exception error) {
+        this.metrics.operationFinished(this.provider, operation, System.nanoTime() - start, bytes, error);
+        reportBuffers();
+    }
+
+    /**
+     * This method reports the utilization of the shared buffer pools as gauges.
+     */
+    private void reportBuffers() {
+        this.metrics.recordGauge(this.provider, "buffers.heap.in_use", BufferPool.heap().getInUseBytes());
+        this.metrics.recordGauge(this.provider, "buffers.heap.pooled", BufferPool.heap().getPooledBytes());
+        this.metrics.recordGauge(this.provider, "buffers.direct.in_use", BufferPool.direct().getInUseBytes());
+        this.metrics.recordGauge(this.provider, "buffers.direct.pooled", BufferPool.direct().getPooledBytes());
+    }
+
+    private Exception firstError(UniversalBatchResult result) {
+        if (result == null) {
+            return null;
+        }
+
+        for (UniversalBatchResult.Item item : result.getItems()) {
+            if (!item.isSuccessful()) {
+                return item.getError();
+            }
+        }
+
+        return null;
+    }
+
+    private InputStream count(final String operation, InputStream stream) {
+        return new CountingInputStream(stream) {
+            private boolean closed;
+
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!this.closed) {
+                        this.closed = true;
+                        metrics.recordBytes(provider, operation, getCount());
+                    }
+                }
+            }
+        };
+    }
+}
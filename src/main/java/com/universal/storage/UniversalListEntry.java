@@ -0,0 +1,76 @@
+package com.universal.storage;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class represents a file or a folder returned by a listing.
+ */
+public class UniversalListEntry {
+    private final String name;
+    private final long size;
+    private final long modified;
+    private final String remotePath;
+    private final boolean folder;
+
+    /**
+     * This constructor instantiates a new UniversalListEntry with the passed attributes.
+     * 
+     * @param name of the file or folder.
+     * @param size in bytes, 0 for folders and -1 when unknown.
+     * @param modified is the last modification time in milliseconds, 0 when unknown.
+     * @param remotePath is the path within the root, as in UniversalStorageData.
+     * @param folder indicates if this entry is a folder.
+     */
+    public UniversalListEntry(String name, long size, long modified, String remotePath, boolean folder) {
+        this.name = name;
+        this.size = size;
+        this.modified = modified;
+        this.remotePath = remotePath;
+        this.folder = folder;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public long getSize() {
+        return this.size;
+    }
+
+    public long getModified() {
+        return this.modified;
+    }
+
+    public String getRemotePath() {
+        return this.remotePath;
+    }
+
+    public boolean isFolder() {
+        return this.folder;
+    }
+
+    public String toString() {
+        return this.remotePath + (this.folder ? "/" : " " + this.size);
+    }
+}
@@ -0,0 +1,58 @@
+package com.universal.storage;
+
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class represents a page of a listing returned by a provider, the marker is passed to 
+ * the provider to request the next page.
+ */
+public class UniversalListPage {
+    private final List<UniversalListEntry> entries;
+    private final String nextMarker;
+
+    /**
+     * This constructor instantiates a new UniversalListPage.
+     * 
+     * @param entries of this page.
+     * @param nextMarker to request the next page, null if this is the last page.
+     */
+    public UniversalListPage(List<UniversalListEntry> entries, String nextMarker) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.nextMarker = nextMarker;
+    }
+
+    public List<UniversalListEntry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * Returns the marker of the next page, null if this is the last page.
+     */
+    public String getNextMarker() {
+        return this.nextMarker;
+    }
+}
@@ -0,0 +1,223 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.util.FileUtil;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class iterates the entries of a listing, the entries are fetched on demand, so only the 
+ * current page is kept within memory.  The errors of the provider are thrown as UncheckedIOException, 
+ * its cause is the UniversalIOException.
+ * 
+ * The listing must be closed if it's not iterated until the end, i.e: the file system provider keeps 
+ * the open folders.
+ */
+public abstract class UniversalListing implements Iterator<UniversalListEntry>, Closeable {
+    private UniversalListEntry next;
+    private boolean finished;
+
+    /**
+     * This method fetches the next entry of the listing.
+     * 
+     * @returns the next entry, null when the listing has no more entries.
+     */
+    protected abstract UniversalListEntry fetch() throws UniversalIOException;
+
+    public boolean hasNext() {
+        if (this.next == null && !this.finished) {
+            try {
+                this.next = fetch();
+            } catch (UniversalIOException e) {
+                close();
+                throw new UncheckedIOException(new IOException(e.getMessage(), e));
+            }
+
+            if (this.next == null) {
+                close();
+            }
+        }
+
+        return this.next != null;
+    }
+
+    public UniversalListEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        UniversalListEntry entry = this.next;
+        this.next = null;
+        return entry;
+    }
+
+    /**
+     * This method returns a sequential stream of the remaining entries, closing the stream closes this listing.
+     */
+    public Stream<UniversalListEntry> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, 
+                    Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+    }
+
+    /**
+     * This method releases the resources of this listing, the remaining entries are discarded.
+     */
+    public void close() {
+        this.finished = true;
+        this.next = null;
+    }
+
+    /**
+     * This class fetches the entries page by page through the passed source.
+     */
+    static class Paged extends UniversalListing {
+        private final PageSource source;
+        private Iterator<UniversalListEntry> page;
+        private String marker;
+
+        /**
+         * The first page is requested right away, so the errors of the request (i.e: a missing folder) 
+         * are thrown by the list method.
+         */
+        Paged(PageSource source) throws UniversalIOException {
+            this.source = source;
+            load(null);
+        }
+
+        protected UniversalListEntry fetch() throws UniversalIOException {
+            while (!this.page.hasNext()) {
+                if (this.marker == null) {
+                    return null;
+                }
+
+                load(this.marker);
+            }
+
+            return this.page.next();
+        }
+
+        private void load(String marker) throws UniversalIOException {
+            UniversalListPage current = this.source.fetch(marker);
+            this.page = current.getEntries().iterator();
+            this.marker = current.getNextMarker();
+        }
+    }
+
+    /**
+     * This class walks a folder of the file system, only the streams of the folders between the 
+     * listed folder and the current entry are kept open.  The symbolic links aren't followed.
+     */
+    static class Tree extends UniversalListing {
+        private final Deque<Level> levels = new ArrayDeque<Level>();
+        private final boolean recursive;
+
+        Tree(File folder, String remotePath, boolean recursive) throws IOException {
+            this.recursive = recursive;
+            this.levels.push(new Level(folder.toPath(), remotePath));
+        }
+
+        protected UniversalListEntry fetch() throws UniversalIOException {
+            try {
+                while (!this.levels.isEmpty()) {
+                    Level level = this.levels.peek();
+                    if (!level.iterator.hasNext()) {
+                        this.levels.pop().close();
+                        continue;
+                    }
+
+                    Path child = level.iterator.next();
+                    /*
+                     * The links aren't followed, so a link to a folder isn't walked (it could point outside 
+                     * of the root or create a cycle) and it's listed as a file.
+                     */
+                    BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class, 
+                                LinkOption.NOFOLLOW_LINKS);
+                    String remotePath = FileUtil.join(level.remotePath, child.getFileName().toString());
+                    if (attributes.isDirectory() && this.recursive) {
+                        this.levels.push(new Level(child, remotePath));
+                    }
+
+                    return new UniversalListEntry(child.getFileName().toString(), 
+                                attributes.isDirectory() ? 0 : attributes.size(), 
+                                attributes.lastModifiedTime().toMillis(), remotePath, attributes.isDirectory());
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                throw new UniversalIOException(e.getMessage());
+            }
+
+            return null;
+        }
+
+        public void close() {
+            super.close();
+            while (!this.levels.isEmpty()) {
+                this.levels.pop().close();
+            }
+        }
+
+        /**
+         * This class represents an open folder of the walk.
+         */
+        private static class Level {
+            private final DirectoryStream<Path> stream;
+            private final Iterator<Path> iterator;
+            private final String remotePath;
+
+            private Level(Path folder, String remotePath) throws IOException {
+                this.stream = Files.newDirectoryStream(folder);
+                this.iterator = this.stream.iterator();
+                this.remotePath = remotePath;
+            }
+
+            private void close() {
+                try {this.stream.close();}catch(IOException ignore) {}
+            }
+        }
+    }
+
+    /**
+     * This interface represents the request of a page to the provider.
+     */
+    interface PageSource {
+        UniversalListPage fetch(String marker) throws UniversalIOException;
+    }
+}
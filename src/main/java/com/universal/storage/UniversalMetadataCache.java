@@ -0,0 +1,137 @@
+package com.universal.storage;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class keeps the stats of the files for the settings' metadata ttl, the missing files are kept 
+ * too so the existence checks are answered locally.  The cache is bounded by the settings' metadata max 
+ * entries, the least recently used entries are evicted first.
+ * 
+ * Every invalidation increments a generation, a stat fetched before an invalidation is not cached since 
+ * it could be stale.
+ */
+class UniversalMetadataCache {
+    private final LinkedHashMap<String, Entry> entries;
+    private final long ttl;
+    private long generation;
+
+    /**
+     * This constructor instantiates a new cache.
+     * 
+     * @param ttl is the milliseconds an entry is valid.
+     * @param maxEntries is the max amount of entries.
+     */
+    UniversalMetadataCache(long ttl, final int maxEntries) {
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the current generation, it must be passed to put.
+     */
+    synchronized long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * This method returns the cached entry of the passed path, null if it's missing or expired.
+     * 
+     * @param path in context.
+     */
+    synchronized Entry get(String path) {
+        String key = normalize(path);
+        Entry entry = this.entries.get(key);
+        if (entry != null && entry.expires < System.currentTimeMillis()) {
+            this.entries.remove(key);
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * This method caches the stat of the passed path if there wasn't an invalidation since the passed generation.
+     * 
+     * @param path in context.
+     * @param stat of the file, null if the file doesn't exist.
+     * @param generation returned by getGeneration before fetching the stat.
+     */
+    synchronized void put(String path, UniversalFileStat stat, long generation) {
+        if (generation == this.generation) {
+            this.entries.put(normalize(path), new Entry(stat, System.currentTimeMillis() + this.ttl));
+        }
+    }
+
+    /**
+     * This method removes the passed path from the cache.
+     * 
+     * @param path in context.
+     */
+    synchronized void invalidate(String path) {
+        this.generation++;
+        this.entries.remove(normalize(path));
+    }
+
+    /**
+     * This method removes every entry from the cache.
+     */
+    synchronized void invalidateAll() {
+        this.generation++;
+        this.entries.clear();
+    }
+
+    private String normalize(String path) {
+        String normalized = path.replace(File.separatorChar, '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+
+        return normalized;
+    }
+
+    /**
+     * This class represents a cached stat, a null stat means the file doesn't exist.
+     */
+    static class Entry {
+        private final UniversalFileStat stat;
+        private final long expires;
+
+        private Entry(UniversalFileStat stat, long expires) {
+            this.stat = stat;
+            this.expires = expires;
+        }
+
+        UniversalFileStat getStat() {
+            return this.stat;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import java.io.InputStream;
+import java.util.List;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This interface declares the methods implemented by the providers that are able to upload a file in 
+ * parts (i.e: s3's multipart upload or google drive's resumable upload).  The parts of an upload could be 
+ * uploaded concurrently and in any order, a failed part could be uploaded again with the same number.
+ * 
+ * These methods don't trigger events, the core triggers them while uploading the parts.
+ */
+public interface UniversalMultipartProvider {
+    /**
+     * This method starts a new multipart upload.
+     * 
+     * @param path is the path for the new file within the root, including its name.
+     * @param size is the size of the file, -1 when unknown.
+     * @returns the id of the upload.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    String initUpload(String path, long size) throws UniversalIOException;
+
+    /**
+     * This method uploads a part of a multipart upload, the stream must not be closed.
+     * 
+     * @param uploadId returned by initUpload.
+     * @param partNumber is the position of this part within the file, starting with 1.
+     * @param stream with the content of this part.
+     * @param length is the amount of bytes of this part.
+     * @returns the tag of the uploaded part (i.e: s3's etag), it will be passed to completeUpload.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    String uploadPart(String uploadId, int partNumber, InputStream stream, long length) throws UniversalIOException;
+
+    /**
+     * This method assembles the uploaded parts into the new file.
+     * 
+     * @param uploadId returned by initUpload.
+     * @param tags of the parts following the order of the part numbers.
+     * @returns useful information about the stored file.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    UniversalStorageData completeUpload(String uploadId, List<String> tags) throws UniversalIOException;
+
+    /**
+     * This method discards a multipart upload and its uploaded parts.
+     * 
+     * @param uploadId returned by initUpload.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    void abortUpload(String uploadId) throws UniversalIOException;
+}
@@ -0,0 +1,623 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.util.BoundedInputStream;
+import com.universal.util.ChecksumInputStream;
+import com.universal.util.BufferPool;
+import com.universal.util.FileUtil;
+import com.universal.util.PathValidator;
+import com.universal.util.SegmentChecksum;
+import com.universal.util.TaskGroup;
+import com.universal.util.TransferChecksum;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.json.JSONObject;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class uploads the large files in parts through a provider that implements UniversalMultipartProvider.
+ * The files reaching the settings' multipart threshold are split into parts of the multipart part size, 
+ * the parts are uploaded concurrently (up to the multipart parallelism) and a failed part is uploaded 
+ * again (up to the multipart retries) without uploading the whole file again.
+ * 
+ * The streams are split while they are read, so the content length doesn't need to be known.  Every 
+ * uploaded part triggers the onUploadProgress event.
+ * 
+ * The uploads of files keep a checkpoint within the tmp folder, so an interrupted upload can be continued 
+ * through resumeStore.
+ */
+public class UniversalMultipartStorage extends UniversalStorageDecorator {
+    private static final long RETRY_DELAY = 200;
+
+    private final UniversalMultipartProvider provider;
+    private final int partSize;
+    private final int parallelism;
+    private final long threshold;
+    private final int retries;
+    private final Set<String> transfers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * This constructor instantiates a new multipart storage for the passed provider.
+     * 
+     * @param delegate is the decorated storage, it must implement UniversalMultipartProvider.
+     */
+    public UniversalMultipartStorage(UniversalStorage delegate) {
+        super(delegate);
+        if (!(delegate instanceof UniversalMultipartProvider)) {
+            throw new IllegalArgumentException(delegate.getClass().getName() + " doesn't support multipart uploads.");
+        }
+
+        this.provider = (UniversalMultipartProvider) delegate;
+        this.partSize = (int) this.settings.getMultipartPartSize();
+        this.parallelism = this.settings.getMultipartParallelism();
+        this.threshold = this.settings.getMultipartThreshold();
+        this.retries = this.settings.getMultipartRetries();
+    }
+
+    void storeFile(File file, String path) throws UniversalIOException {
+        storeFile(file, path, false, null);
+    }
+
+    /**
+     * This method continues the interrupted upload of the passed file from its checkpoint, if there is 
+     * no checkpoint for the file the whole file is uploaded.
+     */
+    public void resumeStore(File file, String path) throws UniversalIOException {
+        storeFile(file, path, true, null);
+    }
+
+    /**
+     * This method uploads the file in parts recording the CRC of every part into the passed checksum, 
+     * the CRCs of the parts uploaded before an interruption are kept within the checkpoint.
+     */
+    void storeFile(File file, String path, boolean resume, SegmentChecksum checksum) throws UniversalIOException {
+        if (file.isDirectory() || file.length() < this.threshold) {
+            this.delegate.storeFile(file, path, false, checksum);
+            return;
+        }
+
+        uploadFile(file, FileUtil.join(path, file.getName()), resume, checksum);
+    }
+
+    void storeFile(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), null);
+    }
+
+    void storeFile(String path, String targetPath) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), targetPath);
+    }
+
+    public UniversalBatchResult storeFiles(Map<String, String> files) {
+        List<UniversalBatchResult.Item> items = new ArrayList<UniversalBatchResult.Item>(files.size());
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            items.add(new UniversalBatchResult.Item(entry.getKey(), entry.getValue()));
+        }
+
+        return executeBatch(items, item -> storeFile(item.getSource(), item.getPath()));
+    }
+
+    /**
+     * This method uploads the stream in parts, a stream shorter than the threshold is stored in one request.
+     */
+    public void storeStream(InputStream stream, String path, long contentLengthHint) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        if (contentLengthHint >= 0 && contentLengthHint < this.threshold) {
+            super.storeStream(stream, path, contentLengthHint);
+            return;
+        }
+
+        uploadStream(stream, path, contentLengthHint);
+    }
+
+    /**
+     * This method stages the written bytes within the tmp folder, the file is uploaded in parts when 
+     * the stream is closed.
+     */
+    public UniversalOutputStream openForWrite(final String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        try {
+            final File staged = stageFile(path);
+            return new UniversalOutputStream(new FileOutputStream(staged), () -> {
+                try {
+                    storeFile(staged, FileUtil.getParent(path));
+                } finally {
+                    discardStagedFile(staged);
+                }
+            }, () -> discardStagedFile(staged));
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        }
+    }
+
+    /**
+     * This method uploads the parts of a file, every worker reads its parts through its own channel.
+     * The upload keeps a checkpoint with the upload id and the uploaded parts, so an interrupted upload 
+     * can be continued by resumeStore.  A new upload of the same path discards the previous checkpoint.
+     * 
+     * @param file to be uploaded.
+     * @param path is the path for the new file within the root, including its name.
+     * @param resume indicates if the upload continues from the checkpoint of the same file.
+     * @param checksum where the CRCs of the parts are recorded, null if they aren't computed.
+     */
+    private void uploadFile(final File file, final String path, boolean resume, SegmentChecksum checksum) throws UniversalIOException {
+        triggerOnStoreFileListeners();
+
+        final long size = file.length();
+        final int parts = (int) ((size + this.partSize - 1) / this.partSize);
+        final String key = UniversalCheckpoint.idOf(path);
+
+        if (!this.transfers.add(key)) {
+            /*
+             * The same path is being uploaded by another thread, so this upload doesn't use a checkpoint.
+             */
+            try {
+                uploadParts(file, path, size, parts, this.provider.initUpload(path, size), null, checksum);
+            } catch (UniversalIOException e) {
+                triggerOnErrorListeners(e);
+                throw e;
+            }
+
+            return;
+        }
+
+        try {
+            File checkpointFile = UniversalCheckpoint.fileOf(this.settings, "store", path);
+            UniversalCheckpoint checkpoint = UniversalCheckpoint.load(checkpointFile);
+            if (checkpoint != null && (!resume || !matches(checkpoint, file, size))) {
+                abort(checkpoint.getAttributes().getString("upload_id"));
+                checkpoint.delete();
+                checkpoint = null;
+            }
+
+            String uploadId;
+            if (checkpoint == null) {
+                uploadId = this.provider.initUpload(path, size);
+
+                JSONObject attributes = new JSONObject();
+                attributes.put("source", file.getAbsolutePath());
+                attributes.put("size", size);
+                attributes.put("modified", file.lastModified());
+                attributes.put("part_size", this.partSize);
+                attributes.put("upload_id", uploadId);
+                try {
+                    checkpoint = UniversalCheckpoint.create(checkpointFile, attributes);
+                } catch (IOException e) {
+                    checkpointFailed(path, e);
+                }
+            } else {
+                uploadId = checkpoint.getAttributes().getString("upload_id");
+            }
+
+            uploadParts(file, path, size, parts, uploadId, checkpoint, checksum);
+        } catch (UniversalIOException e) {
+            triggerOnErrorListeners(e);
+            throw e;
+        } finally {
+            this.transfers.remove(key);
+        }
+    }
+
+    /**
+     * This method uploads the parts that aren't within the checkpoint and completes the upload.  A failed 
+     * part keeps the upload and its checkpoint, so it can be resumed.
+     * 
+     * @param file to be uploaded.
+     * @param path is the path for the new file within the root, including its name.
+     * @param size of the file.
+     * @param parts is the amount of parts.
+     * @param uploadId in context.
+     * @param checkpoint of the upload, null when the upload is not resumable.
+     * @param checksum where the CRCs of the parts are recorded, null if they aren't computed.
+     */
+    private void uploadParts(final File file, final String path, final long size, final int parts, final String uploadId, 
+                final UniversalCheckpoint checkpoint, final SegmentChecksum checksum) throws UniversalIOException {
+        final String[] tags = new String[parts];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicLong transferred = new AtomicLong();
+        final AtomicReference<UniversalIOException> failure = new AtomicReference<UniversalIOException>();
+
+        if (checkpoint != null) {
+            for (Map.Entry<Integer, String> done : checkpoint.getDone().entrySet()) {
+                if (done.getKey() < parts) {
+                    long offset = (long) done.getKey() * this.partSize;
+                    long length = Math.min(this.partSize, size - offset);
+                    tags[done.getKey()] = done.getValue();
+                    transferred.addAndGet(length);
+
+                    long crc = TransferChecksum.parse(checkpoint.getChecksum(done.getKey()));
+                    if (checksum != null && crc >= 0) {
+                        checksum.add(offset, length, crc);
+                    }
+                }
+            }
+        }
+
+        final Runnable worker = () -> {
+            int index;
+            while (failure.get() == null && (index = next.getAndIncrement()) < parts) {
+                if (tags[index] != null) {
+                    continue;
+                }
+
+                final long offset = (long) index * this.partSize;
+                final long length = Math.min(this.partSize, size - offset);
+                final TransferChecksum[] crc = new TransferChecksum[1];
+                try {
+                    tags[index] = uploadPart(uploadId, index + 1, length, () -> {
+                        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                        try {
+                            channel.position(offset);
+                        } catch (IOException e) {
+                            channel.close();
+                            throw e;
+                        }
+
+                        InputStream stream = new BoundedInputStream(Channels.newInputStream(channel), length);
+                        if (checksum == null) {
+                            return stream;
+                        }
+
+                        /*
+                         * Every attempt computes the CRC of the bytes it reads, the CRC of the attempt that 
+                         * uploaded the part is recorded if the provider read the whole part.
+                         */
+                        crc[0] = new TransferChecksum(false);
+                        return new ChecksumInputStream(stream, crc[0]);
+                    });
+
+                    String value = null;
+                    if (checksum != null && crc[0].getBytes() == length) {
+                        checksum.add(offset, length, crc[0].getCrc());
+                        value = crc[0].getValue();
+                    }
+
+                    if (checkpoint != null) {
+                        try {
+                            checkpoint.complete(index, tags[index], value);
+                        } catch (IOException e) {
+                            checkpointFailed(path, e);
+                        }
+                    }
+
+                    triggerOnUploadProgressListeners(new UniversalTransferProgress(path, transferred.addAndGet(length), size));
+                } catch (UniversalIOException e) {
+                    failure.compareAndSet(null, e);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, new UniversalIOException(e.getMessage()));
+                }
+            }
+        };
+
+        /*
+         * The parts are uploaded by the executor and the calling thread, the workers not started by the executor 
+         * are run by the calling thread, so an upload called within the executor (i.e: storeFiles) never waits 
+         * for a queued worker.
+         */
+        TaskGroup group = new TaskGroup(getExecutor());
+        for (int i = 1; i < Math.min(this.parallelism, parts); i++) {
+            group.fork(worker);
+        }
+
+        try {
+            try {
+                worker.run();
+            } finally {
+                group.join();
+            }
+        } catch (RuntimeException | Error e) {
+            abort(uploadId);
+            if (checkpoint != null) {
+                checkpoint.delete();
+            }
+
+            throw e;
+        }
+
+        if (failure.get() != null) {
+            if (checkpoint == null) {
+                abort(uploadId);
+            }
+
+            throw failure.get();
+        }
+
+        UniversalStorageData data;
+        try {
+            data = this.provider.completeUpload(uploadId, Arrays.asList(tags));
+        } catch (UniversalIOException e) {
+            abort(uploadId);
+            if (checkpoint != null) {
+                checkpoint.delete();
+            }
+
+            throw e;
+        }
+
+        if (checkpoint != null) {
+            checkpoint.delete();
+        }
+
+        triggerOnFileStoredListeners(data);
+    }
+
+    /**
+     * This method verifies if the checkpoint belongs to the passed file and the current part size.
+     * 
+     * @param checkpoint in context.
+     * @param file to be uploaded.
+     * @param size of the file.
+     */
+    private boolean matches(UniversalCheckpoint checkpoint, File file, long size) {
+        JSONObject attributes = checkpoint.getAttributes();
+        return file.getAbsolutePath().equals(attributes.optString("source")) 
+                    && attributes.optLong("size") == size 
+                    && attributes.optLong("modified") == file.lastModified() 
+                    && attributes.optLong("part_size") == this.partSize;
+    }
+
+    /**
+     * This method reads the stream part by part and uploads the read parts concurrently, the amount of 
+     * parts in memory is bounded by the parallelism.
+     * 
+     * @param stream with the content.
+     * @param path is the path for the new file within the root, including its name.
+     * @param size is the expected amount of bytes, -1 when unknown.
+     */
+    private void uploadStream(InputStream stream, final String path, final long size) throws UniversalIOException {
+        ByteBuffer part;
+        try {
+            part = readPart(stream);
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        }
+
+        if (part.limit() < this.partSize) {
+            try {
+                super.storeStream(new ByteArrayInputStream(part.array(), 0, part.limit()), path, part.limit());
+            } finally {
+                BufferPool.heap().release(part);
+            }
+
+            return;
+        }
+
+        triggerOnStoreFileListeners();
+
+        final String uploadId = initUpload(path, size);
+        final ConcurrentSkipListMap<Integer, String> tags = new ConcurrentSkipListMap<Integer, String>();
+        final AtomicLong transferred = new AtomicLong();
+        final AtomicReference<UniversalIOException> failure = new AtomicReference<UniversalIOException>();
+        final Semaphore permits = new Semaphore(this.parallelism);
+        final TaskGroup group = new TaskGroup(getExecutor());
+
+        int number = 1;
+        try {
+            while (part != null && failure.get() == null) {
+                /*
+                 * While every permit is taken the calling thread uploads the queued parts, the parts are 
+                 * not waiting for a thread of the executor that could be the calling thread itself.
+                 */
+                while (!permits.tryAcquire()) {
+                    if (!group.help()) {
+                        permits.acquire();
+                        break;
+                    }
+                }
+
+                final int partNumber = number++;
+                final ByteBuffer content = part;
+                final int length = part.limit();
+                part = null;
+                group.fork(() -> {
+                    try {
+                        if (failure.get() == null) {
+                            tags.put(partNumber, uploadPart(uploadId, partNumber, length, 
+                                        () -> new ByteArrayInputStream(content.array(), 0, length)));
+                            triggerOnUploadProgressListeners(new UniversalTransferProgress(path, 
+                                        transferred.addAndGet(length), size));
+                        }
+                    } catch (UniversalIOException e) {
+                        failure.compareAndSet(null, e);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, new UniversalIOException(e.getMessage()));
+                    } finally {
+                        BufferPool.heap().release(content);
+                        permits.release();
+                    }
+                });
+
+                if (length == this.partSize) {
+                    part = readPart(stream);
+                    if (part.limit() == 0) {
+                        BufferPool.heap().release(part);
+                        part = null;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new UniversalIOException("The upload of " + path + " was interrupted."));
+        } catch (IOException | RuntimeException e) {
+            failure.compareAndSet(null, new UniversalIOException(e.getMessage()));
+        } catch (Error e) {
+            failure.compareAndSet(null, new UniversalIOException(e.getMessage()));
+            try {
+                group.join();
+            } finally {
+                abort(uploadId);
+            }
+
+            throw e;
+        } finally {
+            BufferPool.heap().release(part);
+            try {
+                group.join();
+            } catch (RuntimeException | Error e) {
+                abort(uploadId);
+                throw e;
+            }
+        }
+
+        complete(uploadId, path, new ArrayList<String>(tags.values()), failure.get());
+    }
+
+    /**
+     * This method completes the upload, or aborts it if a part failed.
+     * 
+     * @param uploadId in context.
+     * @param path of the new file.
+     * @param tags of the uploaded parts.
+     * @param failure of a part, null if every part was uploaded.
+     */
+    private void complete(String uploadId, String path, List<String> tags, UniversalIOException failure) throws UniversalIOException {
+        if (failure != null) {
+            abort(uploadId);
+            triggerOnErrorListeners(failure);
+            throw failure;
+        }
+
+        UniversalStorageData data;
+        try {
+            data = this.provider.completeUpload(uploadId, tags);
+        } catch (UniversalIOException e) {
+            abort(uploadId);
+            triggerOnErrorListeners(e);
+            throw e;
+        }
+
+        triggerOnFileStoredListeners(data);
+    }
+
+    /**
+     * This method uploads a part, a failed part is uploaded again with a new stream up to the retries.
+     * 
+     * @param uploadId in context.
+     * @param partNumber of this part.
+     * @param length of this part.
+     * @param source opens a new stream with the content of this part.
+     */
+    private String uploadPart(String uploadId, int partNumber, long length, PartSource source) throws UniversalIOException {
+        UniversalIOException last = null;
+        for (int attempt = 0; attempt <= this.retries; attempt++) {
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(RETRY_DELAY << (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            try {
+                InputStream stream = source.open();
+                try {
+                    return this.provider.uploadPart(uploadId, partNumber, stream, length);
+                } finally {
+                    try {stream.close();}catch(IOException ignore) {}
+                }
+            } catch (UniversalIOException e) {
+                last = e;
+            } catch (IOException e) {
+                last = new UniversalIOException(e.getMessage());
+            }
+        }
+
+        throw last == null ? new UniversalIOException("The part " + partNumber + " was interrupted.") : last;
+    }
+
+    private String initUpload(String path, long size) throws UniversalIOException {
+        try {
+            return this.provider.initUpload(path, size);
+        } catch (UniversalIOException e) {
+            triggerOnErrorListeners(e);
+            throw e;
+        }
+    }
+
+    /**
+     * This method reports a checkpoint that couldn't be saved through the onError event, the upload goes 
+     * on but a resumed upload would upload the unsaved parts again.
+     */
+    private void checkpointFailed(String path, IOException e) {
+        triggerOnErrorListeners(new UniversalIOException("The checkpoint of " + path + " couldn't be saved: " + e.getMessage()));
+    }
+
+    private void abort(String uploadId) {
+        try {this.provider.abortUpload(uploadId);}catch(Exception ignore) {}
+    }
+
+    /**
+     * This method reads the next part of the stream into a buffer of the heap pool.
+     * 
+     * @param stream in context.
+     * @returns a buffer with the read bytes until its limit, shorter than the part size when the stream ends.  
+     *          The buffer must be released after uploading the part.
+     */
+    private ByteBuffer readPart(InputStream stream) throws IOException {
+        ByteBuffer part = BufferPool.heap().acquire(this.partSize);
+        try {
+            byte[] bytes = part.array();
+            int position = 0;
+            int read;
+            while (position < this.partSize && (read = stream.read(bytes, position, this.partSize - position)) != -1) {
+                position += read;
+            }
+
+            part.limit(position);
+            return part;
+        } catch (IOException e) {
+            BufferPool.heap().release(part);
+            throw e;
+        }
+    }
+
+    /**
+     * This interface opens a new stream with the content of a part.
+     */
+    private interface PartSource {
+        InputStream open() throws IOException;
+    }
+}
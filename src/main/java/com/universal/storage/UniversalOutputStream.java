@@ -0,0 +1,117 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.util.FileUtil;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Dynamicloud
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ * This class represents a stream returned by openForWrite, the written file will be committed
+ * within the storage when the stream is closed.  Call abort to discard the written bytes.
+ */
+public class UniversalOutputStream extends FilterOutputStream {
+    private final Action commit;
+    private final Action rollback;
+    private boolean closed;
+
+    /**
+     * This constructor instantiates a new UniversalOutputStream.
+     *
+     * @param out is the underlying stream.
+     * @param commit is executed after closing the underlying stream.
+     * @param rollback is executed after closing the underlying stream when this stream was aborted.
+     */
+    public UniversalOutputStream(OutputStream out, Action commit, Action rollback) {
+        super(out);
+        this.commit = commit;
+        this.rollback = rollback;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        this.out.write(b, off, len);
+    }
+
+    /**
+     * This method writes the remaining bytes of the passed stream, the input stream won't be closed.
+     * File streams are transferred through their channels.
+     * 
+     * @param input to be read.
+     * @returns the amount of written bytes.
+     */
+    public long transferFrom(InputStream input) throws IOException {
+        if (this.out instanceof UniversalOutputStream) {
+            return ((UniversalOutputStream) this.out).transferFrom(input);
+        }
+
+        return FileUtil.copy(input, this.out);
+    }
+
+    /**
+     * This method closes the underlying stream and commits the written file within the storage.
+     */
+    public void close() throws IOException {
+        finish(this.commit);
+    }
+
+    /**
+     * This method closes the underlying stream and discards the written bytes.
+     */
+    public void abort() throws IOException {
+        finish(this.rollback);
+    }
+
+    private void finish(Action action) throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        try {
+            this.out.close();
+        } catch (IOException e) {
+            runQuietly(this.rollback);
+            throw e;
+        }
+
+        try {
+            action.run();
+        } catch (UniversalIOException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private void runQuietly(Action action) {
+        try {action.run();}catch(Exception ignore) {}
+    }
+
+    /**
+     * This interface represents the action executed when the stream is finished.
+     */
+    public interface Action {
+        void run() throws UniversalIOException;
+    }
+}
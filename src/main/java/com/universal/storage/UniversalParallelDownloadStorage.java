@@ -0,0 +1,442 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.util.BufferPool;
+import com.universal.util.FileUtil;
+import com.universal.util.PathValidator;
+import com.universal.util.SegmentChecksum;
+import com.universal.util.TaskGroup;
+import com.universal.util.TransferChecksum;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.json.JSONObject;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class downloads the large files in segments through the range requests of the decorated storage.
+ * The target file is preallocated within the settings' tmp folder and every segment is written at its 
+ * position, so the segments are downloaded concurrently (up to the download parallelism) and a failed 
+ * segment is downloaded again (up to the download retries) without downloading the whole file again.
+ * 
+ * Every segment is verified by its amount of received bytes, and the remote length is requested again 
+ * before the file is moved to its final name, so a file replaced during the download is not returned.  The 
+ * files shorter than the download threshold and the files with an unknown length are retrieved in a single stream.
+ * 
+ * The downloads keep a checkpoint within the tmp folder, so an interrupted download can be continued 
+ * through resumeRetrieve.  The checkpoint records the length, the modification time, the hash and the remote 
+ * id of the file, the checkpoint of another version of the file is discarded.
+ */
+public class UniversalParallelDownloadStorage extends UniversalStorageDecorator {
+    private static final long RETRY_DELAY = 200;
+
+    private final long segmentSize;
+    private final int parallelism;
+    private final long threshold;
+    private final int retries;
+    private final Set<String> transfers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * This constructor instantiates a new parallel download storage.
+     * 
+     * @param delegate is the decorated storage, its retrieveRange method must request the ranges to the provider.
+     */
+    public UniversalParallelDownloadStorage(UniversalStorage delegate) {
+        super(delegate);
+        this.segmentSize = this.settings.getDownloadSegmentSize();
+        this.parallelism = this.settings.getDownloadParallelism();
+        this.threshold = this.settings.getDownloadThreshold();
+        this.retries = this.settings.getDownloadRetries();
+    }
+
+    /**
+     * This method retrieves the file in parallel segments when it reaches the threshold.
+     * 
+     * @param path in context.
+     * @returns a file within the tmp folder pointing to the retrieved file.
+     */
+    File retrieveFile(String path) throws UniversalIOException {
+        return retrieveFile(path, false, null);
+    }
+
+    /**
+     * This method continues the interrupted download of the passed file from its checkpoint, if there 
+     * is no checkpoint for the file the whole file is downloaded.
+     */
+    public File resumeRetrieve(String path) throws UniversalIOException {
+        return retrieveFile(path, true, null);
+    }
+
+    /**
+     * The files are stored by the decorated storage, so the CRCs of the uploaded parts are recorded by it.
+     */
+    void storeFile(File file, String path, boolean resume, SegmentChecksum checksum) throws UniversalIOException {
+        this.delegate.storeFile(file, path, resume, checksum);
+    }
+
+    /**
+     * This method retrieves the file in parallel segments recording the CRC of every segment into the 
+     * passed checksum, the CRCs of the segments downloaded before an interruption are kept within the 
+     * checkpoint.
+     */
+    File retrieveFile(String path, boolean resume, SegmentChecksum checksum) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        long length = getRemoteLength(path);
+        if (length < 0 || length < this.threshold) {
+            return super.retrieveFile(path);
+        }
+
+        /*
+         * The stat identifies the version of the file, the checkpoint of another version is discarded and the 
+         * stat is compared again when the download ends.
+         */
+        UniversalFileStat stat = fetchStat(path);
+        String key = UniversalCheckpoint.idOf(path);
+        if (stat == null || stat.getSize() != length || !this.transfers.add(key)) {
+            /*
+             * The version of the file is unknown or the same path is being downloaded by another thread, so 
+             * this download doesn't use a checkpoint.
+             */
+            return download(path, length, stat, new File(this.settings.getTmp() + "." + UUID.randomUUID() + ".part"), null, checksum);
+        }
+
+        try {
+            File part = new File(this.settings.getTmp() + "." + key + ".part");
+            File checkpointFile = UniversalCheckpoint.fileOf(this.settings, "retrieve", path);
+            UniversalCheckpoint checkpoint = UniversalCheckpoint.load(checkpointFile);
+            if (checkpoint != null && (!resume || !matches(checkpoint, part, stat))) {
+                checkpoint.delete();
+                checkpoint = null;
+            }
+
+            if (checkpoint == null) {
+                part.delete();
+
+                JSONObject attributes = new JSONObject();
+                attributes.put("path", path);
+                attributes.put("length", length);
+                attributes.put("modified", stat.getModified());
+                attributes.put("hash", stat.getHash());
+                attributes.put("remote_id", stat.getRemoteId());
+                attributes.put("segment_size", this.segmentSize);
+                try {
+                    checkpoint = UniversalCheckpoint.create(checkpointFile, attributes);
+                } catch (IOException e) {
+                    checkpointFailed(path, e);
+                }
+            }
+
+            return download(path, length, stat, part, checkpoint, checksum);
+        } finally {
+            this.transfers.remove(key);
+        }
+    }
+
+    /**
+     * This method downloads the segments of a file into a preallocated partial file, the segments within 
+     * the checkpoint are skipped.  A failed download keeps the partial file and its checkpoint, so it can 
+     * be resumed.
+     * 
+     * @param path in context.
+     * @param length of the remote file.
+     * @param stat of the remote file, null if the provider didn't return it.
+     * @param part is the partial file.
+     * @param checkpoint of the download, null when the download is not resumable.
+     * @param checksum where the CRCs of the segments are recorded, null if they aren't computed.
+     */
+    private File download(final String path, final long length, final UniversalFileStat stat, final File part, 
+                final UniversalCheckpoint checkpoint, final SegmentChecksum checksum) throws UniversalIOException {
+        /*
+         * Every download gets its own folder, so the files with the same name within different folders 
+         * don't overwrite each other.
+         */
+        final File target = new File(this.settings.getTmp() + UUID.randomUUID() + File.separator + FileUtil.getName(path));
+
+        final int segments = (int) ((length + this.segmentSize - 1) / this.segmentSize);
+        final boolean[] done = new boolean[segments];
+        final AtomicLong next = new AtomicLong();
+        final AtomicLong transferred = new AtomicLong();
+        final AtomicReference<UniversalIOException> failure = new AtomicReference<UniversalIOException>();
+
+        if (checkpoint != null) {
+            for (Integer index : checkpoint.getDone().keySet()) {
+                if (index < segments) {
+                    long offset = index * this.segmentSize;
+                    long size = Math.min(this.segmentSize, length - offset);
+                    done[index] = true;
+                    transferred.addAndGet(size);
+
+                    long crc = TransferChecksum.parse(checkpoint.getChecksum(index));
+                    if (checksum != null && crc >= 0) {
+                        checksum.add(offset, size, crc);
+                    }
+                }
+            }
+        }
+
+        boolean completed = false;
+        boolean stale = false;
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(part, "rw");
+            file.setLength(length);
+
+            final FileChannel channel = file.getChannel();
+            final Runnable worker = () -> {
+                long index;
+                while (failure.get() == null && (index = next.getAndIncrement()) < segments) {
+                    if (done[(int) index]) {
+                        continue;
+                    }
+
+                    long offset = index * this.segmentSize;
+                    long size = Math.min(this.segmentSize, length - offset);
+                    try {
+                        String crc = downloadSegment(path, channel, offset, size, checksum);
+                        if (checkpoint != null) {
+                            /*
+                             * The segment must be within the disk before being recorded as done.
+                             */
+                            channel.force(false);
+                            try {
+                                checkpoint.complete((int) index, "", crc);
+                            } catch (IOException e) {
+                                checkpointFailed(path, e);
+                            }
+                        }
+
+                        triggerOnDownloadProgressListeners(new UniversalTransferProgress(path, transferred.addAndGet(size), length));
+                    } catch (UniversalIOException e) {
+                        failure.compareAndSet(null, e);
+                    } catch (IOException | RuntimeException e) {
+                        failure.compareAndSet(null, new UniversalIOException(e.getMessage()));
+                    }
+                }
+            };
+
+            /*
+             * The segments are downloaded by the executor and the calling thread, the workers not started by the 
+             * executor are run by the calling thread, so a download called within the executor (i.e: retrieveFiles) 
+             * never waits for a queued worker.
+             */
+            TaskGroup group = new TaskGroup(getExecutor());
+            for (int i = 1; i < Math.min(this.parallelism, segments); i++) {
+                group.fork(worker);
+            }
+
+            try {
+                worker.run();
+            } finally {
+                group.join();
+            }
+
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+
+            /*
+             * Every segment verified its own amount of bytes, so the recorded segments must cover the file.  The 
+             * remote file is requested again, a file replaced during the download would mix two contents.
+             */
+            if (transferred.get() != length) {
+                throw new UniversalIOException("The segments of " + path + " have " + transferred.get() 
+                            + " bytes, " + length + " bytes were expected.");
+            }
+
+            if (stat == null ? getRemoteLength(path) != length : !same(stat, fetchStat(path))) {
+                stale = true;
+                throw new UniversalIOException("The file " + path + " changed during the download.");
+            }
+
+            channel.force(false);
+
+            file.close();
+            file = null;
+
+            target.getParentFile().mkdirs();
+            Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            completed = true;
+            return target;
+        } catch (IOException e) {
+            UniversalIOException error = new UniversalIOException(e.getMessage());
+            triggerOnErrorListeners(error);
+            throw error;
+        } catch (UniversalIOException e) {
+            triggerOnErrorListeners(e);
+            throw e;
+        } finally {
+            if (file != null) {
+                try {file.close();}catch(IOException ignore) {}
+            }
+
+            if (completed || stale || checkpoint == null) {
+                part.delete();
+                if (checkpoint != null) {
+                    checkpoint.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * This method verifies if the checkpoint belongs to the current version of the remote file (its length, 
+     * modification time, hash and remote id) and the current segment size.
+     * 
+     * @param checkpoint in context.
+     * @param part is the partial file of the checkpoint.
+     * @param stat of the remote file.
+     */
+    private boolean matches(UniversalCheckpoint checkpoint, File part, UniversalFileStat stat) {
+        JSONObject attributes = checkpoint.getAttributes();
+        return part.isFile() && part.length() == stat.getSize() 
+                    && attributes.optLong("length", -1) == stat.getSize() 
+                    && attributes.optLong("modified", -1) == stat.getModified() 
+                    && equals(attributes.optString("hash", null), stat.getHash()) 
+                    && equals(attributes.optString("remote_id", null), stat.getRemoteId()) 
+                    && attributes.optLong("segment_size") == this.segmentSize;
+    }
+
+    /**
+     * This method verifies if two stats belong to the same version of a file.
+     */
+    private boolean same(UniversalFileStat expected, UniversalFileStat actual) {
+        return actual != null && expected.getSize() == actual.getSize() 
+                    && expected.getModified() == actual.getModified() 
+                    && equals(expected.getHash(), actual.getHash()) 
+                    && equals(expected.getRemoteId(), actual.getRemoteId());
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * This method reports a checkpoint that couldn't be saved through the onError event, the download goes 
+     * on but a resumed download would download the unsaved segments again.
+     */
+    private void checkpointFailed(String path, IOException e) {
+        triggerOnErrorListeners(new UniversalIOException("The checkpoint of " + path + " couldn't be saved: " + e.getMessage()));
+    }
+
+    /**
+     * This method downloads a segment and writes it at its position, a failed segment is downloaded 
+     * again up to the retries.  A segment is verified by the amount of received bytes.
+     * 
+     * @param path in context.
+     * @param channel of the partial file.
+     * @param offset of the segment.
+     * @param size of the segment.
+     * @param checksum where the CRC of the segment is recorded, null if it isn't computed.
+     * @returns the CRC of the segment, null if it isn't computed.
+     */
+    private String downloadSegment(String path, FileChannel channel, long offset, long size, SegmentChecksum checksum) throws UniversalIOException {
+        /*
+         * The bytes are read through a channel of the stream into a direct buffer and written from it, so the 
+         * file channel doesn't copy them into a temporary direct buffer per write (and the channel of a file 
+         * stream reads the bytes without copying them into the java heap).
+         */
+        ByteBuffer buffer = BufferPool.direct().acquire((int) Math.min(FileUtil.BUFFER_SIZE, size));
+        try {
+            return downloadSegment(path, channel, offset, size, buffer, checksum);
+        } finally {
+            BufferPool.direct().release(buffer);
+        }
+    }
+
+    private String downloadSegment(String path, FileChannel channel, long offset, long size, ByteBuffer buffer, 
+                SegmentChecksum checksum) throws UniversalIOException {
+        UniversalIOException last = null;
+        int length = buffer.limit();
+
+        for (int attempt = 0; attempt <= this.retries; attempt++) {
+            if (attempt > 0) {
+                try {
+                    Thread.sleep(RETRY_DELAY << (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            try {
+                InputStream stream = this.delegate.retrieveRange(path, offset, size);
+                ReadableByteChannel source = Channels.newChannel(stream);
+                TransferChecksum crc = checksum == null ? null : new TransferChecksum(false);
+                try {
+                    long written = 0;
+                    while (written < size) {
+                        buffer.clear();
+                        buffer.limit((int) Math.min(length, size - written));
+                        if (source.read(buffer) == -1) {
+                            break;
+                        }
+
+                        buffer.flip();
+                        if (crc != null) {
+                            crc.update(buffer.duplicate());
+                        }
+
+                        while (buffer.hasRemaining()) {
+                            written += channel.write(buffer, offset + written);
+                        }
+                    }
+
+                    if (written != size) {
+                        throw new IOException("The segment at " + offset + " of " + path + " has " + written 
+                                    + " bytes, " + size + " bytes were expected.");
+                    }
+
+                    if (crc == null) {
+                        return null;
+                    }
+
+                    checksum.add(offset, size, crc.getCrc());
+                    return crc.getValue();
+                } finally {
+                    try {stream.close();}catch(IOException ignore) {}
+                }
+            } catch (UniversalIOException e) {
+                last = e;
+            } catch (IOException e) {
+                last = new UniversalIOException(e.getMessage());
+            }
+        }
+
+        throw last == null ? new UniversalIOException("The segment at " + offset + " of " + path + " was interrupted.") : last;
+    }
+}
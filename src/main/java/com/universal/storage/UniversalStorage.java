@@ -3,12 +3,45 @@ package com.universal.storage;
 import com.universal.error.UniversalIOException;
 import com.universal.storage.settings.UniversalSettings;
 import com.universal.storage.UniversalProvider;
+import com.universal.storage.pool.UniversalPoolStats;
+import com.universal.storage.pool.UniversalSessionFactory;
+import com.universal.storage.pool.UniversalSessionPool;
+import com.universal.util.BoundedInputStream;
+import com.universal.util.ChecksumInputStream;
+import com.universal.util.ExecutorUtil;
+import com.universal.util.FileUtil;
+import com.universal.util.PathValidator;
+import com.universal.util.SegmentChecksum;
+import com.universal.util.TaskGroup;
+import com.universal.util.TransferChecksum;
 import java.io.InputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The MIT License (MIT)
@@ -36,10 +69,29 @@ import java.util.Set;
  * This class declares and implements the available methods to manage files.
  */
 public abstract class UniversalStorage {
-    private Set<UniversalStorageListener> listeners = new HashSet<UniversalStorageListener>();
+    private final Set<UniversalStorageListener> listeners = new CopyOnWriteArraySet<UniversalStorageListener>();
+    private volatile UniversalEventDispatcher dispatcher;
     protected UniversalSettings settings;
-    private static final Object lock = new Object();
-    private static final Map<String, UniversalStorage> STORAGES = new HashMap<String, UniversalStorage>();
+    private static final Map<String, UniversalStorage> STORAGES = new ConcurrentHashMap<String, UniversalStorage>();
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<String, Object>();
+    private static final Map<String, Constructor<?>> CONSTRUCTORS = new ConcurrentHashMap<String, Constructor<?>>();
+    private static final Map<String, SettingsFile> SETTINGS_FILES = new ConcurrentHashMap<String, SettingsFile>();
+    private static final Map<String, UniversalStorage> RETIRED = new ConcurrentHashMap<String, UniversalStorage>();
+    private static final long SETTINGS_CHECK_INTERVAL = 1000;
+    private static final Map<UniversalProvider, String> PROVIDERS = new EnumMap<UniversalProvider, String>(UniversalProvider.class);
+    private volatile ExecutorService executor;
+    private final List<UniversalSessionPool<?>> pools = new CopyOnWriteArrayList<UniversalSessionPool<?>>();
+    private UniversalMetadataCache metadata;
+    static {
+        PROVIDERS.put(UniversalProvider.FILE_SYSTEM, "com.universal.storage.UniversalFileStorage");
+        PROVIDERS.put(UniversalProvider.AWS_S3, "com.universal.storage.UniversalS3Storage");
+        PROVIDERS.put(UniversalProvider.GOOGLE_DRIVE, "com.universal.storage.UniversalGoogleDriveStorage");
+        PROVIDERS.put(UniversalProvider.DROPBOX, "com.universal.storage.UniversalDropboxStorage");
+        PROVIDERS.put(UniversalProvider.FTP, "com.universal.storage.UniversalFTPStorage");
+        PROVIDERS.put(UniversalProvider.IN_MEMORY, "com.universal.storage.UniversalInMemoryStorage");
+        PROVIDERS.put(UniversalProvider.TIERED, "com.universal.storage.UniversalTieredStorage");
+    }
+
     /**
      * This constructor will be implemented by the extended classes.
      * 
@@ -47,6 +99,13 @@ public abstract class UniversalStorage {
      */
     public UniversalStorage(UniversalSettings settings) {
         this.settings = settings;
+        if (settings != null && settings.isEventsAsync()) {
+            this.dispatcher = new UniversalEventDispatcher(settings.getEventsQueueSize(), 
+                        "drop".equals(settings.getEventsPolicy()));
+        }
+
+        this.metadata = settings != null && settings.getMetadataTtl() > 0 
+                    ? new UniversalMetadataCache(settings.getMetadataTtl(), settings.getMetadataMaxEntries()) : null;
     }
     /**
      * This method stores a file within the storage provider according to the current settings.
@@ -138,8 +197,51 @@ public abstract class UniversalStorage {
 
     /**
      * This method will be implemented by those providers that need a way to close connections, streams, etc.
+     * The implementations must call super.close() to release the executor used by the async methods.
+     */
+    void close() {
+        STORAGES.remove(this.settings.getFingerprint(), this);
+
+        ExecutorService current = this.executor;
+        if (current != null) {
+            current.shutdown();
+            this.executor = null;
+        }
+
+        for (UniversalSessionPool<?> pool : this.pools) {
+            pool.close();
+        }
+
+        this.pools.clear();
+        useSynchronousEvents();
+    }
+
+    /**
+     * This method creates a session pool according to the settings' pool block, the providers with 
+     * remote sessions (i.e: ftp connections) borrow their sessions from this pool.  The pool will be 
+     * closed when this storage is closed.
+     * 
+     * @param factory to create, validate and destroy the sessions.
+     */
+    protected <S> UniversalSessionPool<S> createSessionPool(UniversalSessionFactory<S> factory) {
+        UniversalSessionPool<S> pool = new UniversalSessionPool<S>(factory, this.settings.getPoolMaxSize(), 
+                    this.settings.getPoolIdleTimeout(), this.settings.getPoolMaxLifetime(), 
+                    this.settings.getPoolBorrowTimeout(), this.settings.isPoolValidateOnBorrow());
+        this.pools.add(pool);
+        return pool;
+    }
+
+    /**
+     * Returns the stats of the session pools created by this storage.
      */
-    void close() {}
+    public List<UniversalPoolStats> getSessionPoolStats() {
+        List<UniversalPoolStats> stats = new ArrayList<UniversalPoolStats>(this.pools.size());
+        for (UniversalSessionPool<?> pool : this.pools) {
+            stats.add(pool.getStats());
+        }
+
+        return stats;
+    }
 
     /**
      * This method wipes the root folder of a storage, basically, will remove all files and folder in it.  
@@ -148,200 +250,1389 @@ public abstract class UniversalStorage {
     abstract void wipe() throws UniversalIOException;
 
     /**
-     * This method registers a new listener for this storage instance.
-     * The listener will be called according to the executed actions.
+     * This method stores the content of a stream within the storage, the stream won't be closed.
+     * The method will replace the file if already exists within the root.
      * 
-     * @param listener new listener to be registered. 
+     * The default implementation writes directly within the root for the file system provider and stages
+     * the content within the settings' tmp folder for the rest.  The providers that are able to stream
+     * should override this method, the length hint lets them decide between a single or a chunked upload.
+     * 
+     * @param stream with the content of the new file.
+     * @param path is the path for this new file within the root, including its name.
+     * @param contentLengthHint is the expected amount of bytes, -1 when unknown.
+     * @throws UniversalIOException when a specific IO error occurs.
      */
-    public void registerListener(UniversalStorageListener listener) {
-        this.listeners.add(listener);
+    public void storeStream(InputStream stream, String path, long contentLengthHint) throws UniversalIOException {
+        UniversalOutputStream out = openForWrite(path);
+        try {
+            out.transferFrom(stream);
+            out.close();
+        } catch (IOException e) {
+            try {out.abort();}catch(IOException ignore) {}
+            throw toUniversalIOException(e);
+        }
     }
 
     /**
-     * This method triggers the error listener from the registered listeners.
+     * This method opens a stream to write a new file within the storage, the file will be committed
+     * when the returned stream is closed.  The file will replace an existing file within the root.
      * 
-     * @param error in context
+     * The default implementation writes a partial file next to the target for the file system provider 
+     * (it's renamed when the stream is closed) and stages the content within the settings' tmp folder for the rest.
+     * 
+     * @param path is the path for this new file within the root, including its name.
+     * @returns a stream to write the content of the file.
+     * @throws UniversalIOException when a specific IO error occurs.
      */
-    protected void triggerOnErrorListeners(UniversalIOException error) {
-        for (UniversalStorageListener listener : this.listeners) {
-            try {listener.onError(error);}catch(Exception ignore) {}
+    public UniversalOutputStream openForWrite(final String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        try {
+            if (this.settings.getProvider() == UniversalProvider.FILE_SYSTEM) {
+                validateRoot(this.settings);
+                triggerOnStoreFileListeners();
+
+                final File target = resolveRootFile(path);
+                target.getParentFile().mkdirs();
+
+                final File part = new File(target.getParentFile(), "." + target.getName() + "." + UUID.randomUUID() + ".part");
+                return new UniversalOutputStream(new FileOutputStream(part), () -> {
+                    try {
+                        Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    } catch (IOException e) {
+                        part.delete();
+                        UniversalIOException error = new UniversalIOException(e.getMessage());
+                        triggerOnErrorListeners(error);
+                        throw error;
+                    }
+
+                    triggerOnFileStoredListeners(new UniversalStorageData(target.getName(), 
+                                target.toURI().toString(), target.getAbsolutePath(), path));
+                }, () -> part.delete());
+            }
+
+            final File staged = stageFile(path);
+            return new UniversalOutputStream(new FileOutputStream(staged), () -> {
+                try {
+                    storeFile(staged, FileUtil.getParent(path));
+                } finally {
+                    discardStagedFile(staged);
+                }
+            }, () -> discardStagedFile(staged));
+        } catch (IOException e) {
+            UniversalIOException error = new UniversalIOException(e.getMessage());
+            triggerOnErrorListeners(error);
+            throw error;
         }
     }
 
     /**
-     * This method triggers the onStore listener from the registered listeners.
+     * This method retrieves a file from the storage as a SeekableByteChannel.
+     * 
+     * For the file system provider the channel reads directly from the root, so the bytes can be transferred 
+     * (i.e: FileChannel.transferTo) or mapped without copies.  For the rest of the providers the file will be 
+     * retrieved into the settings' tmp folder and the returned channel will read that file.
+     * 
+     * @param path in context.
+     * @returns a channel pointing to the retrieved file, the caller must close it.
+     * @throws UniversalIOException when a specific IO error occurs.
      */
-    protected void triggerOnStoreFileListeners() {
-        for (UniversalStorageListener listener : this.listeners) {
-            try {listener.onStoreFile();}catch(Exception ignore) {}
+    public SeekableByteChannel retrieveFileAsChannel(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        File file;
+        if (this.settings.getProvider() == UniversalProvider.FILE_SYSTEM) {
+            validateRoot(this.settings);
+            file = resolveRootFile(path);
+        } else {
+            file = retrieveFile(path);
+        }
+
+        try {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            UniversalIOException error = new UniversalIOException(e.getMessage());
+            triggerOnErrorListeners(error);
+            throw error;
         }
     }
 
     /**
-     * This method triggers the onFileStored listener from the registered listeners.
+     * This method retrieves a range of bytes of a file from the storage as InputStream.
      * 
-     * @param data in context
+     * For the file system provider the stream reads the range directly from the file.  The providers with 
+     * native range requests (i.e: s3's Range header, ftp's REST offset) should override this method, 
+     * otherwise the default implementation will skip the bytes before the offset of retrieveFileAsStream.
+     * 
+     * A range beyond the end of the file is empty (the returned stream ends immediately) for every provider, 
+     * the overriding implementations must keep this behavior (i.e: map an http 416 to an empty stream).
+     * 
+     * @param path in context.
+     * @param offset is the position of the first byte to be read.
+     * @param length is the max amount of bytes to be read, -1 to read until the end of the file.
+     * @returns an InputStream with the requested range, the caller must close it.
+     * @throws UniversalIOException when a specific IO error occurs.
      */
-    protected void triggerOnFileStoredListeners(UniversalStorageData data) {
-        for (UniversalStorageListener listener : this.listeners) {
-            try {listener.onFileStored(data);}catch(Exception ignore) {}
+    public InputStream retrieveRange(String path, long offset, long length) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        if (offset < 0) {
+            throw new IllegalArgumentException("The offset must be a positive number.");
+        }
+
+        if (this.settings.getProvider() == UniversalProvider.FILE_SYSTEM) {
+            SeekableByteChannel channel = retrieveFileAsChannel(path);
+            try {
+                channel.position(offset);
+            } catch (IOException e) {
+                try {channel.close();}catch(IOException ignore) {}
+                throw toUniversalIOException(e);
+            }
+
+            return new BoundedInputStream(Channels.newInputStream(channel), length);
+        }
+
+        InputStream stream = retrieveFileAsStream(path);
+        try {
+            BoundedInputStream.skip(stream, offset);
+        } catch (IOException e) {
+            try {stream.close();}catch(IOException ignore) {}
+            throw toUniversalIOException(e);
         }
+
+        return new BoundedInputStream(stream, length);
     }
 
     /**
-     * This method triggers the onRemoveFile listener from the registered listeners.
+     * This method retrieves a range of bytes of a file from the storage into a new ByteBuffer.
+     * The returned buffer could contain less bytes than the passed length if the file ends before.
+     * 
+     * @param path in context.
+     * @param offset is the position of the first byte to be read.
+     * @param length is the max amount of bytes to be read.
+     * @returns a flipped buffer with the read bytes.
+     * @throws UniversalIOException when a specific IO error occurs.
      */
-    protected void triggerOnRemoveFileListeners() {
-        for (UniversalStorageListener listener : this.listeners) {
-            try {listener.onRemoveFile();}catch(Exception ignore) {}
+    public ByteBuffer retrieveRangeAsBuffer(String path, long offset, int length) throws UniversalIOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        InputStream stream = retrieveRange(path, offset, length);
+        try {
+            int read;
+            while (buffer.hasRemaining() 
+                        && (read = stream.read(buffer.array(), buffer.position(), buffer.remaining())) != -1) {
+                buffer.position(buffer.position() + read);
+            }
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        } finally {
+            try {stream.close();}catch(IOException ignore) {}
         }
+
+        buffer.flip();
+        return buffer;
     }
 
     /**
-     * This method triggers the onFileRemoved listener from the registered listeners.
+     * This method stores a file continuing the interrupted transfer of the same file, if any.
+     * The transfers that support checkpoints (i.e: multipart uploads) keep a checkpoint within the settings' 
+     * tmp folder, so only the parts that weren't uploaded are uploaded again.  The default implementation 
+     * stores the whole file.
+     * 
+     * @param file to be stored within the storage.
+     * @param path is the path for this new file within the root.
+     * @throws UniversalIOException when a specific IO error occurs.
      */
-    protected void triggerOnFileRemovedListeners() {
-        for (UniversalStorageListener listener : this.listeners) {
-            try {listener.onFileRemoved();}catch(Exception ignore) {}
-        }
+    public void resumeStore(File file, String path) throws UniversalIOException {
+        storeFile(file, path);
     }
 
     /**
-     * This method triggers the onCreateFolder listener from the registered listeners.
+     * This method retrieves a file continuing the interrupted transfer of the same file, if any.
+     * The transfers that support checkpoints (i.e: parallel downloads) keep a checkpoint within the settings' 
+     * tmp folder, so only the segments that weren't downloaded are downloaded again.  The default implementation 
+     * retrieves the whole file.
      * 
-     * @param error in context
+     * @param path in context.
+     * @returns a file pointing to the retrieved file.
+     * @throws UniversalIOException when a specific IO error occurs.
      */
-    protected void triggerOnCreateFolderListeners() {
-        for (UniversalStorageListener listener : this.listeners) {
-            try {listener.onCreateFolder();}catch(Exception ignore) {}
+    public File resumeRetrieve(String path) throws UniversalIOException {
+        return retrieveFile(path);
+    }
+
+    /**
+     * This method stores a file recording the CRCs of the transferred segments into the passed checksum, 
+     * so a decorator can checksum the file without reading it again.  The storages that upload the files 
+     * in parts (i.e: multipart uploads) record the CRC of every part.  The default implementation stores 
+     * the file as a stream through storeStream and records the CRC of the read bytes when the storage 
+     * writes the streams directly (see hasDirectStreams), otherwise the file is stored through storeFile 
+     * or resumeStore without recording any CRC, so the decorators that don't override this method keep 
+     * decorating the file.
+     * 
+     * @param file to be stored within the storage.
+     * @param path is the path for this new file within the root.
+     * @param resume indicates if the interrupted transfer of the same file is continued (see resumeStore).
+     * @param checksum where the CRCs of the segments are recorded.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    void storeFile(File file, String path, boolean resume, SegmentChecksum checksum) throws UniversalIOException {
+        if (checksum != null && !resume && file.isFile() && hasDirectStreams()) {
+            storeChecksummed(file, path, checksum);
+        } else if (resume) {
+            resumeStore(file, path);
+        } else {
+            storeFile(file, path);
         }
     }
 
     /**
-     * This method triggers the onFolderCreated listener from the registered listeners.
+     * This method stores a file through storeStream computing the CRC of the bytes while they are stored, 
+     * so the file is read only once.
      * 
-     * @param data in context
+     * @param file to be stored within the storage.
+     * @param path is the path for this new file within the root.
+     * @param checksum where the CRC of the whole file is recorded.
      */
-    protected void triggerOnFolderCreatedListeners(UniversalStorageData data) {
-        for (UniversalStorageListener listener : this.listeners) {
-            try {listener.onFolderCreated(data);}catch(Exception ignore) {}
+    private void storeChecksummed(File file, String path, SegmentChecksum checksum) throws UniversalIOException {
+        TransferChecksum crc = new TransferChecksum(false);
+        InputStream stream;
+        try {
+            stream = new ChecksumInputStream(new FileInputStream(file), crc);
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        }
+
+        try {
+            storeStream(stream, FileUtil.join(path, file.getName()), file.length());
+        } finally {
+            try {stream.close();}catch(IOException ignore) {}
         }
+
+        checksum.add(0, crc.getBytes(), crc.getCrc());
     }
 
     /**
-     * This method triggers the onRemoveFolder listener from the registered listeners.
+     * This method retrieves a file recording the CRCs of the transferred segments into the passed checksum.  
+     * The storages that retrieve the files in segments (i.e: parallel downloads) record the CRC of every 
+     * segment, the default implementation retrieves the file without recording any CRC.
+     * 
+     * @param path in context.
+     * @param resume indicates if the interrupted transfer of the same file is continued (see resumeRetrieve).
+     * @param checksum where the CRCs of the segments are recorded.
+     * @returns a file pointing to the retrieved file.
+     * @throws UniversalIOException when a specific IO error occurs.
      */
-    protected void triggerOnRemoveFolderListeners() {
-        for (UniversalStorageListener listener : this.listeners) {
-            try {listener.onRemoveFolder();}catch(Exception ignore) {}
+    File retrieveFile(String path, boolean resume, SegmentChecksum checksum) throws UniversalIOException {
+        return resume ? resumeRetrieve(path) : retrieveFile(path);
+    }
+
+    /**
+     * This method lists the content of a folder, the entries are fetched on demand, so a folder with 
+     * millions of files is listed using constant memory.
+     * 
+     * For the file system provider the folders are walked directly.  The rest of the providers are requested 
+     * page by page (see the settings' list page size) through listPage, the listing will fail for the 
+     * providers that don't override it.
+     * 
+     * @param path of the folder, an empty string for the root.
+     * @param recursive indicates if the content of the subfolders is listed too.
+     * @returns a lazy listing, the caller must close it if the listing is not iterated until the end.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    public UniversalListing list(final String path, final boolean recursive) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        if (this.settings.getProvider() == UniversalProvider.FILE_SYSTEM) {
+            validateRoot(this.settings);
+
+            File folder = resolveRootFile(path);
+            if (!folder.isDirectory()) {
+                UniversalIOException error = new UniversalIOException(path + " is not a folder.");
+                triggerOnErrorListeners(error);
+                throw error;
+            }
+
+            try {
+                return new UniversalListing.Tree(folder, trimSeparators(path.replace(File.separatorChar, '/')), recursive);
+            } catch (IOException e) {
+                throw toUniversalIOException(e);
+            }
         }
+
+        final int limit = this.settings.getListPageSize();
+        return new UniversalListing.Paged(marker -> listPage(path, recursive, marker, limit));
     }
 
     /**
-     * This method triggers the onFolderRemoved listener from the registered listeners.
+     * This method copies a file within the storage, the copy triggers the onStoreFile and onFileStored events.
+     * 
+     * For the file system provider the file is copied within the root.  For the rest of the providers the 
+     * content is streamed from the source to the target, the providers with server side copies (i.e: s3's 
+     * CopyObject) should override this method.
+     * 
+     * @param sourcePath is the path of the file to be copied.
+     * @param targetPath is the path of the copy, including its name.
+     * @throws UniversalIOException when a specific IO error occurs.
      */
-    protected void triggerOnFolderRemovedListeners() {
-        for (UniversalStorageListener listener : this.listeners) {
-            try {listener.onFolderRemoved();}catch(Exception ignore) {}
+    protected void copyFile(String sourcePath, String targetPath) throws UniversalIOException {
+        PathValidator.validatePath(sourcePath);
+        PathValidator.validatePath(targetPath);
+
+        if (this.settings.getProvider() == UniversalProvider.FILE_SYSTEM) {
+            validateRoot(this.settings);
+            triggerOnStoreFileListeners();
+
+            File source = resolveRootFile(sourcePath);
+            File target = resolveRootFile(targetPath);
+            try {
+                target.getParentFile().mkdirs();
+                Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                UniversalIOException error = new UniversalIOException(e.getMessage());
+                triggerOnErrorListeners(error);
+                throw error;
+            }
+
+            triggerOnFileStoredListeners(new UniversalStorageData(target.getName(), 
+                        target.toURI().toString(), target.getAbsolutePath(), targetPath));
+            return;
+        }
+
+        InputStream stream = retrieveFileAsStream(sourcePath);
+        try {
+            storeStream(stream, targetPath, getRemoteLength(sourcePath));
+        } finally {
+            try {stream.close();}catch(IOException ignore) {}
         }
     }
 
-    public static class Impl {
-        /**
-         * This method returns a UniversalStorage according to the provider.
-         * This method will loads the settings according to the current context.
-         * 
-         * Loading settings from context, the following order will be used:
-         * 1. Throughout jvm parameter (universal.storage.settings).
-         * 2. Throughout environment variable (univeral_storage_settings).
-         */
-        public static UniversalStorage getInstance() {
-            return getInstance(null);
+    /**
+     * This method returns the attributes of a file without retrieving it.  The stats are cached for the 
+     * settings' metadata ttl, the cache is shared by the decorators of a storage and it's invalidated by 
+     * the store and remove operations of the decorators and by the onFileStored, onFileRemoved and 
+     * onFolderRemoved events of the providers.
+     * 
+     * @param path of the file.
+     * @returns the stat of the file, null if the file doesn't exist.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    public UniversalFileStat stat(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        if (this.metadata == null) {
+            return fetchStat(path);
         }
 
-        /**
-         * This method returns a UniversalStorage according to the provider.
-         * This method will loads the settings according to the current context if the custom settings is null.
-         * 
-         * For loading settings from context, the following order will be used:
-         * 1. Throughout jvm parameter (universal.storage.settings).
-         * 2. Throughout environment variable (univeral_storage_settings).
-         * 
-         * @param s is a custom settings.
-         */
-        public static UniversalStorage getInstance(UniversalSettings s) {
-            File file = null;
-            if (s == null) {
-                /*
-                * We need to load the current settings according to the following options:
-                * 1. Throughout jvm parameter (universal.storage.settings).
-                * 2. Throughout environment variable (univeral_storage_settings).
-                * 
-                * The discovery for these settings will be executed following the order above.
-                */
-                String settingFile = System.getProperties().getProperty("universal.storage.settings");
-                if (settingFile == null) {
-                    settingFile = System.getenv().get("universal_storage_settings");
-                }
+        UniversalMetadataCache.Entry entry = this.metadata.get(path);
+        if (entry != null) {
+            return entry.getStat();
+        }
 
-                if (settingFile == null) {
-                    throw new IllegalStateException("It was not found the parameter to read settings.  Try to check the parameters (universal.storage.settings or universal_storage_settings).");
-                }
+        long generation = this.metadata.getGeneration();
+        UniversalFileStat stat = fetchStat(path);
+        this.metadata.put(path, stat, generation);
+        return stat;
+    }
 
-                file = new File(settingFile);
-                if (!file.exists() || file.isDirectory()) {
-                    throw new IllegalStateException("The setting file '" + file.getName() + "' either doesn't exist or is a folder.");
-                }
+    /**
+     * This method checks if a file exists without retrieving it, see stat.
+     * 
+     * @param path of the file.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    public boolean exists(String path) throws UniversalIOException {
+        return stat(path) != null;
+    }
+
+    /**
+     * This method requests the attributes of a file to the provider.
+     * 
+     * For the file system provider the attributes are read from the file.  For the rest of the providers the 
+     * parent folder is listed until the file is found, the providers with a cheaper request (i.e: s3's HEAD) 
+     * should override this method and hasCheapStat.
+     * 
+     * @param path of the file.
+     * @returns the stat of the file, null if the file doesn't exist.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    protected UniversalFileStat fetchStat(String path) throws UniversalIOException {
+        String remotePath = trimSeparators(path.replace(File.separatorChar, '/'));
+        if (this.settings.getProvider() == UniversalProvider.FILE_SYSTEM) {
+            validateRoot(this.settings);
+
+            File file = resolveRootFile(path);
+            if (!file.isFile()) {
+                return null;
             }
 
-            try {
-                UniversalSettings settings = s == null ? new UniversalSettings(file) : s;
-                return retrieveUniversalStorage(settings);
-            } catch (Exception e) {
-                e.printStackTrace();
-                throw new IllegalStateException(e.getMessage());
+            return new UniversalFileStat(file.getName(), file.length(), file.lastModified(), null, remotePath, remotePath);
+        }
+
+        UniversalListing listing = list(FileUtil.getParent(remotePath), false);
+        try {
+            while (listing.hasNext()) {
+                UniversalListEntry entry = listing.next();
+                if (!entry.isFolder() && remotePath.equals(entry.getRemotePath())) {
+                    return new UniversalFileStat(entry.getName(), entry.getSize(), entry.getModified(), 
+                                null, entry.getRemotePath(), entry.getRemotePath());
+                }
             }
+        } catch (UncheckedIOException e) {
+            throw toUniversalIOException(e.getCause());
+        } finally {
+            listing.close();
         }
+
+        return null;
     }
 
     /**
-     * This method retrieves an UniversalStorage according to the provider within current settings.
+     * This method removes the passed path from the metadata cache, the extended classes call it when 
+     * a file changes (i.e: a pending upload).
      * 
-     * @param settings in context.
+     * @param path in context, null to invalidate every path.
      */
-    private static UniversalStorage retrieveUniversalStorage(UniversalSettings settings) throws Exception {
-        synchronized (lock) {
-            if (settings.getProvider() == UniversalProvider.FILE_SYSTEM) {
-                registerUniversalStorage("com.universal.storage.UniversalFileStorage", settings);
-                return STORAGES.get("com.universal.storage.UniversalFileStorage");            
-            } else if (settings.getProvider() == UniversalProvider.AWS_S3) {
-                registerUniversalStorage("com.universal.storage.UniversalS3Storage", settings);
-                return STORAGES.get("com.universal.storage.UniversalS3Storage");
-            } else if (settings.getProvider() == UniversalProvider.GOOGLE_DRIVE) {
-                registerUniversalStorage("com.universal.storage.UniversalGoogleDriveStorage", settings);
-                return STORAGES.get("com.universal.storage.UniversalGoogleDriveStorage");
-            } else if (settings.getProvider() == UniversalProvider.DROPBOX) {
-                registerUniversalStorage("com.universal.storage.UniversalDropboxStorage", settings);
-                return STORAGES.get("com.universal.storage.UniversalDropboxStorage");
-            } else if (settings.getProvider() == UniversalProvider.FTP) {
-                registerUniversalStorage("com.universal.storage.UniversalFTPStorage", settings);
-                return STORAGES.get("com.universal.storage.UniversalFTPStorage");
-            }
+    protected void invalidateMetadata(String path) {
+        if (this.metadata == null) {
+            return;
+        }
 
-            return null;
+        if (path == null) {
+            this.metadata.invalidateAll();
+        } else {
+            this.metadata.invalidate(path);
         }
     }
 
     /**
-     * This method verifies if exist an instance in STORAGES.
+     * This method makes the passed decorator use the metadata cache of this storage, so the stats cached 
+     * by the outermost storage are invalidated by the changes made within any storage of the chain.
      * 
-     * @param name of a universal storage.  
+     * @param decorator of this storage.
      */
-    public static void registerUniversalStorage(String name, UniversalSettings settings) throws Exception {
-        //if (STORAGES.get(name) == null) {
-            STORAGES.put(name, (UniversalStorage) Class.forName(name).getConstructor(UniversalSettings.class).
-                        newInstance(settings));
-        //}
+    void shareMetadata(UniversalStorage decorator) {
+        decorator.metadata = this.metadata;
+    }
+
+    /**
+     * This method requests a page of a listing to the provider.  The providers with listing support 
+     * (i.e: s3's continuation tokens) should override this method.
+     * 
+     * @param path of the folder.
+     * @param recursive indicates if the content of the subfolders is listed too.
+     * @param marker returned within the previous page, null for the first page.
+     * @param limit is the max amount of entries of the page.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    protected UniversalListPage listPage(String path, boolean recursive, String marker, int limit) throws UniversalIOException {
+        UniversalIOException error = new UniversalIOException("The provider " + this.settings.getProvider() 
+                    + " doesn't support listing.");
+        triggerOnErrorListeners(error);
+        throw error;
+    }
+
+    /**
+     * Indicates if retrieveRange requests the range to the provider instead of skipping the bytes before 
+     * the offset, so a file can be downloaded in parallel segments.  The providers with native range 
+     * requests should override this method and getRemoteLength.
+     */
+    protected boolean supportsRanges() {
+        return false;
+    }
+
+    /**
+     * This method indicates if fetchStat costs a single request.  The default implementation lists the 
+     * parent folder for the providers other than the file system, the providers that override fetchStat 
+     * with a cheaper request should override this method too.
+     */
+    protected boolean hasCheapStat() {
+        return this.settings.getProvider() == UniversalProvider.FILE_SYSTEM;
+    }
+
+    /**
+     * This method indicates if storeStream writes the content into the storage without staging it within 
+     * the tmp folder, so storing a file as a stream reads it only once.  The default implementation writes 
+     * directly within the root for the file system provider, the providers that override storeStream or 
+     * openForWrite with a direct upload should override this method too.
+     */
+    protected boolean hasDirectStreams() {
+        return this.settings.getProvider() == UniversalProvider.FILE_SYSTEM;
+    }
+
+    /**
+     * This method returns the size of a file within the storage without retrieving it.
+     * 
+     * @param path in context.
+     * @returns the size in bytes, -1 when the provider can't tell it without retrieving the file.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    protected long getRemoteLength(String path) throws UniversalIOException {
+        if (this.settings.getProvider() == UniversalProvider.FILE_SYSTEM) {
+            File file = resolveRootFile(path);
+            return file.isFile() ? file.length() : -1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * This method resolves the passed path within the root of the file system provider.
+     * 
+     * @param path within the root.
+     */
+    protected File resolveRootFile(String path) {
+        String relative = path;
+        while (relative.startsWith("/") || relative.startsWith(File.separator)) {
+            relative = relative.substring(1);
+        }
+
+        return new File(FileUtil.completeFileSeparator(this.settings.getRoot()) + relative);
+    }
+
+    /**
+     * This method removes the leading and trailing separators of the passed path.
+     * 
+     * @param path in context.
+     */
+    private static String trimSeparators(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+
+        return path.substring(start, end);
+    }
+
+    /**
+     * This method creates an empty file within a new folder of the settings' tmp folder, the file 
+     * keeps the name of the passed path.
+     * 
+     * @param path of the file within the storage.
+     */
+    protected File stageFile(String path) throws IOException {
+        File folder = new File(this.settings.getTmp() + "staging" + File.separator + UUID.randomUUID());
+        if (!folder.mkdirs()) {
+            throw new IOException("The staging folder '" + folder + "' couldn't be created.");
+        }
+
+        return new File(folder, FileUtil.getName(path));
+    }
+
+    /**
+     * This method removes a file created through stageFile and its folder.
+     * 
+     * @param staged file in context.
+     */
+    protected void discardStagedFile(File staged) {
+        staged.delete();
+        staged.getParentFile().delete();
+    }
+
+    /**
+     * This method converts an IOException into an UniversalIOException, if the cause already is 
+     * an UniversalIOException it's returned as is.
+     * 
+     * @param e in context.
+     */
+    protected UniversalIOException toUniversalIOException(IOException e) {
+        if (e.getCause() instanceof UniversalIOException) {
+            return (UniversalIOException) e.getCause();
+        }
+
+        UniversalIOException error = new UniversalIOException(e.getMessage());
+        triggerOnErrorListeners(error);
+        return error;
+    }
+
+    /**
+     * This method stores a file asynchronously, see storeFile(File).
+     * 
+     * @param file to be stored within the storage.
+     * @returns a future that completes when the file was stored.
+     */
+    public CompletableFuture<Void> storeFileAsync(final File file) {
+        return submit(() -> { storeFile(file); return null; });
+    }
+
+    /**
+     * This method stores a file asynchronously, see storeFile(File, String).
+     * 
+     * @param file to be stored within the storage.
+     * @param path is the path for this new file within the root.
+     * @returns a future that completes when the file was stored.
+     */
+    public CompletableFuture<Void> storeFileAsync(final File file, final String path) {
+        return submit(() -> { storeFile(file, path); return null; });
+    }
+
+    /**
+     * This method stores a file asynchronously, see storeFile(String).
+     * 
+     * @param path pointing to the file which will be stored within the storage.
+     * @returns a future that completes when the file was stored.
+     */
+    public CompletableFuture<Void> storeFileAsync(final String path) {
+        return submit(() -> { storeFile(path); return null; });
+    }
+
+    /**
+     * This method stores a file asynchronously, see storeFile(String, String).
+     * 
+     * @param path pointing to the file which will be stored within the storage.
+     * @param targetPath is the path within the storage.
+     * @returns a future that completes when the file was stored.
+     */
+    public CompletableFuture<Void> storeFileAsync(final String path, final String targetPath) {
+        return submit(() -> { storeFile(path, targetPath); return null; });
+    }
+
+    /**
+     * This method removes a file asynchronously, see removeFile(String).
+     * 
+     * @param path is the file's path.
+     * @returns a future that completes when the file was removed.
+     */
+    public CompletableFuture<Void> removeFileAsync(final String path) {
+        return submit(() -> { removeFile(path); return null; });
+    }
+
+    /**
+     * This method creates a folder asynchronously, see createFolder(String).
+     * 
+     * @param path is the folder's path.
+     * @returns a future that completes when the folder was created.
+     */
+    public CompletableFuture<Void> createFolderAsync(final String path) {
+        return submit(() -> { createFolder(path); return null; });
+    }
+
+    /**
+     * This method removes a folder asynchronously, see removeFolder(String).
+     * 
+     * @param path of the folder.
+     * @returns a future that completes when the folder was removed.
+     */
+    public CompletableFuture<Void> removeFolderAsync(final String path) {
+        return submit(() -> { removeFolder(path); return null; });
+    }
+
+    /**
+     * This method retrieves a file asynchronously, see retrieveFile(String).
+     * 
+     * @param path in context.
+     * @returns a future with the retrieved file.
+     */
+    public CompletableFuture<File> retrieveFileAsync(final String path) {
+        return submit(() -> retrieveFile(path));
+    }
+
+    /**
+     * This method retrieves a file as InputStream asynchronously, see retrieveFileAsStream(String).
+     * 
+     * @param path in context.
+     * @returns a future with an InputStream pointing to the retrieved file.
+     */
+    public CompletableFuture<InputStream> retrieveFileAsStreamAsync(final String path) {
+        return submit(() -> retrieveFileAsStream(path));
+    }
+
+    /**
+     * This method cleans the context of this storage asynchronously, see clean().
+     * 
+     * @returns a future that completes when the tmp folder was cleaned.
+     */
+    public CompletableFuture<Void> cleanAsync() {
+        return submit(() -> { clean(); return null; });
+    }
+
+    /**
+     * This method wipes the root folder asynchronously, see wipe().
+     * 
+     * @returns a future that completes when the root folder was wiped.
+     */
+    public CompletableFuture<Void> wipeAsync() {
+        return submit(() -> { wipe(); return null; });
+    }
+
+    /**
+     * This method removes a folder and its content walking the tree, the files are removed in parallel 
+     * batches (see removeFiles) and then the folders from the deepest to the shallowest.  This method 
+     * returns right away, the returned removal reports the progress and can be cancelled.
+     * 
+     * The tree is walked through list, so the provider must support listing.
+     * 
+     * @param path of the folder, an empty string to remove the whole content of the root (as wipe does).
+     * @returns the removal in progress.
+     */
+    public UniversalTreeRemoval removeTree(String path) {
+        PathValidator.validatePath(path);
+
+        UniversalTreeRemoval removal = new UniversalTreeRemoval(this, path);
+        removal.start();
+        return removal;
+    }
+
+    /**
+     * This method stores a batch of files within the storage.  A failing file doesn't abort the batch,
+     * the error will be reported within its item.
+     * 
+     * The providers could override this method to pipeline the files through a single connection.
+     * 
+     * @param files is a map of local paths and their target paths within the storage.
+     * @returns a report with the result of every file.
+     */
+    public UniversalBatchResult storeFiles(Map<String, String> files) {
+        List<UniversalBatchResult.Item> items = new ArrayList<UniversalBatchResult.Item>(files.size());
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            items.add(new UniversalBatchResult.Item(entry.getKey(), entry.getValue()));
+        }
+
+        return executeBatch(items, item -> storeFile(item.getSource(), item.getPath()));
+    }
+
+    /**
+     * This method removes a batch of files from the storage.  A failing file doesn't abort the batch,
+     * the error will be reported within its item.
+     * 
+     * The providers could override this method to use a bulk delete.
+     * 
+     * @param paths of the files to be removed.
+     * @returns a report with the result of every file.
+     */
+    public UniversalBatchResult removeFiles(Collection<String> paths) {
+        List<UniversalBatchResult.Item> items = new ArrayList<UniversalBatchResult.Item>(paths.size());
+        for (String path : paths) {
+            items.add(new UniversalBatchResult.Item(null, path));
+        }
+
+        return executeBatch(items, item -> removeFile(item.getPath()));
+    }
+
+    /**
+     * This method retrieves a batch of files from the storage, the files will be stored within the settings' tmp folder.
+     * A failing file doesn't abort the batch, the error will be reported within its item.
+     * 
+     * @param paths of the files to be retrieved.
+     * @returns a report with the retrieved file of every item.
+     */
+    public UniversalBatchResult retrieveFiles(Collection<String> paths) {
+        List<UniversalBatchResult.Item> items = new ArrayList<UniversalBatchResult.Item>(paths.size());
+        for (String path : paths) {
+            items.add(new UniversalBatchResult.Item(null, path));
+        }
+
+        return executeBatch(items, item -> item.setFile(retrieveFile(item.getPath())));
+    }
+
+    /**
+     * This method executes an operation over every item, at most settings' batch concurrency items 
+     * will be processed at the same time.  The calling thread takes part of the execution.
+     * 
+     * @param items to be processed.
+     * @param operation to be executed per item.
+     * @returns a report with the processed items.
+     */
+    protected UniversalBatchResult executeBatch(final List<UniversalBatchResult.Item> items, final BatchOperation operation) {
+        final AtomicInteger next = new AtomicInteger();
+        final Runnable worker = () -> {
+            int index;
+            while ((index = next.getAndIncrement()) < items.size()) {
+                UniversalBatchResult.Item item = items.get(index);
+                try {
+                    operation.execute(item);
+                } catch (UniversalIOException e) {
+                    item.setError(e);
+                } catch (Exception e) {
+                    item.setError(new UniversalIOException(e.getMessage()));
+                }
+            }
+        };
+
+        /*
+         * The workers are forked within a task group, a worker not started by the executor is run by the caller, 
+         * so a batch executed from a thread of the same executor doesn't wait for itself.  The group is joined 
+         * even if the caller is interrupted, so the items aren't modified once the result is returned.
+         */
+        int workers = Math.min(this.settings.getBatchConcurrency(), items.size());
+        TaskGroup group = new TaskGroup(getExecutor());
+        for (int i = 1; i < workers; i++) {
+            group.fork(worker);
+        }
+
+        try {
+            worker.run();
+        } finally {
+            group.join();
+        }
+
+        return new UniversalBatchResult(items);
+    }
+
+    /**
+     * This interface represents the operation executed per item of a batch.
+     */
+    protected interface BatchOperation {
+        void execute(UniversalBatchResult.Item item) throws UniversalIOException;
+    }
+
+    /**
+     * This method executes a task using the executor of this storage.
+     * The returned future will be completed exceptionally with the thrown error, i.e: UniversalIOException.
+     * 
+     * @param task to be executed.
+     */
+    protected <T> CompletableFuture<T> submit(final Callable<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        getExecutor().execute(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * This method returns the executor used by the async methods, the executor is created 
+     * according to the current settings the first time it's needed.
+     */
+    protected ExecutorService getExecutor() {
+        ExecutorService current = this.executor;
+        if (current == null) {
+            synchronized (this) {
+                current = this.executor;
+                if (current == null) {
+                    current = this.executor = ExecutorUtil.newExecutor(this.settings.getAsyncExecutor(), 
+                                this.settings.getAsyncThreads(), "universal-storage-async");
+                }
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * This method registers a new listener for this storage instance.
+     * The listener will be called according to the executed actions.
+     * 
+     * @param listener new listener to be registered. 
+     */
+    public void registerListener(UniversalStorageListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * This method removes a registered listener from this storage instance.
+     * 
+     * @param listener to be removed.
+     */
+    public void unregisterListener(UniversalStorageListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Returns the amount of events dropped because the async events queue was full.
+     */
+    public long getDroppedEvents() {
+        UniversalEventDispatcher current = this.dispatcher;
+        return current == null ? 0 : current.getDropped();
+    }
+
+    /**
+     * This method stops the async dispatching of events (if any), the pending events are delivered and the 
+     * next events will be delivered within the thread that triggers them.
+     */
+    void useSynchronousEvents() {
+        UniversalEventDispatcher current = this.dispatcher;
+        if (current != null) {
+            this.dispatcher = null;
+            current.close();
+        }
+    }
+
+    /**
+     * This method delivers an event to the registered listeners, either within the current thread or 
+     * through the async dispatcher according to the settings.
+     * 
+     * @param event in context.
+     * @param argument of the event, i.e: the error or the storage data.
+     */
+    private void fire(final Event event, final Object argument) {
+        if (this.listeners.isEmpty()) {
+            return;
+        }
+
+        UniversalEventDispatcher current = this.dispatcher;
+        if (current == null) {
+            notifyListeners(event, argument);
+        } else {
+            current.dispatch(() -> notifyListeners(event, argument));
+        }
+    }
+
+    private void notifyListeners(Event event, Object argument) {
+        for (UniversalStorageListener listener : this.listeners) {
+            try {
+                switch (event) {
+                    case ERROR: listener.onError((UniversalIOException) argument); break;
+                    case STORE_FILE: listener.onStoreFile(); break;
+                    case FILE_STORED: listener.onFileStored((UniversalStorageData) argument); break;
+                    case REMOVE_FILE: listener.onRemoveFile(); break;
+                    case FILE_REMOVED: listener.onFileRemoved(); break;
+                    case CREATE_FOLDER: listener.onCreateFolder(); break;
+                    case FOLDER_CREATED: listener.onFolderCreated((UniversalStorageData) argument); break;
+                    case REMOVE_FOLDER: listener.onRemoveFolder(); break;
+                    case FOLDER_REMOVED: listener.onFolderRemoved(); break;
+                    case UPLOAD_PROGRESS: listener.onUploadProgress((UniversalTransferProgress) argument); break;
+                    case DOWNLOAD_PROGRESS: listener.onDownloadProgress((UniversalTransferProgress) argument); break;
+                }
+            } catch(Exception ignore) {}
+        }
+    }
+
+    /**
+     * This enum represents the events delivered to the listeners.
+     */
+    private enum Event {
+        ERROR, STORE_FILE, FILE_STORED, REMOVE_FILE, FILE_REMOVED, CREATE_FOLDER, FOLDER_CREATED, REMOVE_FOLDER, FOLDER_REMOVED, UPLOAD_PROGRESS, DOWNLOAD_PROGRESS;
+    }
+
+    /**
+     * This method triggers the error listener from the registered listeners.
+     * 
+     * @param error in context
+     */
+    protected void triggerOnErrorListeners(UniversalIOException error) {
+        fire(Event.ERROR, error);
+    }
+
+    /**
+     * This method triggers the onStore listener from the registered listeners.
+     */
+    protected void triggerOnStoreFileListeners() {
+        fire(Event.STORE_FILE, null);
+    }
+
+    /**
+     * This method triggers the onFileStored listener from the registered listeners.
+     * 
+     * @param data in context
+     */
+    protected void triggerOnFileStoredListeners(UniversalStorageData data) {
+        if (this.metadata != null) {
+            if (data != null && data.getRemotePath() != null) {
+                this.metadata.invalidate(data.getRemotePath());
+            } else {
+                this.metadata.invalidateAll();
+            }
+        }
+
+        fire(Event.FILE_STORED, data);
+    }
+
+    /**
+     * This method triggers the onRemoveFile listener from the registered listeners.
+     */
+    protected void triggerOnRemoveFileListeners() {
+        fire(Event.REMOVE_FILE, null);
+    }
+
+    /**
+     * This method triggers the onFileRemoved listener from the registered listeners.
+     */
+    protected void triggerOnFileRemovedListeners() {
+        /*
+         * The event doesn't carry the removed path.
+         */
+        if (this.metadata != null) {
+            this.metadata.invalidateAll();
+        }
+
+        fire(Event.FILE_REMOVED, null);
+    }
+
+    /**
+     * This method triggers the onCreateFolder listener from the registered listeners.
+     * 
+     * @param error in context
+     */
+    protected void triggerOnCreateFolderListeners() {
+        fire(Event.CREATE_FOLDER, null);
+    }
+
+    /**
+     * This method triggers the onFolderCreated listener from the registered listeners.
+     * 
+     * @param data in context
+     */
+    protected void triggerOnFolderCreatedListeners(UniversalStorageData data) {
+        fire(Event.FOLDER_CREATED, data);
+    }
+
+    /**
+     * This method triggers the onRemoveFolder listener from the registered listeners.
+     */
+    protected void triggerOnRemoveFolderListeners() {
+        fire(Event.REMOVE_FOLDER, null);
+    }
+
+    /**
+     * This method triggers the onFolderRemoved listener from the registered listeners.
+     */
+    protected void triggerOnFolderRemovedListeners() {
+        if (this.metadata != null) {
+            this.metadata.invalidateAll();
+        }
+
+        fire(Event.FOLDER_REMOVED, null);
+    }
+
+    /**
+     * This method triggers the onUploadProgress listener from the registered listeners.
+     * 
+     * @param progress in context
+     */
+    protected void triggerOnUploadProgressListeners(UniversalTransferProgress progress) {
+        fire(Event.UPLOAD_PROGRESS, progress);
+    }
+
+    /**
+     * This method triggers the onDownloadProgress listener from the registered listeners.
+     * 
+     * @param progress in context
+     */
+    protected void triggerOnDownloadProgressListeners(UniversalTransferProgress progress) {
+        fire(Event.DOWNLOAD_PROGRESS, progress);
+    }
+
+    public static class Impl {
+        /**
+         * This method returns a UniversalStorage according to the provider.
+         * This method will loads the settings according to the current context.
+         * 
+         * Loading settings from context, the following order will be used:
+         * 1. Throughout jvm parameter (universal.storage.settings).
+         * 2. Throughout environment variable (univeral_storage_settings).
+         */
+        public static UniversalStorage getInstance() {
+            return getInstance(null);
+        }
+
+        /**
+         * This method returns a UniversalStorage according to the provider.
+         * This method will loads the settings according to the current context if the custom settings is null.
+         * 
+         * For loading settings from context, the following order will be used:
+         * 1. Throughout jvm parameter (universal.storage.settings).
+         * 2. Throughout environment variable (univeral_storage_settings).
+         * 
+         * The instances are cached by the content of their settings, so the same instance is returned 
+         * for equivalent settings.  The modification time of the settings file is checked at most once per 
+         * second and the file is parsed again only when it's modified, if its content changed the instance 
+         * of the previous content is retired: it's removed from the cache but it isn't closed, because other 
+         * threads could still be using it.  The retired instances are closed by releaseRetired or releaseAll.
+         * 
+         * @param s is a custom settings.
+         */
+        public static UniversalStorage getInstance(UniversalSettings s) {
+            try {
+                UniversalSettings settings = s == null ? loadSettings() : s;
+
+                UniversalStorage storage = STORAGES.get(settings.getFingerprint());
+                if (storage != null) {
+                    return storage;
+                }
+
+                return retrieveUniversalStorage(settings);
+            } catch (IllegalStateException e) {
+                throw e;
+            } catch (Exception e) {
+                e.printStackTrace();
+                throw new IllegalStateException(e.getMessage());
+            }
+        }
+
+        /**
+         * This method loads the settings according to the current context, the parsed settings are 
+         * reused while the settings file is not modified.
+         */
+        private static UniversalSettings loadSettings() throws Exception {
+            /*
+            * We need to load the current settings according to the following options:
+            * 1. Throughout jvm parameter (universal.storage.settings).
+            * 2. Throughout environment variable (univeral_storage_settings).
+            * 
+            * The discovery for these settings will be executed following the order above.
+            */
+            String settingFile = System.getProperty("universal.storage.settings");
+            if (settingFile == null) {
+                settingFile = System.getenv("universal_storage_settings");
+            }
+
+            if (settingFile == null) {
+                throw new IllegalStateException("It was not found the parameter to read settings.  Try to check the parameters (universal.storage.settings or universal_storage_settings).");
+            }
+
+            SettingsFile cached = SETTINGS_FILES.get(settingFile);
+            if (cached != null) {
+                long now = System.currentTimeMillis();
+                if (now - cached.checkedAt < SETTINGS_CHECK_INTERVAL) {
+                    return cached.settings;
+                }
+
+                if (cached.lastModified == cached.file.lastModified()) {
+                    cached.checkedAt = now;
+                    return cached.settings;
+                }
+            }
+
+            File file = new File(settingFile);
+            if (!file.exists() || file.isDirectory()) {
+                throw new IllegalStateException("The setting file '" + file.getName() + "' either doesn't exist or is a folder.");
+            }
+
+            long lastModified = file.lastModified();
+            UniversalSettings settings = new UniversalSettings(file);
+            SETTINGS_FILES.put(settingFile, new SettingsFile(file, lastModified, settings));
+            if (cached != null && !cached.settings.getFingerprint().equals(settings.getFingerprint())) {
+                retire(cached.settings.getFingerprint());
+            }
+
+            return settings;
+        }
+
+        /**
+         * This method removes the cached instance of the passed fingerprint without closing it, the instance 
+         * is kept as retired until releaseRetired or releaseAll is called.
+         * 
+         * @param fingerprint of the settings in context.
+         */
+        private static void retire(String fingerprint) {
+            UniversalStorage storage = STORAGES.remove(fingerprint);
+            LOCKS.remove(fingerprint);
+            if (storage != null) {
+                UniversalStorage previous = RETIRED.put(fingerprint, storage);
+                if (previous != null && previous != storage) {
+                    previous.close();
+                }
+            }
+        }
+
+        /**
+         * This method removes the cached instance of the passed settings and closes it, the next call of 
+         * getInstance creates a new instance.  The callers must not use the released instance anymore.
+         * A retired instance of the same settings is closed as well.
+         * 
+         * @param s is a custom settings, if it's null the settings of the current context are used.
+         */
+        public static void release(UniversalSettings s) {
+            try {
+                UniversalSettings settings = s == null ? loadSettings() : s;
+                String fingerprint = settings.getFingerprint();
+                UniversalStorage storage = STORAGES.remove(fingerprint);
+                LOCKS.remove(fingerprint);
+                if (storage != null) {
+                    storage.close();
+                }
+
+                UniversalStorage retired = RETIRED.remove(fingerprint);
+                if (retired != null) {
+                    retired.close();
+                }
+            } catch (IllegalStateException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e.getMessage());
+            }
+        }
+
+        /**
+         * This method removes every cached instance and closes it, i.e: when the application stops.
+         */
+        public static void releaseAll() {
+            for (String fingerprint : STORAGES.keySet()) {
+                UniversalStorage storage = STORAGES.remove(fingerprint);
+                LOCKS.remove(fingerprint);
+                if (storage != null) {
+                    storage.close();
+                }
+            }
+
+            releaseRetired();
+        }
+
+        /**
+         * This method closes the instances retired by a change of the settings file, the callers must 
+         * call it once they don't use the instances returned before the change anymore.
+         */
+        public static void releaseRetired() {
+            for (String fingerprint : RETIRED.keySet()) {
+                UniversalStorage storage = RETIRED.remove(fingerprint);
+                if (storage != null) {
+                    storage.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * This class keeps the settings parsed from a settings file, the modification time of that file and 
+     * when that modification time was checked for the last time.
+     */
+    private static class SettingsFile {
+        private final File file;
+        private final long lastModified;
+        private final UniversalSettings settings;
+        private volatile long checkedAt;
+
+        private SettingsFile(File file, long lastModified, UniversalSettings settings) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.settings = settings;
+            this.checkedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * This method retrieves an UniversalStorage according to the provider within current settings.
+     * 
+     * @param settings in context.
+     */
+    private static UniversalStorage retrieveUniversalStorage(UniversalSettings settings) throws Exception {
+        String name = PROVIDERS.get(settings.getProvider());
+        if (name == null) {
+            return null;
+        }
+
+        registerUniversalStorage(name, settings);
+        return STORAGES.get(settings.getFingerprint());
+    }
+
+    /**
+     * This method decorates the storage according to the current settings, i.e: a cache of retrieved files.
+     * The transfer (multipart, parallel download) and write behind decorators are the innermost ones, so they upload what the other decorators store.
+     * The metrics decorator is the outermost one, so it measures what the callers observe.
+     * 
+     * @param storage to be decorated.
+     * @param settings in context.
+     */
+    private static UniversalStorage decorate(UniversalStorage storage, UniversalSettings settings) throws Exception {
+        if (settings.isMultipartEnabled() && storage instanceof UniversalMultipartProvider) {
+            storage = new UniversalMultipartStorage(storage);
+        }
+
+        if (settings.isDownloadEnabled() && storage.supportsRanges()) {
+            storage = new UniversalParallelDownloadStorage(storage);
+        }
+
+        if (settings.isChecksumEnabled()) {
+            storage = new UniversalChecksumStorage(storage);
+        }
+
+        if (settings.isClientEncryptionEnabled()) {
+            storage = new UniversalEncryptionStorage(storage);
+        }
+
+        if (!settings.getCompressionRules().isEmpty()) {
+            storage = new UniversalCompressionStorage(storage);
+        }
+
+        if (settings.isDedupEnabled()) {
+            storage = new UniversalDedupStorage(storage);
+        }
+
+        if (settings.isWriteBehindEnabled()) {
+            storage = new UniversalWriteBehindStorage(storage);
+        }
+
+        if (settings.getCacheMaxBytes() > 0) {
+            storage = new UniversalCachedStorage(storage, settings.getCacheMaxBytes());
+        }
+
+        if (settings.isMetricsEnabled()) {
+            storage = new UniversalInstrumentedStorage(storage, 
+                        UniversalInstrumentedStorage.resolveMetrics(settings.getMetricsImplementation()));
+        }
+
+        return storage;
+    }
+
+    /**
+     * This method verifies if exist an instance in STORAGES for the passed settings, otherwise a new 
+     * instance of the passed class will be registered.  The instances are created under a lock per 
+     * fingerprint, so if two threads register the same settings at the same time only one instance 
+     * is created and the other thread waits for it.
+     * 
+     * @param name of a universal storage.  
+     * @param settings of the new instance.
+     */
+    public static void registerUniversalStorage(String name, UniversalSettings settings) throws Exception {
+        String fingerprint = settings.getFingerprint();
+        if (STORAGES.get(fingerprint) != null) {
+            return;
+        }
+
+        /*
+         * The lock is removed when the instance is released, so a thread holding a removed lock tries again 
+         * with the current one.
+         */
+        while (STORAGES.get(fingerprint) == null) {
+            Object lock = LOCKS.get(fingerprint);
+            if (lock == null) {
+                Object created = new Object();
+                lock = LOCKS.putIfAbsent(fingerprint, created);
+                if (lock == null) {
+                    lock = created;
+                }
+            }
+
+            synchronized (lock) {
+                if (LOCKS.get(fingerprint) != lock) {
+                    continue;
+                }
+
+                if (STORAGES.get(fingerprint) == null) {
+                    STORAGES.put(fingerprint, instantiate(name, settings));
+                }
+            }
+        }
+    }
+
+    /**
+     * This method creates a new decorated instance according to the provider within the passed settings, 
+     * the instance is not registered so the caller is responsible for closing it.  The composite providers 
+     * (i.e: tiered) use this method to create their inner storages.
+     * 
+     * @param settings of the new instance.
+     */
+    static UniversalStorage newUniversalStorage(UniversalSettings settings) throws Exception {
+        String name = PROVIDERS.get(settings.getProvider());
+        if (name == null) {
+            throw new IllegalStateException("There is not a storage for the provider " + settings.getProvider() + ".");
+        }
+
+        return instantiate(name, settings);
+    }
+
+    /**
+     * This method creates a new instance of the passed class and decorates it according to the passed settings.
+     * 
+     * @param name of a universal storage.  
+     * @param settings of the new instance.
+     */
+    private static UniversalStorage instantiate(String name, UniversalSettings settings) throws Exception {
+        Constructor<?> constructor = CONSTRUCTORS.get(name);
+        if (constructor == null) {
+            constructor = Class.forName(name).getConstructor(UniversalSettings.class);
+            CONSTRUCTORS.put(name, constructor);
+        }
+
+        return decorate((UniversalStorage) constructor.newInstance(settings), settings);
     }
 
     protected void validateRoot(UniversalSettings settings) throws UniversalIOException {
@@ -32,6 +32,8 @@ public class UniversalStorageData {
     private String remoteLink;
     private String remoteId;
     private String remotePath;
+    private String checksum;
+    private String sha256;
 
     /**
      * This constructor instantiates a new UniversalStorageDate with the passwed attributes.
@@ -76,6 +78,27 @@ public class UniversalStorageData {
         this.remotePath = remotePath;
     }
 
+    /**
+     * Returns the checksum computed while the file was transferred (i.e: crc32c:1a2b3c4d), null if the 
+     * checksums are disabled.
+     */
+    public String getChecksum() {
+        return this.checksum;
+    }
+    public void setChecksum(String checksum) {
+        this.checksum = checksum;
+    }
+
+    /**
+     * Returns the SHA-256 computed while the file was transferred, null if the SHA-256 is disabled.
+     */
+    public String getSha256() {
+        return this.sha256;
+    }
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
     public String toString() {
         return new StringBuilder(100)
                 .append(this.name)
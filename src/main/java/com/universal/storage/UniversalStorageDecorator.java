@@ -0,0 +1,304 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.storage.pool.UniversalPoolStats;
+import com.universal.util.FileUtil;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class forwards every method to another storage, the extended classes override the methods
+ * they need to decorate.  The events of the decorated storage are triggered through this storage,
+ * so the listeners must be registered within the decorator.
+ * 
+ * The decorators share the metadata cache of the decorated storage, so a chain of storages keeps one 
+ * cache.  The forwarded store and remove operations invalidate the cache when they return, the cache 
+ * doesn't depend on the events of the decorated storage.
+ */
+public class UniversalStorageDecorator extends UniversalStorage {
+    protected final UniversalStorage delegate;
+
+    /**
+     * This constructor instantiates a new decorator of the passed storage.
+     * 
+     * @param delegate is the decorated storage.
+     */
+    public UniversalStorageDecorator(UniversalStorage delegate) {
+        super(delegate.settings);
+        this.delegate = delegate;
+        /*
+         * The events of the decorated storage are forwarded synchronously, the decorator 
+         * dispatches them according to the settings.
+         */
+        this.delegate.useSynchronousEvents();
+        this.delegate.registerListener(new Bridge());
+        this.delegate.shareMetadata(this);
+    }
+
+    /**
+     * Returns the decorated storage.
+     */
+    public UniversalStorage getDelegate() {
+        return this.delegate;
+    }
+
+    void storeFile(File file, String path) throws UniversalIOException {
+        try {
+            this.delegate.storeFile(file, path);
+        } finally {
+            invalidateMetadata(FileUtil.join(path, file.getName()));
+        }
+    }
+
+    void storeFile(String path) throws UniversalIOException {
+        try {
+            this.delegate.storeFile(path);
+        } finally {
+            invalidateMetadata(new File(path).getName());
+        }
+    }
+
+    void storeFile(String path, String targetPath) throws UniversalIOException {
+        try {
+            this.delegate.storeFile(path, targetPath);
+        } finally {
+            invalidateMetadata(FileUtil.join(targetPath, new File(path).getName()));
+        }
+    }
+
+    void removeFile(String path) throws UniversalIOException {
+        try {
+            this.delegate.removeFile(path);
+        } finally {
+            invalidateMetadata(path);
+        }
+    }
+
+    void createFolder(String path) throws UniversalIOException {
+        this.delegate.createFolder(path);
+    }
+
+    void removeFolder(String path) throws UniversalIOException {
+        try {
+            this.delegate.removeFolder(path);
+        } finally {
+            invalidateMetadata(null);
+        }
+    }
+
+    File retrieveFile(String path) throws UniversalIOException {
+        return this.delegate.retrieveFile(path);
+    }
+
+    InputStream retrieveFileAsStream(String path) throws UniversalIOException {
+        return this.delegate.retrieveFileAsStream(path);
+    }
+
+    void clean() throws UniversalIOException {
+        this.delegate.clean();
+    }
+
+    void close() {
+        this.delegate.close();
+        super.close();
+    }
+
+    void wipe() throws UniversalIOException {
+        try {
+            this.delegate.wipe();
+        } finally {
+            invalidateMetadata(null);
+        }
+    }
+
+    public void storeStream(InputStream stream, String path, long contentLengthHint) throws UniversalIOException {
+        try {
+            this.delegate.storeStream(stream, path, contentLengthHint);
+        } finally {
+            invalidateMetadata(path);
+        }
+    }
+
+    /**
+     * This method opens the stream of the decorated storage, the metadata of the file is invalidated when 
+     * the stream is closed or aborted.
+     * 
+     * @param path is the path for this new file within the root, including its name.
+     */
+    public UniversalOutputStream openForWrite(final String path) throws UniversalIOException {
+        final UniversalOutputStream target = this.delegate.openForWrite(path);
+        return new UniversalOutputStream(target, () -> invalidateMetadata(path), () -> {
+            try {
+                target.abort();
+            } catch (IOException ignore) {
+            } finally {
+                invalidateMetadata(path);
+            }
+        });
+    }
+
+    public SeekableByteChannel retrieveFileAsChannel(String path) throws UniversalIOException {
+        return this.delegate.retrieveFileAsChannel(path);
+    }
+
+    public InputStream retrieveRange(String path, long offset, long length) throws UniversalIOException {
+        return this.delegate.retrieveRange(path, offset, length);
+    }
+
+    public ByteBuffer retrieveRangeAsBuffer(String path, long offset, int length) throws UniversalIOException {
+        return this.delegate.retrieveRangeAsBuffer(path, offset, length);
+    }
+
+    public UniversalBatchResult storeFiles(Map<String, String> files) {
+        try {
+            return this.delegate.storeFiles(files);
+        } finally {
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                invalidateMetadata(FileUtil.join(entry.getValue(), new File(entry.getKey()).getName()));
+            }
+        }
+    }
+
+    public UniversalBatchResult removeFiles(Collection<String> paths) {
+        try {
+            return this.delegate.removeFiles(paths);
+        } finally {
+            for (String path : paths) {
+                invalidateMetadata(path);
+            }
+        }
+    }
+
+    public UniversalBatchResult retrieveFiles(Collection<String> paths) {
+        return this.delegate.retrieveFiles(paths);
+    }
+
+    public void resumeStore(File file, String path) throws UniversalIOException {
+        try {
+            this.delegate.resumeStore(file, path);
+        } finally {
+            invalidateMetadata(FileUtil.join(path, file.getName()));
+        }
+    }
+
+    public File resumeRetrieve(String path) throws UniversalIOException {
+        return this.delegate.resumeRetrieve(path);
+    }
+
+    public UniversalListing list(String path, boolean recursive) throws UniversalIOException {
+        return this.delegate.list(path, recursive);
+    }
+
+    public List<UniversalPoolStats> getSessionPoolStats() {
+        return this.delegate.getSessionPoolStats();
+    }
+
+    protected boolean supportsRanges() {
+        return this.delegate.supportsRanges();
+    }
+
+    protected boolean hasCheapStat() {
+        return this.delegate.hasCheapStat();
+    }
+
+    protected boolean hasDirectStreams() {
+        return this.delegate.hasDirectStreams();
+    }
+
+    protected long getRemoteLength(String path) throws UniversalIOException {
+        return this.delegate.getRemoteLength(path);
+    }
+
+    protected void copyFile(String sourcePath, String targetPath) throws UniversalIOException {
+        try {
+            this.delegate.copyFile(sourcePath, targetPath);
+        } finally {
+            invalidateMetadata(targetPath);
+        }
+    }
+
+    protected UniversalFileStat fetchStat(String path) throws UniversalIOException {
+        return this.delegate.fetchStat(path);
+    }
+
+    protected UniversalListPage listPage(String path, boolean recursive, String marker, int limit) throws UniversalIOException {
+        return this.delegate.listPage(path, recursive, marker, limit);
+    }
+
+    /**
+     * This class triggers the events of the decorated storage through the decorator.
+     */
+    private class Bridge implements UniversalStorageListener {
+        public void onStoreFile() {
+            triggerOnStoreFileListeners();
+        }
+
+        public void onCreateFolder() {
+            triggerOnCreateFolderListeners();
+        }
+
+        public void onRemoveFile() {
+            triggerOnRemoveFileListeners();
+        }
+
+        public void onRemoveFolder() {
+            triggerOnRemoveFolderListeners();
+        }
+
+        public void onError(UniversalIOException error) {
+            triggerOnErrorListeners(error);
+        }
+
+        public void onFileStored(UniversalStorageData data) {
+            triggerOnFileStoredListeners(data);
+        }
+
+        public void onFolderCreated(UniversalStorageData data) {
+            triggerOnFolderCreatedListeners(data);
+        }
+
+        public void onFileRemoved() {
+            triggerOnFileRemovedListeners();
+        }
+
+        public void onFolderRemoved() {
+            triggerOnFolderRemovedListeners();
+        }
+
+        public void onUploadProgress(UniversalTransferProgress progress) {
+            triggerOnUploadProgressListeners(progress);
+        }
+
+        public void onDownloadProgress(UniversalTransferProgress progress) {
+            triggerOnDownloadProgressListeners(progress);
+        }
+    }
+}
@@ -81,4 +81,20 @@ public interface UniversalStorageListener {
      * This method will be called when the removeFolder has finished.
      */
     void onFolderRemoved();
+
+    /**
+     * This method will be called every time a part of a multipart upload has been uploaded.
+     * 
+     * @param progress of the upload.
+     */
+    default void onUploadProgress(UniversalTransferProgress progress) {
+    }
+
+    /**
+     * This method will be called every time a segment of a parallel download has been downloaded.
+     * 
+     * @param progress of the download.
+     */
+    default void onDownloadProgress(UniversalTransferProgress progress) {
+    }
 } 
\ No newline at end of file
@@ -98,4 +98,22 @@ public class UniversalStorageListenerAdapter implements UniversalStorageListener
     public void onFolderRemoved() {
         
     }
+
+    /**
+     * This method will be called every time a part of a multipart upload has been uploaded.
+     * 
+     * @param progress of the upload.
+     */
+    public void onUploadProgress(UniversalTransferProgress progress) {
+        
+    }
+
+    /**
+     * This method will be called every time a segment of a parallel download has been downloaded.
+     * 
+     * @param progress of the download.
+     */
+    public void onDownloadProgress(UniversalTransferProgress progress) {
+        
+    }
 }
\ No newline at end of file
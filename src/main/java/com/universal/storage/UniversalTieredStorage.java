@@ -0,0 +1,541 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.storage.settings.UniversalSettings;
+import com.universal.util.FileUtil;
+import com.universal.util.PathValidator;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class is the implementation of a storage that layers two storages: a hot tier (i.e: the local 
+ * file system) in front of a cold tier (i.e: s3 or ftp) which keeps the canonical copy of every file.
+ * 
+ * The files are written within both tiers, the cold tier is written either through (the caller waits) 
+ * or back (a background task uploads a staged copy).  The files retrieved from the cold tier are promoted 
+ * to the hot tier, and the hot files are demoted (removed from the hot tier) according to their last access 
+ * and the max bytes of the hot tier.
+ * 
+ * The completion events (onFileStored, onFolderCreated, onFileRemoved, onFolderRemoved and onError) are 
+ * the events of the cold tier, so with the write back policy onFileStored is triggered when the upload 
+ * finishes.
+ * 
+ * With the write back policy the cold tier is decorated by a write behind storage (see 
+ * UniversalWriteBehindStorage) whose folder is the write behind folder of these settings, so the pending 
+ * uploads are journaled and replayed by the next instance after a crash.  A failed upload is retried after 
+ * a delay that doubles per attempt, the pending files are served from the write behind folder until their 
+ * uploads succeed.
+ */
+public class UniversalTieredStorage extends UniversalStorage {
+    private static final long DEMOTION_INTERVAL = 1000;
+
+    private final UniversalStorage hot;
+    private final UniversalStorage cold;
+    private final UniversalWriteBehindStorage writeBehind;
+    private final boolean promoteOnRead;
+    private final long maxAge;
+    private final long maxBytes;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong hotBytes = new AtomicLong();
+    private final AtomicBoolean demoting = new AtomicBoolean();
+    private volatile long lastDemotion = System.currentTimeMillis();
+
+    /**
+     * This constructor receives the settings for this new tiered storage, the tiers are created 
+     * according to the hot and cold settings.
+     * 
+     * @param settings for this new storage.
+     */
+    public UniversalTieredStorage(UniversalSettings settings) throws Exception {
+        super(settings);
+
+        new File(settings.getTieredHot().getTmp()).mkdirs();
+        new File(settings.getTieredCold().getTmp()).mkdirs();
+
+        this.hot = newUniversalStorage(settings.getTieredHot());
+        UniversalStorage cold = null;
+        try {
+            cold = newUniversalStorage(settings.getTieredCold());
+            if ("back".equals(settings.getTieredWritePolicy())) {
+                this.writeBehind = new UniversalWriteBehindStorage(cold, new File(settings.getWriteBehindFolder()), 
+                            settings.getWriteBehindBatchSize(), settings.getWriteBehindMaxRetries(), settings.getTieredRetryDelay());
+                this.cold = this.writeBehind;
+            } else {
+                this.writeBehind = null;
+                this.cold = cold;
+            }
+        } catch (Exception e) {
+            if (cold != null) {
+                cold.close();
+            }
+
+            this.hot.close();
+            throw e;
+        }
+
+        this.promoteOnRead = settings.isTieredPromoteOnRead();
+        this.maxAge = settings.getTieredMaxAge();
+        this.maxBytes = settings.getTieredMaxBytes();
+
+        this.cold.useSynchronousEvents();
+        this.cold.registerListener(new ColdListener());
+    }
+
+    /**
+     * Returns the hot tier.
+     */
+    public UniversalStorage getHot() {
+        return this.hot;
+    }
+
+    /**
+     * Returns the cold tier, with the write back policy it's decorated by the write behind storage.
+     */
+    public UniversalStorage getCold() {
+        return this.cold;
+    }
+
+    /**
+     * Returns the amount of bytes within the hot tier written or promoted by this storage.
+     */
+    public long getHotBytes() {
+        return this.hotBytes.get();
+    }
+
+    /**
+     * Returns the amount of files waiting to be written within the cold tier, including the failed uploads 
+     * waiting for their retry.
+     */
+    public int getPendingUploads() {
+        return this.writeBehind == null ? 0 : this.writeBehind.getPendingUploads();
+    }
+
+    /**
+     * This method stores a file within both tiers.  With the write back policy the method returns after 
+     * journaling the upload of the cold tier and storing the file within the hot tier.
+     * 
+     * @param file to be stored within the storage.
+     * @param path is the path for this new file within the root.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    void storeFile(File file, String path) throws UniversalIOException {
+        triggerOnStoreFileListeners();
+
+        String key = normalize(FileUtil.join(path, file.getName()));
+        this.cold.storeFile(file, path);
+        putHot(key, file, path);
+        demoteIfNeeded();
+    }
+
+    /**
+     * This method stores a file according to the provided path within the storage provider according to the current settings.
+     * 
+     * @param path pointing to the file which will be stored within the storage.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    void storeFile(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), null);
+    }
+
+    /**
+     * This method stores a file according to the provided path within the storage provider according to the current settings.
+     * 
+     * @param path pointing to the file which will be stored within the storage.
+     * @param targetPath is the path within the storage.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    void storeFile(String path, String targetPath) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), targetPath);
+    }
+
+    /**
+     * This method removes a file from both tiers.
+     * 
+     * @param path is the file's path.  
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    void removeFile(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        triggerOnRemoveFileListeners();
+
+        String key = normalize(path);
+        try {
+            this.cold.removeFile(path);
+        } finally {
+            removeHot(key);
+        }
+    }
+
+    /**
+     * This method creates a new folder within both tiers.
+     * 
+     * @param path is the folder's path.
+     * @throws UniversalIOException when a specific IO error occurs.
+     */
+    void createFolder(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        triggerOnCreateFolderListeners();
+
+        this.cold.createFolder(path);
+        try {this.hot.createFolder(path);}catch(Exception ignore) {}
+    }
+
+    /**
+     * This method removes the folder located on that path from both tiers.
+     * 
+     * @param path of the folder.
+     */
+    void removeFolder(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        triggerOnRemoveFolderListeners();
+
+        String prefix = normalize(path);
+        prefix = prefix.isEmpty() ? prefix : prefix + "/";
+        try {
+            this.cold.removeFolder(path);
+        } finally {
+            for (String key : new ArrayList<String>(this.entries.keySet())) {
+                if (key.startsWith(prefix)) {
+                    forget(key);
+                }
+            }
+
+            try {this.hot.removeFolder(path);}catch(Exception ignore) {}
+        }
+    }
+
+    /**
+     * This method retrieves a file from the hot tier, if the file is not there it's retrieved from 
+     * the cold tier and promoted.
+     * 
+     * @param path in context.
+     * @returns a file pointing to the retrieved file.
+     */
+    File retrieveFile(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        String key = normalize(path);
+        Entry entry = this.entries.get(key);
+        if (entry != null) {
+            try {
+                File file = this.hot.retrieveFile(path);
+                entry.touch();
+                return file;
+            } catch (UniversalIOException e) {
+                /*
+                 * The file was removed from the hot tier by someone else, the cold tier has the canonical copy.
+                 */
+                forget(key);
+            }
+        }
+
+        File file = this.cold.retrieveFile(path);
+        if (this.promoteOnRead) {
+            putHot(key, file, FileUtil.getParent(key));
+            demoteIfNeeded();
+        }
+
+        return file;
+    }
+
+    /**
+     * This method retrieves a file as InputStream from the hot tier, if the file is not there it's retrieved 
+     * from the cold tier (and promoted when the policy says so).
+     * 
+     * @param path in context.
+     * @returns an InputStream pointing to the retrieved file.
+     */
+    InputStream retrieveFileAsStream(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        String key = normalize(path);
+        Entry entry = this.entries.get(key);
+        if (entry != null) {
+            try {
+                InputStream stream = this.hot.retrieveFileAsStream(path);
+                entry.touch();
+                return stream;
+            } catch (UniversalIOException e) {
+                forget(key);
+            }
+        }
+
+        if (!this.promoteOnRead) {
+            return this.cold.retrieveFileAsStream(path);
+        }
+
+        File file = retrieveFile(path);
+        try {
+            return new FileInputStream(file);
+        } catch (IOException e) {
+            UniversalIOException error = new UniversalIOException(e.getMessage());
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+    }
+
+    /**
+     * This method lists the content of a folder from the cold tier, the cold tier keeps every file so the 
+     * hot tier is not listed.  The pending uploads of the write back policy are awaited first.
+     * 
+     * @param path of the folder, an empty string for the root.
+     * @param recursive indicates if the content of the subfolders is listed too.
+     */
+    public UniversalListing list(String path, boolean recursive) throws UniversalIOException {
+        flush();
+        return this.cold.list(path, recursive);
+    }
+
+    /**
+     * This method returns the attributes of a file from the cold tier, the write behind storage of the 
+     * write back policy returns the attributes of the pending files.
+     * 
+     * @param path of the file.
+     */
+    protected UniversalFileStat fetchStat(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        return this.cold.fetchStat(path);
+    }
+
+    protected boolean hasCheapStat() {
+        return this.hot.hasCheapStat() && this.cold.hasCheapStat();
+    }
+
+    /**
+     * This method cleans the tmp folders of both tiers.
+     */
+    void clean() throws UniversalIOException {
+        this.hot.clean();
+        this.cold.clean();
+    }
+
+    /**
+     * This method cancels the pending uploads and wipes both tiers.
+     * Be careful with this method because in too many cases this action won't provide a rollback action.
+     */
+    void wipe() throws UniversalIOException {
+        try {
+            this.cold.wipe();
+        } finally {
+            for (String key : new ArrayList<String>(this.entries.keySet())) {
+                forget(key);
+            }
+
+            this.hot.wipe();
+        }
+    }
+
+    /**
+     * This method closes both tiers, the pending uploads of the write back policy are kept within the 
+     * journal and replayed by the next instance.
+     */
+    void close() {
+        super.close();
+        this.hot.close();
+        this.cold.close();
+    }
+
+    /**
+     * This method waits until the pending uploads of the write back policy were either uploaded or abandoned 
+     * after their retries (see UniversalWriteBehindStorage.flush).
+     */
+    public void flush() {
+        if (this.writeBehind != null) {
+            this.writeBehind.flush();
+        }
+    }
+
+    /**
+     * This method removes from the hot tier the files that weren't accessed within the max age and the 
+     * least recently accessed files until the hot tier is within its max bytes.  The files waiting to be 
+     * uploaded are demoted too, the write behind folder keeps a copy of them until their uploads succeed.
+     */
+    public void demote() {
+        if (!this.demoting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            long now = System.currentTimeMillis();
+            this.lastDemotion = now;
+
+            List<Map.Entry<String, Entry>> candidates = new ArrayList<Map.Entry<String, Entry>>(this.entries.entrySet());
+            Collections.sort(candidates, Comparator.comparingLong(e -> e.getValue().lastAccess));
+
+            for (Map.Entry<String, Entry> candidate : candidates) {
+                boolean expired = this.maxAge > 0 && now - candidate.getValue().lastAccess > this.maxAge;
+                boolean full = this.maxBytes > 0 && this.hotBytes.get() > this.maxBytes;
+                if (!expired && !full) {
+                    continue;
+                }
+
+                removeHot(candidate.getKey());
+            }
+        } finally {
+            this.demoting.set(false);
+        }
+    }
+
+    /**
+     * This method demotes asynchronously when the hot tier exceeds its max bytes or the last demotion 
+     * is older than a second.
+     */
+    private void demoteIfNeeded() {
+        if (this.maxAge == 0 && this.maxBytes == 0) {
+            return;
+        }
+
+        if ((this.maxBytes > 0 && this.hotBytes.get() > this.maxBytes) 
+                    || System.currentTimeMillis() - this.lastDemotion > DEMOTION_INTERVAL) {
+            submit(() -> {
+                demote();
+                return null;
+            });
+        }
+    }
+
+    /**
+     * This method stores the passed file within the hot tier, a failure is not propagated because the 
+     * cold tier has (or will have) the file.
+     * 
+     * @param key is the normalized path of the file.
+     * @param file to be stored.
+     * @param path of the folder within the hot tier.
+     */
+    private void putHot(String key, File file, String path) {
+        try {
+            this.hot.storeFile(file, "".equals(path) ? null : path);
+        } catch (Exception e) {
+            forget(key);
+            return;
+        }
+
+        Entry previous = this.entries.put(key, new Entry(file.length()));
+        this.hotBytes.addAndGet(file.length() - (previous == null ? 0 : previous.size));
+    }
+
+    /**
+     * This method removes the passed file from the hot tier.
+     * 
+     * @param key is the normalized path of the file.
+     */
+    private void removeHot(String key) {
+        if (forget(key)) {
+            try {this.hot.removeFile(key);}catch(Exception ignore) {}
+        }
+    }
+
+    /**
+     * This method removes the passed file from the index of the hot tier.
+     * 
+     * @param key is the normalized path of the file.
+     * @returns true if the file was indexed.
+     */
+    private boolean forget(String key) {
+        Entry entry = this.entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+
+        this.hotBytes.addAndGet(-entry.size);
+        return true;
+    }
+
+    private String normalize(String path) {
+        String normalized = path.replace(File.separatorChar, '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+
+        return normalized;
+    }
+
+    /**
+     * This class represents a file within the hot tier.
+     */
+    private static class Entry {
+        private final long size;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private Entry(long size) {
+            this.size = size;
+        }
+
+        private void touch() {
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * This class triggers the completion events of the cold tier through this storage.
+     */
+    private class ColdListener extends UniversalStorageListenerAdapter {
+        public void onError(UniversalIOException error) {
+            triggerOnErrorListeners(error);
+        }
+
+        public void onFileStored(UniversalStorageData data) {
+            triggerOnFileStoredListeners(data);
+        }
+
+        public void onFolderCreated(UniversalStorageData data) {
+            triggerOnFolderCreatedListeners(data);
+        }
+
+        public void onFileRemoved() {
+            triggerOnFileRemovedListeners();
+        }
+
+        public void onFolderRemoved() {
+            triggerOnFolderRemovedListeners();
+        }
+
+        public void onUploadProgress(UniversalTransferProgress progress) {
+            triggerOnUploadProgressListeners(progress);
+        }
+
+        public void onDownloadProgress(UniversalTransferProgress progress) {
+            triggerOnDownloadProgressListeners(progress);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.universal.storage;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class represents the progress of a transfer, i.e: a multipart upload.
+ */
+public class UniversalTransferProgress {
+    private final String path;
+    private final long transferred;
+    private final long total;
+
+    /**
+     * This constructor instantiates a new UniversalTransferProgress with the passed attributes.
+     * 
+     * @param path of the transferred file within the storage.
+     * @param transferred is the amount of bytes transferred so far.
+     * @param total is the size of the file, -1 when unknown.
+     */
+    public UniversalTransferProgress(String path, long transferred, long total) {
+        this.path = path;
+        this.transferred = transferred;
+        this.total = total;
+    }
+
+    public String getPath() {
+        return this.path;
+    }
+
+    public long getTransferred() {
+        return this.transferred;
+    }
+
+    public long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * Returns the transferred percentage (0 - 100), -1 when the size of the file is unknown.
+     */
+    public double getPercentage() {
+        if (this.total < 0) {
+            return -1;
+        }
+
+        return this.total == 0 ? 100 : this.transferred * 100d / this.total;
+    }
+
+    public String toString() {
+        return this.path + " " + this.transferred + "/" + this.total;
+    }
+}
@@ -0,0 +1,469 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.util.BoundedInputStream;
+import com.universal.util.FileUtil;
+import com.universal.util.PathValidator;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class is a stage of the pipeline between the caller and the provider that transforms the content 
+ * of the files (i.e: compression, encryption).  The content is encoded while it's written and decoded 
+ * while it's read, every encoded file starts with the magic bytes of the stage, so the files without 
+ * them (i.e: stored before enabling the stage) are returned as is when the extended class allows the 
+ * plain files, otherwise reading them fails.
+ * 
+ * The extended classes implement the encoding and the decoding of the streams, the ranges are served by 
+ * decoding the file and skipping the bytes before the offset unless the extended class overrides retrieveRange.
+ */
+public abstract class UniversalTransformStorage extends UniversalStorageDecorator {
+
+    /**
+     * This constructor instantiates a new stage over the passed storage.
+     * 
+     * @param delegate is the decorated storage.
+     */
+    public UniversalTransformStorage(UniversalStorage delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Returns the magic bytes written at the start of the encoded files.
+     */
+    protected abstract byte[] getMagic();
+
+    /**
+     * Indicates if the passed file must be encoded.
+     * 
+     * @param path of the file within the storage, including its name.
+     */
+    protected abstract boolean isEncoded(String path);
+
+    /**
+     * This method wraps the passed stream, the written bytes are encoded.  The magic bytes were already 
+     * written, closing the returned stream must finish the encoding and close the passed stream.
+     * 
+     * @param out is the stream of the decorated storage.
+     * @param path of the file within the storage, including its name.
+     */
+    protected abstract OutputStream encode(OutputStream out, String path) throws IOException;
+
+    /**
+     * This method wraps the passed stream, the read bytes are decoded.  The magic bytes were already read.
+     * 
+     * @param in is the stream of the decorated storage.
+     */
+    protected abstract InputStream decode(InputStream in) throws IOException;
+
+    /**
+     * Indicates if the files without the magic bytes are returned as is, otherwise reading them fails.
+     */
+    protected boolean isPlainAllowed() {
+        return true;
+    }
+
+    void storeFile(File file, String path) throws UniversalIOException {
+        String target = FileUtil.join(path, file.getName());
+        if (file.isDirectory() || !isEncoded(target)) {
+            super.storeFile(file, path);
+            return;
+        }
+
+        UniversalOutputStream out = openForWrite(target);
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                out.transferFrom(in);
+            } finally {
+                in.close();
+            }
+
+            out.close();
+        } catch (IOException e) {
+            try {out.abort();}catch(IOException ignore) {}
+            throw toUniversalIOException(e);
+        }
+    }
+
+    void storeFile(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), null);
+    }
+
+    /**
+     * This method stores the encoded file, the decorated storage can't resume an upload of the encoded 
+     * content so the file is stored from its start.
+     * 
+     * @param file to be stored.
+     * @param path is the path for this new file within the root.
+     */
+    public void resumeStore(File file, String path) throws UniversalIOException {
+        if (file.isDirectory() || !isEncoded(FileUtil.join(path, file.getName()))) {
+            super.resumeStore(file, path);
+            return;
+        }
+
+        storeFile(file, path);
+    }
+
+    void storeFile(String path, String targetPath) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), targetPath);
+    }
+
+    public void storeStream(InputStream stream, String path, long contentLengthHint) throws UniversalIOException {
+        if (!isEncoded(path)) {
+            super.storeStream(stream, path, contentLengthHint);
+            return;
+        }
+
+        UniversalOutputStream out = openForWrite(path);
+        try {
+            out.transferFrom(stream);
+            out.close();
+        } catch (IOException e) {
+            try {out.abort();}catch(IOException ignore) {}
+            throw toUniversalIOException(e);
+        }
+    }
+
+    /**
+     * This method opens a stream that encodes the written bytes into the stream of the decorated storage.
+     * 
+     * @param path is the path for this new file within the root, including its name.
+     */
+    public UniversalOutputStream openForWrite(String path) throws UniversalIOException {
+        if (!isEncoded(path)) {
+            return super.openForWrite(path);
+        }
+
+        final UniversalOutputStream target = super.openForWrite(path);
+        try {
+            /*
+             * The encoding stream must not close the target, the target is committed or aborted by the returned stream.
+             */
+            OutputStream shield = new FilterOutputStream(target) {
+                public void write(byte[] b, int off, int len) throws IOException {
+                    this.out.write(b, off, len);
+                }
+
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+
+            shield.write(getMagic());
+            return new UniversalOutputStream(encode(shield, path), () -> {
+                try {
+                    target.close();
+                } catch (IOException e) {
+                    throw toUniversalIOException(e);
+                }
+            }, () -> {
+                try {target.abort();}catch(IOException ignore) {}
+            });
+        } catch (IOException e) {
+            try {target.abort();}catch(IOException ignore) {}
+            throw toUniversalIOException(e);
+        }
+    }
+
+    public UniversalBatchResult storeFiles(Map<String, String> files) {
+        List<UniversalBatchResult.Item> items = new ArrayList<UniversalBatchResult.Item>(files.size());
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            items.add(new UniversalBatchResult.Item(entry.getKey(), entry.getValue()));
+        }
+
+        return executeBatch(items, item -> storeFile(item.getSource(), item.getPath()));
+    }
+
+    /**
+     * This method retrieves a file from the decorated storage and decodes it within the tmp folder.
+     * 
+     * @param path in context.
+     */
+    File retrieveFile(String path) throws UniversalIOException {
+        return decode(super.retrieveFile(path), path);
+    }
+
+    public File resumeRetrieve(String path) throws UniversalIOException {
+        return decode(super.resumeRetrieve(path), path);
+    }
+
+    public UniversalBatchResult retrieveFiles(Collection<String> paths) {
+        List<UniversalBatchResult.Item> items = new ArrayList<UniversalBatchResult.Item>(paths.size());
+        for (String path : paths) {
+            items.add(new UniversalBatchResult.Item(null, path));
+        }
+
+        return executeBatch(items, item -> item.setFile(retrieveFile(item.getPath())));
+    }
+
+    /**
+     * This method retrieves a file as InputStream, the bytes are decoded while they are read.
+     * 
+     * @param path in context.
+     */
+    InputStream retrieveFileAsStream(String path) throws UniversalIOException {
+        InputStream stream = super.retrieveFileAsStream(path);
+        boolean encoded;
+        try {
+            BufferedInputStream buffered = new BufferedInputStream(stream, FileUtil.BUFFER_SIZE);
+            encoded = readMagic(buffered);
+            if (encoded || isPlainAllowed()) {
+                return encoded ? decode(buffered) : buffered;
+            }
+        } catch (IOException e) {
+            try {stream.close();}catch(IOException ignore) {}
+            throw toUniversalIOException(e);
+        }
+
+        try {stream.close();}catch(IOException ignore) {}
+        throw notEncoded(path);
+    }
+
+    public SeekableByteChannel retrieveFileAsChannel(String path) throws UniversalIOException {
+        if (!hasMagic(path)) {
+            checkPlain(path);
+            return super.retrieveFileAsChannel(path);
+        }
+
+        File file = retrieveFile(path);
+        try {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        }
+    }
+
+    /**
+     * This method reads a range of the decoded content, the bytes before the offset of an encoded 
+     * file are decoded and skipped.
+     */
+    public InputStream retrieveRange(String path, long offset, long length) throws UniversalIOException {
+        if (!hasMagic(path)) {
+            checkPlain(path);
+            return super.retrieveRange(path, offset, length);
+        }
+
+        if (offset < 0) {
+            throw new IllegalArgumentException("The offset must be a positive number.");
+        }
+
+        InputStream stream = retrieveFileAsStream(path);
+        try {
+            BoundedInputStream.skip(stream, offset);
+        } catch (IOException e) {
+            try {stream.close();}catch(IOException ignore) {}
+            throw toUniversalIOException(e);
+        }
+
+        return new BoundedInputStream(stream, length);
+    }
+
+    public ByteBuffer retrieveRangeAsBuffer(String path, long offset, int length) throws UniversalIOException {
+        if (!hasMagic(path)) {
+            checkPlain(path);
+            return super.retrieveRangeAsBuffer(path, offset, length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        InputStream stream = retrieveRange(path, offset, length);
+        try {
+            int read;
+            while (buffer.hasRemaining() 
+                        && (read = stream.read(buffer.array(), buffer.position(), buffer.remaining())) != -1) {
+                buffer.position(buffer.position() + read);
+            }
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        } finally {
+            try {stream.close();}catch(IOException ignore) {}
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * This method checks the magic bytes of a file through a range request of the decorated storage.
+     * 
+     * @param path in context.
+     */
+    protected boolean hasMagic(String path) throws UniversalIOException {
+        byte[] magic = getMagic();
+        InputStream stream = super.retrieveRange(path, 0, magic.length);
+        try {
+            byte[] read = new byte[magic.length];
+            return readFully(stream, read) == magic.length && Arrays.equals(read, magic);
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        } finally {
+            try {stream.close();}catch(IOException ignore) {}
+        }
+    }
+
+    /**
+     * This method fails when the passed file doesn't have the magic bytes and the plain files aren't allowed.
+     * 
+     * @param path in context.
+     */
+    protected void checkPlain(String path) throws UniversalIOException {
+        if (!isPlainAllowed()) {
+            throw notEncoded(path);
+        }
+    }
+
+    private UniversalIOException notEncoded(String path) {
+        UniversalIOException error = new UniversalIOException("The file '" + path + "' doesn't have the header of " 
+                    + getClass().getSimpleName() + " and the plain files aren't allowed.");
+        triggerOnErrorListeners(error);
+        return error;
+    }
+
+    /**
+     * This method reads the magic bytes of the passed stream.
+     * 
+     * @param buffered is the stream positioned at the start of the file.
+     * @returns true if the stream starts with the magic bytes, otherwise the stream is reset to its start.
+     */
+    protected boolean readMagic(BufferedInputStream buffered) throws IOException {
+        byte[] magic = getMagic();
+        buffered.mark(magic.length);
+
+        byte[] read = new byte[magic.length];
+        if (readFully(buffered, read) == magic.length && Arrays.equals(read, magic)) {
+            return true;
+        }
+
+        buffered.reset();
+        return false;
+    }
+
+    /**
+     * This method reads until the passed array is full or the stream ends.
+     * 
+     * @returns the amount of read bytes.
+     */
+    protected static int readFully(InputStream in, byte[] bytes) throws IOException {
+        int read = 0;
+        int count;
+        while (read < bytes.length && (count = in.read(bytes, read, bytes.length - read)) != -1) {
+            read += count;
+        }
+
+        return read;
+    }
+
+    /**
+     * This method decodes the passed retrieved file within its own folder of the tmp folder, so the files 
+     * with the same name within different folders don't overwrite each other.  The files without the magic 
+     * bytes are returned as is when the plain files are allowed, otherwise the retrieved copy is deleted.
+     * 
+     * @param retrieved file of the decorated storage.
+     * @param path in context.
+     */
+    private File decode(File retrieved, String path) throws UniversalIOException {
+        File target = new File(this.settings.getTmp() + UUID.randomUUID() + File.separator + FileUtil.getName(path));
+        File part = new File(this.settings.getTmp() + "." + UUID.randomUUID() + ".part");
+        boolean owned = retrieved.getAbsolutePath().startsWith(new File(this.settings.getTmp()).getAbsolutePath());
+        try {
+            BufferedInputStream buffered = new BufferedInputStream(new FileInputStream(retrieved), FileUtil.BUFFER_SIZE);
+            try {
+                if (!readMagic(buffered)) {
+                    try {
+                        checkPlain(path);
+                    } catch (UniversalIOException e) {
+                        buffered.close();
+                        if (owned) {
+                            discard(retrieved);
+                        }
+
+                        throw e;
+                    }
+
+                    return retrieved;
+                }
+
+                InputStream in = decode(buffered);
+                OutputStream out = new FileOutputStream(part);
+                try {
+                    FileUtil.copy(in, out);
+                } finally {
+                    out.close();
+                    in.close();
+                }
+            } finally {
+                buffered.close();
+            }
+
+            if (owned) {
+                discard(retrieved);
+            }
+
+            target.getParentFile().mkdirs();
+            Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return target;
+        } catch (IOException e) {
+            part.delete();
+            if (owned) {
+                discard(retrieved);
+            }
+
+            throw toUniversalIOException(e);
+        }
+    }
+
+    /**
+     * This method deletes a retrieved copy within the tmp folder and its folder when it's left empty.
+     */
+    private void discard(File retrieved) {
+        retrieved.delete();
+        File parent = retrieved.getParentFile();
+        if (parent != null && !parent.getAbsoluteFile().equals(new File(this.settings.getTmp()).getAbsoluteFile())) {
+            parent.delete();
+        }
+    }
+}
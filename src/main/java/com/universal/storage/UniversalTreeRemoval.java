@@ -0,0 +1,277 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.util.ExecutorUtil;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class removes a tree of a storage walking its listing.  The files are removed in batches through 
+ * removeFiles (the providers with bulk delete remove a batch per request), at most the settings' remove 
+ * parallelism batches are removed at the same time.  When the files are gone the folders are removed 
+ * from the deepest to the shallowest, the folders of the same depth are removed concurrently.
+ * 
+ * Every removed file triggers the onRemoveFile and onFileRemoved events of the storage, so the progress 
+ * can be followed through the listeners or the counters of this class.  The removal can be cancelled, 
+ * the batches in progress are finished and the rest of the tree is kept.
+ */
+public class UniversalTreeRemoval {
+    private final UniversalStorage storage;
+    private final String path;
+    private final int parallelism;
+    private final int batchSize;
+
+    private final CompletableFuture<Void> future = new CompletableFuture<Void>();
+    private final AtomicLong removedFiles = new AtomicLong();
+    private final AtomicLong removedFolders = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicReference<UniversalIOException> failure = new AtomicReference<UniversalIOException>();
+    private volatile boolean cancelled;
+
+    /**
+     * This constructor instantiates a new removal of the passed folder.
+     * 
+     * @param storage in context.
+     * @param path of the folder, an empty string for the whole root.
+     */
+    UniversalTreeRemoval(UniversalStorage storage, String path) {
+        this.storage = storage;
+        this.path = path;
+        this.parallelism = storage.settings.getRemoveParallelism();
+        this.batchSize = storage.settings.getRemoveBatchSize();
+    }
+
+    /**
+     * This method starts the walk within a new thread.  The batches are executed by a pool of this removal, 
+     * removeFiles could wait for the storage's executor, so the batches can't run within that executor.
+     */
+    void start() {
+        ExecutorUtil.newThreadFactory("universal-tree-removal").newThread(() -> {
+            ExecutorService executor = ExecutorUtil.newExecutor("fixed", this.parallelism, "universal-tree-removal");
+            try {
+                run(executor);
+                if (isCancelled()) {
+                    this.future.completeExceptionally(new CancellationException("The removal of " + this.path + " was cancelled."));
+                } else if (this.failure.get() != null) {
+                    this.future.completeExceptionally(this.failure.get());
+                } else {
+                    this.future.complete(null);
+                }
+            } catch (Throwable e) {
+                this.future.completeExceptionally(e);
+            } finally {
+                executor.shutdown();
+            }
+        }).start();
+    }
+
+    /**
+     * This method cancels the removal, the batches in progress are finished.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Indicates if this removal was cancelled, either through cancel or through its future.
+     */
+    public boolean isCancelled() {
+        return this.cancelled || this.future.isCancelled();
+    }
+
+    /**
+     * Indicates if this removal finished, successfully or not.
+     */
+    public boolean isDone() {
+        return this.future.isDone();
+    }
+
+    /**
+     * Returns the amount of files removed so far.
+     */
+    public long getRemovedFiles() {
+        return this.removedFiles.get();
+    }
+
+    /**
+     * Returns the amount of folders removed so far.
+     */
+    public long getRemovedFolders() {
+        return this.removedFolders.get();
+    }
+
+    /**
+     * Returns the amount of files and folders that couldn't be removed.
+     */
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * Returns a future that completes when the removal finishes, the future fails with the first error of 
+     * the removal or with a CancellationException if the removal was cancelled.
+     */
+    public CompletableFuture<Void> toCompletableFuture() {
+        return this.future;
+    }
+
+    /**
+     * This method waits until the removal finishes.
+     * 
+     * @throws UniversalIOException if a file or folder couldn't be removed or the removal was cancelled.
+     */
+    public void await() throws UniversalIOException {
+        try {
+            this.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UniversalIOException("The removal of " + this.path + " was interrupted.");
+        } catch (CancellationException e) {
+            throw new UniversalIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UniversalIOException) {
+                throw (UniversalIOException) e.getCause();
+            }
+
+            throw new UniversalIOException(e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * This method walks the tree removing the files in batches and then the folders.
+     */
+    private void run(ExecutorService executor) throws UniversalIOException, InterruptedException {
+        Semaphore permits = new Semaphore(this.parallelism);
+        TreeMap<Integer, List<String>> folders = new TreeMap<Integer, List<String>>();
+
+        UniversalListing listing = this.storage.list(this.path, true);
+        try {
+            List<String> batch = new ArrayList<String>(this.batchSize);
+            while (!isCancelled() && listing.hasNext()) {
+                UniversalListEntry entry = listing.next();
+                if (entry.isFolder()) {
+                    int depth = entry.getRemotePath().split("/").length;
+                    folders.computeIfAbsent(depth, key -> new ArrayList<String>()).add(entry.getRemotePath());
+                    continue;
+                }
+
+                batch.add(entry.getRemotePath());
+                if (batch.size() == this.batchSize) {
+                    removeFiles(batch, permits, executor);
+                    batch = new ArrayList<String>(this.batchSize);
+                }
+            }
+
+            if (!isCancelled() && !batch.isEmpty()) {
+                removeFiles(batch, permits, executor);
+            }
+        } catch (UncheckedIOException e) {
+            fail((UniversalIOException) e.getCause().getCause());
+        } finally {
+            listing.close();
+            /*
+             * Waits for the batches in progress.
+             */
+            permits.acquire(this.parallelism);
+            permits.release(this.parallelism);
+        }
+
+        if (isCancelled() || this.failure.get() != null) {
+            return;
+        }
+
+        for (Map.Entry<Integer, List<String>> depth : folders.descendingMap().entrySet()) {
+            for (String folder : depth.getValue()) {
+                if (isCancelled()) {
+                    break;
+                }
+
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        this.storage.removeFolder(folder);
+                        this.removedFolders.incrementAndGet();
+                    } catch (UniversalIOException e) {
+                        fail(e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+
+            permits.acquire(this.parallelism);
+            permits.release(this.parallelism);
+        }
+
+        if (!isCancelled() && this.failure.get() == null && !"".equals(this.path)) {
+            this.storage.removeFolder(this.path);
+            this.removedFolders.incrementAndGet();
+        }
+    }
+
+    /**
+     * This method removes a batch of files within the pool of this removal once a permit is available.
+     * 
+     * @param batch of paths.
+     * @param permits bound the batches in progress.
+     * @param executor is the pool of this removal.
+     */
+    private void removeFiles(final List<String> batch, final Semaphore permits, ExecutorService executor) throws InterruptedException {
+        permits.acquire();
+        executor.execute(() -> {
+            try {
+                UniversalBatchResult result = this.storage.removeFiles(batch);
+                for (UniversalBatchResult.Item item : result.getItems()) {
+                    if (item.isSuccessful()) {
+                        this.removedFiles.incrementAndGet();
+                    } else {
+                        fail(item.getError());
+                    }
+                }
+            } catch (Exception e) {
+                this.failures.addAndGet(batch.size());
+                this.failure.compareAndSet(null, new UniversalIOException(e.getMessage()));
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    private void fail(UniversalIOException error) {
+        this.failures.incrementAndGet();
+        this.failure.compareAndSet(null, error);
+    }
+}
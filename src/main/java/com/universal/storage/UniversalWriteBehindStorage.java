@@ -0,0 +1,913 @@
+package com.universal.storage;
+
+import com.universal.error.UniversalIOException;
+import com.universal.util.BoundedInputStream;
+import com.universal.util.ExecutorUtil;
+import com.universal.util.FileUtil;
+import com.universal.util.PathValidator;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONObject;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class returns from the store operations after persisting the file within the write behind folder 
+ * and appending the operation to an append-only journal, a background thread uploads the files to the 
+ * decorated storage in batches and retries the failed uploads.  The pending entries of the journal are 
+ * replayed when a new instance is created with the same write behind folder, i.e: after a crash.
+ * 
+ * Every instance writes its own journal and holds a lock file over it, a new instance only replays the 
+ * journals whose lock could be acquired, so the journals of the running instances are never replayed twice.
+ * 
+ * The onFileStored event is triggered by the decorated storage, so it's triggered when the upload finishes.  
+ * The pending files are served locally by the retrieve operations and a remove operation cancels the 
+ * pending uploads of the removed paths.
+ * 
+ * An upload that failed more than the max retries is abandoned (see getAbandonedUploads), its file is still 
+ * served locally and the upload keeps being retried with the max delay.  The journal is rewritten with the 
+ * entries that aren't done when every entry is done and after every thousand done records, so it doesn't 
+ * grow while there are pending uploads.
+ */
+public class UniversalWriteBehindStorage extends UniversalStorageDecorator {
+    private static final int COMPACT_RECORDS = 1000;
+    private static final long MAX_RETRY_DELAY = 15 * 60 * 1000;
+
+    private final File folder;
+    private final File journalFile;
+    private FileLock journalLock;
+    private final int batchSize;
+    private final int maxRetries;
+    private final long retryDelay;
+
+    private final DelayQueue<Entry> queue = new DelayQueue<Entry>();
+    private final Map<String, Entry> pending = new ConcurrentHashMap<String, Entry>();
+    private final Map<String, Entry> live = new LinkedHashMap<String, Entry>();
+    private final List<Entry> abandoned = new ArrayList<Entry>();
+    private int doneRecords;
+    private final Object lock = new Object();
+    private final Thread uploader;
+    private FileChannel journal;
+    private volatile boolean closed;
+
+    /**
+     * This constructor instantiates a new write behind storage and replays the pending entries of the journal.
+     * 
+     * @param delegate is the decorated storage.
+     */
+    public UniversalWriteBehindStorage(UniversalStorage delegate) throws IOException {
+        this(delegate, new File(delegate.settings.getWriteBehindFolder()), delegate.settings.getWriteBehindBatchSize(), 
+                    delegate.settings.getWriteBehindMaxRetries(), delegate.settings.getWriteBehindRetryDelay());
+    }
+
+    /**
+     * This constructor instantiates a new write behind storage with its own folder and retries, i.e: the 
+     * cold tier of the tiered provider with the write back policy.
+     * 
+     * @param delegate is the decorated storage.
+     * @param folder where the journal and the pending files are kept.
+     * @param batchSize is the max amount of files uploaded per batch.
+     * @param maxRetries is the amount of retries before an upload is abandoned.
+     * @param retryDelay is the delay of the first retry in milliseconds.
+     */
+    UniversalWriteBehindStorage(UniversalStorage delegate, File folder, int batchSize, int maxRetries, long retryDelay) throws IOException {
+        super(delegate);
+        this.batchSize = batchSize;
+        this.maxRetries = maxRetries;
+        this.retryDelay = retryDelay;
+        this.folder = folder;
+        this.journalFile = new File(this.folder, "journal-" + UUID.randomUUID().toString() + ".log");
+
+        replay();
+
+        this.uploader = ExecutorUtil.newThreadFactory("universal-storage-write-behind").newThread(() -> run());
+        this.uploader.start();
+    }
+
+    void storeFile(File file, String path) throws UniversalIOException {
+        if (file.isDirectory()) {
+            UniversalIOException error = new UniversalIOException(file.getName() + " is a folder.  You should call the createFolder method.");
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+
+        Entry entry = newEntry(file.getName(), path);
+        try {
+            FileUtil.copy(file, entry.file);
+            force(entry.file);
+        } catch (IOException e) {
+            discard(entry);
+            throw toUniversalIOException(e);
+        }
+
+        enqueue(entry);
+    }
+
+    void storeFile(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), null);
+    }
+
+    void storeFile(String path, String targetPath) throws UniversalIOException {
+        PathValidator.validatePath(path);
+        storeFile(new File(path), targetPath);
+    }
+
+    public void storeStream(InputStream stream, String path, long contentLengthHint) throws UniversalIOException {
+        UniversalOutputStream out = openForWrite(path);
+        try {
+            out.transferFrom(stream);
+            out.close();
+        } catch (IOException e) {
+            try {out.abort();}catch(IOException ignore) {}
+            throw toUniversalIOException(e);
+        }
+    }
+
+    /**
+     * This method opens a stream that writes the new file within the tmp folder, the upload is queued 
+     * when the stream is closed.
+     * 
+     * @param path is the path for this new file within the root, including its name.
+     */
+    public UniversalOutputStream openForWrite(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        final Entry entry = newEntry(FileUtil.getName(path), FileUtil.getParent(path));
+        try {
+            return new UniversalOutputStream(new FileOutputStream(entry.file), () -> {
+                try {
+                    force(entry.file);
+                } catch (IOException e) {
+                    discard(entry);
+                    throw toUniversalIOException(e);
+                }
+
+                enqueue(entry);
+            }, () -> discard(entry));
+        } catch (IOException e) {
+            discard(entry);
+            throw toUniversalIOException(e);
+        }
+    }
+
+    public UniversalBatchResult storeFiles(Map<String, String> files) {
+        List<UniversalBatchResult.Item> items = new ArrayList<UniversalBatchResult.Item>(files.size());
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            items.add(new UniversalBatchResult.Item(entry.getKey(), entry.getValue()));
+        }
+
+        return executeBatch(items, item -> storeFile(item.getSource(), item.getPath()));
+    }
+
+    void removeFile(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        if (cancel(normalize(path))) {
+            try {super.removeFile(path);}catch(UniversalIOException ignore) {}
+            return;
+        }
+
+        super.removeFile(path);
+    }
+
+    public UniversalBatchResult removeFiles(Collection<String> paths) {
+        List<UniversalBatchResult.Item> items = new ArrayList<UniversalBatchResult.Item>(paths.size());
+        for (String path : paths) {
+            items.add(new UniversalBatchResult.Item(null, path));
+        }
+
+        return executeBatch(items, item -> removeFile(item.getPath()));
+    }
+
+    void removeFolder(String path) throws UniversalIOException {
+        PathValidator.validatePath(path);
+
+        String prefix = normalize(path);
+        prefix = prefix.isEmpty() ? prefix : prefix + "/";
+        for (String key : new ArrayList<String>(this.pending.keySet())) {
+            if (key.startsWith(prefix)) {
+                cancel(key);
+            }
+        }
+
+        super.removeFolder(path);
+    }
+
+    void wipe() throws UniversalIOException {
+        for (String key : new ArrayList<String>(this.pending.keySet())) {
+            cancel(key);
+        }
+
+        super.wipe();
+    }
+
+    /**
+     * This method uploads the pending files before cleaning the tmp folder, the journal and the files 
+     * waiting to be uploaded are kept within the write behind folder.
+     */
+    void clean() throws UniversalIOException {
+        flush();
+        super.clean();
+    }
+
+    /**
+     * This method stops the uploader after the current batch, the pending files will be uploaded by the 
+     * next instance with the same tmp folder.
+     */
+    void close() {
+        this.closed = true;
+        this.uploader.interrupt();
+        try {this.uploader.join();}catch(InterruptedException ignore) {}
+
+        synchronized (this.lock) {
+            closeJournal();
+
+            /*
+             * An empty journal is removed, otherwise it will be replayed by the next instance.
+             */
+            boolean empty = this.live.isEmpty();
+            if (empty) {
+                this.journalFile.delete();
+            }
+
+            release(this.journalLock);
+            if (empty) {
+                lockFileOf(this.journalFile).delete();
+            }
+        }
+
+        super.close();
+    }
+
+    File retrieveFile(String path) throws UniversalIOException {
+        Entry entry = lookup(path);
+        if (entry == null) {
+            return super.retrieveFile(path);
+        }
+
+        File file = new File(this.settings.getTmp() + UUID.randomUUID().toString() + File.separator + entry.name);
+        try {
+            file.getParentFile().mkdirs();
+            FileUtil.copy(entry.file, file);
+        } catch (IOException e) {
+            file.delete();
+            file.getParentFile().delete();
+            return super.retrieveFile(path);
+        }
+
+        return file;
+    }
+
+    InputStream retrieveFileAsStream(String path) throws UniversalIOException {
+        Entry entry = lookup(path);
+        if (entry != null) {
+            try {
+                return new FileInputStream(entry.file);
+            } catch (IOException ignore) {}
+        }
+
+        return super.retrieveFileAsStream(path);
+    }
+
+    public SeekableByteChannel retrieveFileAsChannel(String path) throws UniversalIOException {
+        Entry entry = lookup(path);
+        if (entry != null) {
+            try {
+                return FileChannel.open(entry.file.toPath(), StandardOpenOption.READ);
+            } catch (IOException ignore) {}
+        }
+
+        return super.retrieveFileAsChannel(path);
+    }
+
+    public InputStream retrieveRange(String path, long offset, long length) throws UniversalIOException {
+        Entry entry = lookup(path);
+        if (entry != null && offset >= 0) {
+            try {
+                FileChannel channel = FileChannel.open(entry.file.toPath(), StandardOpenOption.READ);
+                channel.position(offset);
+                return new BoundedInputStream(Channels.newInputStream(channel), length);
+            } catch (IOException ignore) {}
+        }
+
+        return super.retrieveRange(path, offset, length);
+    }
+
+    public ByteBuffer retrieveRangeAsBuffer(String path, long offset, int length) throws UniversalIOException {
+        if (lookup(path) == null) {
+            return super.retrieveRangeAsBuffer(path, offset, length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        InputStream stream = retrieveRange(path, offset, length);
+        try {
+            int read;
+            while (buffer.hasRemaining() 
+                        && (read = stream.read(buffer.array(), buffer.position(), buffer.remaining())) != -1) {
+                buffer.position(buffer.position() + read);
+            }
+        } catch (IOException e) {
+            throw toUniversalIOException(e);
+        } finally {
+            try {stream.close();}catch(IOException ignore) {}
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * This method returns the attributes of a pending file from the tmp folder, the rest of the files 
+     * are requested to the decorated storage.
+     * 
+     * @param path of the file.
+     */
+    protected UniversalFileStat fetchStat(String path) throws UniversalIOException {
+        Entry entry = lookup(path);
+        if (entry != null && entry.file.isFile()) {
+            return new UniversalFileStat(entry.name, entry.file.length(), entry.file.lastModified(), null, null, entry.key);
+        }
+
+        return super.fetchStat(path);
+    }
+
+    /**
+     * Returns the amount of files waiting to be uploaded.
+     */
+    public int getPendingUploads() {
+        return this.pending.size();
+    }
+
+    /**
+     * Returns the paths of the files whose upload failed more than the max retries, they are still served 
+     * locally and their uploads are retried with the max delay.
+     */
+    public List<String> getAbandonedUploads() {
+        synchronized (this.lock) {
+            List<String> paths = new ArrayList<String>(this.abandoned.size());
+            for (Entry entry : this.abandoned) {
+                paths.add(entry.key);
+            }
+
+            return paths;
+        }
+    }
+
+    /**
+     * This method retries the abandoned uploads right away, i.e: after the connectivity was restored.
+     */
+    public void retryAbandoned() {
+        synchronized (this.lock) {
+            for (Entry entry : this.abandoned) {
+                if (this.queue.remove(entry)) {
+                    entry.notBefore = 0;
+                    this.queue.add(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method waits until every pending file was either uploaded or abandoned after its retries.
+     */
+    public void flush() {
+        synchronized (this.lock) {
+            while (this.pending.size() > this.abandoned.size() && !this.closed) {
+                try {
+                    this.lock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method creates a new entry with an empty file within the write behind folder.
+     * 
+     * @param name of the file.
+     * @param path of the folder within the storage.
+     */
+    private Entry newEntry(String name, String path) throws UniversalIOException {
+        String id = UUID.randomUUID().toString();
+        File file = new File(this.folder, id + File.separator + name);
+        if (!file.getParentFile().mkdirs()) {
+            UniversalIOException error = new UniversalIOException("The folder '" + file.getParent() + "' couldn't be created.");
+            triggerOnErrorListeners(error);
+            throw error;
+        }
+
+        return new Entry(id, file, name, path == null || "".equals(path) ? null : path);
+    }
+
+    /**
+     * This method appends the passed entry to the journal and queues it to be uploaded, the previous 
+     * pending entry of the same path is superseded.
+     * 
+     * @param entry in context.
+     */
+    private void enqueue(Entry entry) throws UniversalIOException {
+        synchronized (this.lock) {
+            try {
+                append(storeRecord(entry));
+            } catch (IOException e) {
+                discard(entry);
+                throw toUniversalIOException(e);
+            }
+
+            this.live.put(entry.id, entry);
+            Entry previous = this.pending.put(entry.key, entry);
+            if (previous != null) {
+                supersede(previous);
+            }
+        }
+
+        invalidateMetadata(entry.key);
+        this.queue.add(entry);
+    }
+
+    /**
+     * This method cancels the pending upload of the passed path and waits if it's being uploaded.
+     * 
+     * @param key is the normalized path of the file.
+     * @returns true if there was a pending upload.
+     */
+    private boolean cancel(String key) {
+        synchronized (this.lock) {
+            Entry entry = this.pending.get(key);
+            if (entry == null) {
+                return false;
+            }
+
+            supersede(entry);
+            while (entry.uploading) {
+                try {
+                    this.lock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Returns the pending entry of the passed path, null if the path is not pending.
+     * 
+     * @param path in context.
+     */
+    private Entry lookup(String path) {
+        PathValidator.validatePath(path);
+
+        Entry entry = this.pending.get(normalize(path));
+        return entry == null || entry.superseded ? null : entry;
+    }
+
+    private void run() {
+        while (!this.closed) {
+            List<Entry> batch = new ArrayList<Entry>(this.batchSize);
+            try {
+                batch.add(this.queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+
+            this.queue.drainTo(batch, this.batchSize - 1);
+            upload(batch);
+        }
+    }
+
+    /**
+     * This method uploads a batch of entries through the storeFiles method of the decorated storage.
+     * 
+     * @param batch of entries.
+     */
+    private void upload(List<Entry> batch) {
+        Map<String, String> files = new LinkedHashMap<String, String>();
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+
+        synchronized (this.lock) {
+            for (Entry entry : batch) {
+                if (entry.superseded) {
+                    complete(entry);
+                } else {
+                    entry.uploading = true;
+                    files.put(entry.file.getPath(), entry.path);
+                    entries.put(entry.file.getPath(), entry);
+                }
+            }
+        }
+
+        if (files.isEmpty()) {
+            return;
+        }
+
+        UniversalBatchResult result = this.delegate.storeFiles(files);
+
+        synchronized (this.lock) {
+            for (UniversalBatchResult.Item item : result.getItems()) {
+                Entry entry = entries.get(item.getSource());
+                entry.uploading = false;
+                if (item.isSuccessful() || entry.superseded) {
+                    complete(entry);
+                } else {
+                    retry(entry);
+                }
+            }
+
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * This method marks the passed entry as superseded, an abandoned entry is removed from the queue so 
+     * it's completed by the next batch instead of waiting for its delay.  The caller must hold the lock.
+     * 
+     * @param entry in context.
+     */
+    private void supersede(Entry entry) {
+        entry.superseded = true;
+        if (this.abandoned.remove(entry) && this.queue.remove(entry)) {
+            entry.notBefore = 0;
+            this.queue.add(entry);
+        }
+    }
+
+    /**
+     * This method records the passed entry as done within the journal and removes its file.
+     * 
+     * @param entry in context.
+     */
+    private void complete(Entry entry) {
+        JSONObject record = new JSONObject();
+        record.put("op", "done");
+        record.put("id", entry.id);
+
+        try {
+            append(record);
+            this.doneRecords++;
+        } catch (Exception ignore) {}
+
+        discard(entry);
+        this.pending.remove(entry.key, entry);
+        this.live.remove(entry.id);
+        this.abandoned.remove(entry);
+        compact();
+    }
+
+    /**
+     * This method queues the passed entry again after a delay that doubles per attempt until the max delay.  
+     * When the retries are exhausted the entry is abandoned, it's still served locally and retried with the 
+     * max delay, and it's kept within the journal so it will be replayed by the next instance.
+     * 
+     * @param entry in context.
+     */
+    private void retry(Entry entry) {
+        entry.attempts++;
+        if (entry.attempts > this.maxRetries && !this.abandoned.contains(entry)) {
+            this.abandoned.add(entry);
+        }
+
+        long delay = Math.min(this.retryDelay << Math.min(entry.attempts - 1, 20), Math.max(this.retryDelay, MAX_RETRY_DELAY));
+        entry.notBefore = System.currentTimeMillis() + delay;
+        this.queue.add(entry);
+    }
+
+    /**
+     * This method rewrites the journal with the entries that aren't done, when every entry is done or 
+     * after every thousand done records.  The caller must hold the lock.
+     */
+    private void compact() {
+        if (this.journal == null || (!this.live.isEmpty() && this.doneRecords < COMPACT_RECORDS)) {
+            return;
+        }
+
+        try {
+            rewrite(this.live.values());
+            this.doneRecords = 0;
+        } catch (Exception ignore) {}
+    }
+
+    /**
+     * This method writes the passed entries within a new file that replaces the journal, so a crash while 
+     * rewriting leaves either the previous journal or the new one.
+     * 
+     * @param entries to be written.
+     */
+    private void rewrite(Collection<Entry> entries) throws IOException {
+        File rewritten = new File(this.folder, this.journalFile.getName() + ".tmp");
+        FileChannel channel = FileChannel.open(rewritten.toPath(), StandardOpenOption.CREATE, 
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            for (Entry entry : entries) {
+                write(channel, storeRecord(entry));
+            }
+
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+
+        closeJournal();
+        try {
+            Files.move(rewritten.toPath(), this.journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, 
+                        StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            this.journal = openJournal();
+        }
+    }
+
+    private JSONObject storeRecord(Entry entry) {
+        JSONObject record = new JSONObject();
+        record.put("op", "store");
+        record.put("id", entry.id);
+        record.put("file", entry.file.getAbsolutePath());
+        record.put("path", entry.path == null ? "" : entry.path);
+        return record;
+    }
+
+    /**
+     * This method reads the journals left by the previous instances and queues the entries that weren't 
+     * done, then those entries are written within the journal of this instance and the previous journals 
+     * are removed.  The journals locked by a running instance are skipped.
+     */
+    private void replay() throws IOException {
+        this.folder.mkdirs();
+
+        this.journalLock = lock(this.journalFile);
+        if (this.journalLock == null) {
+            throw new IOException("The write behind journal '" + this.journalFile + "' is locked.");
+        }
+
+        File[] files = this.folder.listFiles();
+        if (files == null) {
+            throw new IOException("The folder '" + this.folder + "' couldn't be read.");
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        List<File> journals = new ArrayList<File>();
+        List<FileLock> locks = new ArrayList<FileLock>();
+        try {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.startsWith("journal-") || !name.endsWith(".log") || file.equals(this.journalFile)) {
+                    continue;
+                }
+
+                FileLock lock = lock(file);
+                if (lock == null) {
+                    continue;
+                }
+
+                locks.add(lock);
+                journals.add(file);
+                if (file.exists()) {
+                    read(file, entries);
+                }
+            }
+
+            List<Entry> replayed = new ArrayList<Entry>();
+            for (Entry entry : entries.values()) {
+                if (entry.file.exists()) {
+                    replayed.add(entry);
+                }
+            }
+
+            rewrite(replayed);
+
+            for (Entry entry : replayed) {
+                this.live.put(entry.id, entry);
+                Entry previous = this.pending.put(entry.key, entry);
+                if (previous != null) {
+                    previous.superseded = true;
+                }
+
+                this.queue.add(entry);
+            }
+
+            for (File journal : journals) {
+                journal.delete();
+                new File(journal.getPath() + ".tmp").delete();
+            }
+        } finally {
+            for (FileLock lock : locks) {
+                release(lock);
+            }
+
+            for (File journal : journals) {
+                lockFileOf(journal).delete();
+            }
+        }
+    }
+
+    /**
+     * This method reads the records of the passed journal, the store records are put within the passed 
+     * map and the done records remove their entries.
+     * 
+     * @param journal in context.
+     * @param entries by id.
+     */
+    private static void read(File journal, Map<String, Entry> entries) throws IOException {
+        for (String line : Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8)) {
+            JSONObject record;
+            try {
+                record = new JSONObject(line);
+            } catch (Exception e) {
+                /*
+                 * The last line could be incomplete if the process crashed while appending it.
+                 */
+                continue;
+            }
+
+            String id = record.getString("id");
+            if ("store".equals(record.getString("op"))) {
+                File file = new File(record.getString("file"));
+                String path = record.optString("path", "");
+                entries.put(id, new Entry(id, file, file.getName(), "".equals(path) ? null : path));
+            } else {
+                entries.remove(id);
+            }
+        }
+    }
+
+    /**
+     * This method tries to lock the lock file of the passed journal.
+     * 
+     * @param journal in context.
+     * @returns the lock or null if the journal is locked by another instance.
+     */
+    private static FileLock lock(File journal) throws IOException {
+        FileChannel channel = FileChannel.open(lockFileOf(journal).toPath(), StandardOpenOption.CREATE, 
+                    StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return lock;
+            }
+        } catch (OverlappingFileLockException ignore) {}
+
+        channel.close();
+        return null;
+    }
+
+    private static void release(FileLock lock) {
+        if (lock != null) {
+            try {lock.channel().close();}catch(Exception ignore) {}
+        }
+    }
+
+    private static File lockFileOf(File journal) {
+        String name = journal.getName();
+        return new File(journal.getParentFile(), name.substring(0, name.length() - ".log".length()) + ".lock");
+    }
+
+    private FileChannel openJournal() throws IOException {
+        return FileChannel.open(this.journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+                    StandardOpenOption.APPEND);
+    }
+
+    private void closeJournal() {
+        if (this.journal != null) {
+            try {this.journal.close();}catch(Exception ignore) {}
+            this.journal = null;
+        }
+    }
+
+    /**
+     * This method appends a record to the journal and forces it to the disk.
+     * 
+     * @param record in context.
+     */
+    private void append(JSONObject record) throws IOException {
+        if (this.journal == null) {
+            throw new IOException("The write behind journal is closed.");
+        }
+
+        write(this.journal, record);
+        this.journal.force(false);
+    }
+
+    private static void write(FileChannel channel, JSONObject record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((record.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void force(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void discard(Entry entry) {
+        entry.file.delete();
+        entry.file.getParentFile().delete();
+    }
+
+    private static String normalize(String path) {
+        String normalized = path.replace(File.separatorChar, '/');
+        while (normalized.startsWith("/")) {
+            normalized = normalized.substring(1);
+        }
+
+        while (normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+
+        return normalized;
+    }
+
+    /**
+     * This class represents a file waiting to be uploaded.
+     */
+    private static class Entry implements Delayed {
+        private static final AtomicLong SEQUENCE = new AtomicLong();
+
+        private final long sequence = SEQUENCE.incrementAndGet();
+        private final String id;
+        private final File file;
+        private final String name;
+        private final String path;
+        private final String key;
+        private volatile long notBefore;
+        private volatile int attempts;
+        private volatile boolean superseded;
+        private volatile boolean uploading;
+
+        private Entry(String id, File file, String name, String path) {
+            this.id = id;
+            this.file = file;
+            this.name = name;
+            this.path = path;
+            this.key = normalize(FileUtil.join(path, name));
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(this.notBefore - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            Entry entry = (Entry) other;
+            int result = Long.compare(this.notBefore, entry.notBefore);
+            return result == 0 ? Long.compare(this.sequence, entry.sequence) : result;
+        }
+    }
+}
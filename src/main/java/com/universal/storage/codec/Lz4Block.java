@@ -0,0 +1,237 @@
+package com.universal.storage.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class compresses and decompresses the blocks of the lz4 block format in pure Java.  A block is a
+ * sequence of tokens, every token is followed by its literals and by the offset and the length of a
+ * match within the previous 64 KB of the block.  The compressor is the greedy single pass of lz4 (a hash
+ * table of the last position of every 4 bytes sequence), so it trades ratio for speed.  The decompressor
+ * checks every length and offset, a corrupted block throws an IOException instead of reading or writing
+ * out of the bounds.
+ */
+final class Lz4Block {
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int RUN_MASK = 15;
+    private static final int SKIP_TRIGGER = 6;
+
+    /**
+     * The amount of entries of the hash tables.
+     */
+    static final int HASH_SIZE = 1 << 14;
+
+    private Lz4Block() {
+    }
+
+    /**
+     * This method returns the max size of the compressed block of the passed amount of bytes.
+     * 
+     * @param length is the amount of bytes to compress.
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * This method compresses the passed bytes.
+     * 
+     * @param src contains the bytes to compress.
+     * @param length is the amount of bytes to compress from the beginning of src.
+     * @param dst receives the compressed block, it must have at least maxCompressedLength bytes.
+     * @param table is the hash table, an array of HASH_SIZE entries whose content is overwritten.
+     * 
+     * @return the size of the compressed block.
+     */
+    static int compress(byte[] src, int length, byte[] dst, int[] table) {
+        Arrays.fill(table, -1);
+
+        int anchor = 0;
+        int position = 0;
+        int target = 0;
+        int limit = length - MF_LIMIT;
+        int matchLimit = length - LAST_LITERALS;
+
+        while (position < limit) {
+            int sequence = readInt(src, position);
+            int hash = hash(sequence);
+            int reference = table[hash];
+            table[hash] = position;
+
+            if (reference < 0 || position - reference > MAX_DISTANCE || readInt(src, reference) != sequence) {
+                position += 1 + ((position - anchor) >>> SKIP_TRIGGER);
+                continue;
+            }
+
+            while (position > anchor && reference > 0 && src[position - 1] == src[reference - 1]) {
+                position--;
+                reference--;
+            }
+
+            int matchLength = MIN_MATCH;
+            while (position + matchLength < matchLimit && src[position + matchLength] == src[reference + matchLength]) {
+                matchLength++;
+            }
+
+            target = writeLiterals(src, anchor, position - anchor, matchLength - MIN_MATCH, dst, target);
+
+            int offset = position - reference;
+            dst[target++] = (byte) offset;
+            dst[target++] = (byte) (offset >>> 8);
+            target = writeLength(matchLength - MIN_MATCH, dst, target);
+
+            position += matchLength;
+            anchor = position;
+        }
+
+        return writeLiterals(src, anchor, length - anchor, 0, dst, target);
+    }
+
+    /**
+     * This method decompresses the passed block.
+     * 
+     * @param src contains the compressed block.
+     * @param length is the size of the compressed block.
+     * @param dst receives the decompressed bytes.
+     * @param expected is the amount of decompressed bytes of the block.
+     * 
+     * @throws IOException if the block is corrupted or it doesn't decompress to the expected amount of bytes.
+     */
+    static void decompress(byte[] src, int length, byte[] dst, int expected) throws IOException {
+        int position = 0;
+        int target = 0;
+
+        while (position < length) {
+            int token = src[position++] & 0xFF;
+
+            int literals = token >>> 4;
+            if (literals == RUN_MASK) {
+                int value;
+                do {
+                    if (position >= length) {
+                        throw new IOException("Invalid lz4 block.");
+                    }
+
+                    value = src[position++] & 0xFF;
+                    literals += value;
+                } while (value == 255);
+            }
+
+            if (literals > length - position || literals > expected - target) {
+                throw new IOException("Invalid lz4 block.");
+            }
+
+            System.arraycopy(src, position, dst, target, literals);
+            position += literals;
+            target += literals;
+
+            if (position == length) {
+                break;
+            }
+
+            if (length - position < 2) {
+                throw new IOException("Invalid lz4 block.");
+            }
+
+            int offset = (src[position] & 0xFF) | (src[position + 1] & 0xFF) << 8;
+            position += 2;
+            if (offset == 0 || offset > target) {
+                throw new IOException("Invalid lz4 block.");
+            }
+
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int value;
+                do {
+                    if (position >= length) {
+                        throw new IOException("Invalid lz4 block.");
+                    }
+
+                    value = src[position++] & 0xFF;
+                    matchLength += value;
+                } while (value == 255);
+            }
+
+            matchLength += MIN_MATCH;
+            if (matchLength > expected - target) {
+                throw new IOException("Invalid lz4 block.");
+            }
+
+            // An overlapping match repeats the last offset bytes, the copied chunks double until the end.
+            int reference = target - offset;
+            while (matchLength > 0) {
+                int chunk = Math.min(target - reference, matchLength);
+                System.arraycopy(dst, reference, dst, target, chunk);
+                target += chunk;
+                matchLength -= chunk;
+            }
+        }
+
+        if (target != expected) {
+            throw new IOException("Invalid lz4 block.");
+        }
+    }
+
+    /**
+     * This method writes a token with its literals, the match length of the token is the passed one.
+     */
+    private static int writeLiterals(byte[] src, int offset, int literals, int matchLength, byte[] dst, int target) {
+        dst[target++] = (byte) (Math.min(literals, RUN_MASK) << 4 | Math.min(matchLength, RUN_MASK));
+        target = writeLength(literals, dst, target);
+
+        System.arraycopy(src, offset, dst, target, literals);
+        return target + literals;
+    }
+
+    /**
+     * This method writes the bytes of a length that doesn't fit within its token.
+     */
+    private static int writeLength(int length, byte[] dst, int target) {
+        if (length < RUN_MASK) {
+            return target;
+        }
+
+        length -= RUN_MASK;
+        while (length >= 255) {
+            dst[target++] = (byte) 255;
+            length -= 255;
+        }
+
+        dst[target++] = (byte) length;
+        return target;
+    }
+
+    private static int readInt(byte[] src, int offset) {
+        return (src[offset] & 0xFF) | (src[offset + 1] & 0xFF) << 8 | (src[offset + 2] & 0xFF) << 16 | src[offset + 3] << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> 18;
+    }
+}
@@ -0,0 +1,55 @@
+package com.universal.storage.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This interface represents a compression codec used by the compression storage.  The name of the codec 
+ * is written within the header of every compressed file, so the reads pick the codec by its name.
+ */
+public interface UniversalCodec {
+    /**
+     * Returns the name of this codec, i.e: gzip.
+     */
+    String getName();
+
+    /**
+     * This method wraps the passed stream, the bytes written within the returned stream are compressed.
+     * Closing the returned stream closes the passed stream.
+     * 
+     * @param out is the underlying stream.
+     */
+    OutputStream compress(OutputStream out) throws IOException;
+
+    /**
+     * This method wraps the passed stream, the bytes read from the returned stream are decompressed.
+     * Closing the returned stream closes the passed stream.
+     * 
+     * @param in is the underlying stream.
+     */
+    InputStream decompress(InputStream in) throws IOException;
+}
@@ -0,0 +1,452 @@
+package com.universal.storage.codec;
+
+import com.universal.util.BufferPool;
+import com.universal.util.FileUtil;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class keeps the available codecs by name.  The available codecs are:
+ * 
+ * 1. gzip: the gzip format.
+ * 2. deflate: the zlib format with the default compression level.
+ * 3. fast: the lz4 block format in pure Java, the bytes are split in blocks of 64 KB and every block is 
+ *    compressed on its own (a block that doesn't shrink is stored as is).  The files written before by the 
+ *    zlib fast codec are still read, the lz4 streams start with a marker that can't start a zlib stream.
+ * 
+ * Other codecs (i.e: zstd through its library) can be registered through the register method.  
+ * The streams of the built-in codecs take their buffers from the heap buffer pool and return them on close.
+ */
+public class UniversalCodecs {
+    private static final Map<String, UniversalCodec> CODECS = new ConcurrentHashMap<String, UniversalCodec>();
+    static {
+        register(new GzipCodec());
+        register(new DeflateCodec("deflate", Deflater.DEFAULT_COMPRESSION));
+        register(new FastCodec());
+    }
+
+    /**
+     * This method registers a codec, a codec with the same name is replaced.
+     * 
+     * @param codec to be registered.
+     */
+    public static void register(UniversalCodec codec) {
+        CODECS.put(codec.getName(), codec);
+    }
+
+    /**
+     * This method returns the codec of the passed name.
+     * 
+     * @param name of the codec.
+     * @throws IllegalArgumentException if the codec is not registered.
+     */
+    public static UniversalCodec get(String name) {
+        UniversalCodec codec = CODECS.get(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("The codec " + name + " is not registered.");
+        }
+
+        return codec;
+    }
+
+    /**
+     * This class represents the gzip codec.
+     */
+    private static class GzipCodec implements UniversalCodec {
+        public String getName() {
+            return "gzip";
+        }
+
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new PooledGzipOutputStream(out);
+        }
+
+        public InputStream decompress(InputStream in) throws IOException {
+            return new PooledGzipInputStream(in);
+        }
+    }
+
+    /**
+     * This class represents the zlib codec with a specific compression level, the native memory 
+     * of the deflaters and inflaters is released when the streams are closed.
+     */
+    private static class DeflateCodec implements UniversalCodec {
+        private final String name;
+        private final int level;
+
+        private DeflateCodec(String name, int level) {
+            this.name = name;
+            this.level = level;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new PooledDeflaterOutputStream(out, new Deflater(this.level));
+        }
+
+        public InputStream decompress(InputStream in) throws IOException {
+            return new PooledInflaterInputStream(in, new Inflater());
+        }
+    }
+
+    /**
+     * This class represents the lz4 codec.  The stream starts with a marker followed by the blocks, every 
+     * block starts with its decompressed size and its compressed size (the high bit indicates a stored 
+     * block) and the stream ends with a zero size.  The streams without the marker were written by the 
+     * former zlib fast codec.
+     */
+    private static class FastCodec implements UniversalCodec {
+        private static final byte[] MARKER = {'L', 'Z', '4', 1};
+
+        public String getName() {
+            return "fast";
+        }
+
+        public OutputStream compress(OutputStream out) throws IOException {
+            out.write(MARKER);
+            return new Lz4OutputStream(out);
+        }
+
+        public InputStream decompress(InputStream in) throws IOException {
+            PushbackInputStream pushback = new PushbackInputStream(in, 1);
+            int first = pushback.read();
+            if (first != MARKER[0]) {
+                if (first != -1) {
+                    pushback.unread(first);
+                }
+
+                return new PooledInflaterInputStream(pushback, new Inflater());
+            }
+
+            byte[] marker = new byte[MARKER.length];
+            marker[0] = (byte) first;
+            new DataInputStream(pushback).readFully(marker, 1, marker.length - 1);
+            if (!Arrays.equals(marker, MARKER)) {
+                throw new IOException("Invalid lz4 stream.");
+            }
+
+            return new Lz4InputStream(pushback);
+        }
+    }
+
+    private static final int LZ4_BLOCK_SIZE = 64 * 1024;
+    private static final int LZ4_STORED = 0x80000000;
+
+    /**
+     * This class represents a stream that compresses the written bytes in lz4 blocks.
+     */
+    private static class Lz4OutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final int[] table = new int[Lz4Block.HASH_SIZE];
+        private ByteBuffer block = BufferPool.heap().acquire(LZ4_BLOCK_SIZE);
+        private ByteBuffer compressed = BufferPool.heap().acquire(Lz4Block.maxCompressedLength(LZ4_BLOCK_SIZE));
+        private int count;
+
+        private Lz4OutputStream(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (this.block == null) {
+                throw new IOException("The stream is closed.");
+            }
+
+            while (len > 0) {
+                int length = Math.min(len, LZ4_BLOCK_SIZE - this.count);
+                System.arraycopy(b, off, this.block.array(), this.count, length);
+                this.count += length;
+                off += length;
+                len -= length;
+
+                if (this.count == LZ4_BLOCK_SIZE) {
+                    writeBlock();
+                }
+            }
+        }
+
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+
+        /**
+         * This method compresses the pending bytes, the block is stored as is if it doesn't shrink.
+         */
+        private void writeBlock() throws IOException {
+            if (this.count == 0) {
+                return;
+            }
+
+            byte[] target = this.compressed.array();
+            int length = Lz4Block.compress(this.block.array(), this.count, target, this.table);
+
+            this.out.writeInt(this.count);
+            if (length < this.count) {
+                this.out.writeInt(length);
+                this.out.write(target, 0, length);
+            } else {
+                this.out.writeInt(this.count | LZ4_STORED);
+                this.out.write(this.block.array(), 0, this.count);
+            }
+
+            this.count = 0;
+        }
+
+        public void close() throws IOException {
+            if (this.block == null) {
+                return;
+            }
+
+            try {
+                writeBlock();
+                this.out.writeInt(0);
+                this.out.close();
+            } finally {
+                BufferPool.heap().release(this.block);
+                BufferPool.heap().release(this.compressed);
+                this.block = null;
+                this.compressed = null;
+            }
+        }
+    }
+
+    /**
+     * This class represents a stream that decompresses the read lz4 blocks.
+     */
+    private static class Lz4InputStream extends InputStream {
+        private final DataInputStream in;
+        private ByteBuffer block = BufferPool.heap().acquire(LZ4_BLOCK_SIZE);
+        private ByteBuffer compressed = BufferPool.heap().acquire(Lz4Block.maxCompressedLength(LZ4_BLOCK_SIZE));
+        private int position;
+        private int count;
+        private boolean eof;
+
+        private Lz4InputStream(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (this.block == null) {
+                throw new IOException("The stream is closed.");
+            }
+
+            if (len == 0) {
+                return 0;
+            }
+
+            if (this.position == this.count && !readBlock()) {
+                return -1;
+            }
+
+            int length = Math.min(len, this.count - this.position);
+            System.arraycopy(this.block.array(), this.position, b, off, length);
+            this.position += length;
+
+            return length;
+        }
+
+        public int available() throws IOException {
+            return this.block == null ? 0 : this.count - this.position;
+        }
+
+        /**
+         * This method reads and decompresses the next block.
+         * 
+         * @return false if the stream ended.
+         */
+        private boolean readBlock() throws IOException {
+            if (this.eof) {
+                return false;
+            }
+
+            int size;
+            int length;
+            try {
+                size = this.in.readInt();
+                if (size == 0) {
+                    this.eof = true;
+                    return false;
+                }
+
+                length = this.in.readInt();
+            } catch (EOFException e) {
+                throw new IOException("Invalid lz4 stream, unexpected end of stream.");
+            }
+
+            boolean stored = (length & LZ4_STORED) != 0;
+            length &= ~LZ4_STORED;
+            if (size < 0 || size > LZ4_BLOCK_SIZE || (stored ? length != size : length > Lz4Block.maxCompressedLength(size))) {
+                throw new IOException("Invalid lz4 stream.");
+            }
+
+            if (stored) {
+                this.in.readFully(this.block.array(), 0, size);
+            } else {
+                this.in.readFully(this.compressed.array(), 0, length);
+                Lz4Block.decompress(this.compressed.array(), length, this.block.array(), size);
+            }
+
+            this.position = 0;
+            this.count = size;
+
+            return true;
+        }
+
+        public void close() throws IOException {
+            if (this.block == null) {
+                return;
+            }
+
+            try {
+                this.in.close();
+            } finally {
+                BufferPool.heap().release(this.block);
+                BufferPool.heap().release(this.compressed);
+                this.block = null;
+                this.compressed = null;
+            }
+        }
+    }
+
+    /*
+     * The streams below are created with the smallest buffer and then they take a buffer of the heap pool, 
+     * the pooled buffers are backed by an array starting at offset zero.  The buffer is returned to the 
+     * pool once the stream is closed.
+     */
+
+    /**
+     * This class represents a deflater stream with a pooled buffer, the deflater is ended on close.
+     */
+    private static class PooledDeflaterOutputStream extends DeflaterOutputStream {
+        private ByteBuffer pooled = BufferPool.heap().acquire(FileUtil.BUFFER_SIZE);
+
+        private PooledDeflaterOutputStream(OutputStream out, Deflater deflater) {
+            super(out, deflater, 1);
+            this.buf = this.pooled.array();
+        }
+
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                this.def.end();
+                BufferPool.heap().release(this.pooled);
+                this.pooled = null;
+            }
+        }
+    }
+
+    /**
+     * This class represents an inflater stream with a pooled buffer, the inflater is ended on close.
+     */
+    private static class PooledInflaterInputStream extends InflaterInputStream {
+        private ByteBuffer pooled = BufferPool.heap().acquire(FileUtil.BUFFER_SIZE);
+
+        private PooledInflaterInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater, 1);
+            this.buf = this.pooled.array();
+        }
+
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                this.inf.end();
+                BufferPool.heap().release(this.pooled);
+                this.pooled = null;
+            }
+        }
+    }
+
+    /**
+     * This class represents a gzip output stream with a pooled buffer.
+     */
+    private static class PooledGzipOutputStream extends GZIPOutputStream {
+        private ByteBuffer pooled = BufferPool.heap().acquire(FileUtil.BUFFER_SIZE);
+
+        private PooledGzipOutputStream(OutputStream out) throws IOException {
+            super(out, 1);
+            this.buf = this.pooled.array();
+        }
+
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                BufferPool.heap().release(this.pooled);
+                this.pooled = null;
+            }
+        }
+    }
+
+    /**
+     * This class represents a gzip input stream with a pooled buffer.
+     */
+    private static class PooledGzipInputStream extends GZIPInputStream {
+        private ByteBuffer pooled;
+
+        private PooledGzipInputStream(InputStream in) throws IOException {
+            super(in, 1);
+            this.pooled = BufferPool.heap().acquire(FileUtil.BUFFER_SIZE);
+            this.buf = this.pooled.array();
+        }
+
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                BufferPool.heap().release(this.pooled);
+                this.pooled = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.universal.storage.metrics;
+
+import com.universal.storage.UniversalProvider;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class is the default metrics implementation, the metrics are kept in memory and published 
+ * through the platform MBean server, one MBean per provider and operation:
+ * 
+ * com.universal.storage:type=Metrics,provider=FTP,operation=storeFile
+ * 
+ * The gauges are published through one MBean per provider:
+ * 
+ * com.universal.storage:type=Gauges,provider=FTP
+ */
+public class JmxUniversalMetrics implements UniversalMetrics {
+    private static final JmxUniversalMetrics DEFAULT = new JmxUniversalMetrics();
+
+    private final Map<UniversalProvider, ConcurrentHashMap<String, UniversalOperationStats>> stats = 
+                new EnumMap<UniversalProvider, ConcurrentHashMap<String, UniversalOperationStats>>(UniversalProvider.class);
+
+    private final ConcurrentHashMap<UniversalProvider, UniversalGauges> gauges = 
+                new ConcurrentHashMap<UniversalProvider, UniversalGauges>();
+
+    /**
+     * This constructor instantiates a new JmxUniversalMetrics.
+     */
+    public JmxUniversalMetrics() {
+        for (UniversalProvider provider : UniversalProvider.values()) {
+            this.stats.put(provider, new ConcurrentHashMap<String, UniversalOperationStats>());
+        }
+    }
+
+    /**
+     * Returns the shared instance used when the settings don't declare an implementation.
+     */
+    public static JmxUniversalMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    public void operationStarted(UniversalProvider provider, String operation) {
+        getStats(provider, operation).started();
+    }
+
+    public void operationFinished(UniversalProvider provider, String operation, long nanos, long bytes, Exception error) {
+        getStats(provider, operation).finished(nanos, bytes, error);
+    }
+
+    public void recordBytes(UniversalProvider provider, String operation, long bytes) {
+        getStats(provider, operation).transferred(bytes);
+    }
+
+    public void recordGauge(UniversalProvider provider, String name, long value) {
+        getGauges(provider).set(name, value);
+    }
+
+    /**
+     * This method returns the gauges of a provider, the gauges are created and published through JMX 
+     * the first time they are requested.
+     * 
+     * @param provider in context.
+     */
+    public UniversalGauges getGauges(UniversalProvider provider) {
+        UniversalGauges current = this.gauges.get(provider);
+        if (current == null) {
+            current = this.gauges.computeIfAbsent(provider, k -> register(new UniversalGauges(k), 
+                        "com.universal.storage:type=Gauges,provider=" + k));
+        }
+
+        return current;
+    }
+
+    /**
+     * This method returns the metrics of an operation, the metrics are created and published through JMX 
+     * the first time they are requested.
+     * 
+     * @param provider in context.
+     * @param operation in context.
+     */
+    public UniversalOperationStats getStats(UniversalProvider provider, String operation) {
+        ConcurrentHashMap<String, UniversalOperationStats> operations = this.stats.get(provider);
+        UniversalOperationStats current = operations.get(operation);
+        if (current == null) {
+            current = operations.computeIfAbsent(operation, k -> register(new UniversalOperationStats(provider, k), 
+                        "com.universal.storage:type=Metrics,provider=" + provider + ",operation=" + k));
+        }
+
+        return current;
+    }
+
+    private <T> T register(T bean, String objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(bean, name);
+            }
+        } catch (Exception ignore) {
+            /*
+             * The metrics are still available through getStats and getGauges.
+             */
+        }
+
+        return bean;
+    }
+}
@@ -0,0 +1,84 @@
+package com.universal.storage.metrics;
+
+import com.universal.storage.UniversalProvider;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class keeps the last reported value of every gauge of a provider.
+ */
+public class UniversalGauges implements UniversalGaugesMXBean {
+    private final UniversalProvider provider;
+    private final ConcurrentHashMap<String, AtomicLong> values = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * This constructor instantiates a new UniversalGauges.
+     * 
+     * @param provider in context.
+     */
+    public UniversalGauges(UniversalProvider provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * This method sets the current value of a gauge.
+     * 
+     * @param name of the gauge.
+     * @param value is the current value.
+     */
+    public void set(String name, long value) {
+        AtomicLong current = this.values.get(name);
+        if (current == null) {
+            current = this.values.computeIfAbsent(name, k -> new AtomicLong());
+        }
+
+        current.set(value);
+    }
+
+    /**
+     * Returns the last value of a gauge, zero if it was never reported.
+     * 
+     * @param name of the gauge.
+     */
+    public long get(String name) {
+        AtomicLong current = this.values.get(name);
+        return current == null ? 0 : current.get();
+    }
+
+    public String getProvider() {
+        return this.provider.name();
+    }
+
+    public Map<String, Long> getValues() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : this.values.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package com.universal.storage.metrics;
+
+import com.universal.storage.UniversalProvider;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This interface declares the methods used by the storages to report their metrics.  The implementations 
+ * are called within the storage's threads, so they must be thread safe and avoid blocking or allocating.
+ * 
+ * A custom implementation can be configured through the settings' metrics block, the implementation 
+ * needs a public constructor without parameters.  JmxUniversalMetrics is the default implementation.
+ */
+public interface UniversalMetrics {
+    /**
+     * This method will be called when an operation starts.
+     * 
+     * @param provider in context.
+     * @param operation is the name of the operation, i.e: storeFile.
+     */
+    void operationStarted(UniversalProvider provider, String operation);
+
+    /**
+     * This method will be called when an operation finishes, either successfully or with an error.
+     * 
+     * @param provider in context.
+     * @param operation is the name of the operation, i.e: storeFile.
+     * @param nanos is the latency of the operation.
+     * @param bytes is the amount of transferred bytes, zero if unknown.
+     * @param error is the thrown error, null if the operation was successful.
+     */
+    void operationFinished(UniversalProvider provider, String operation, long nanos, long bytes, Exception error);
+
+    /**
+     * This method will be called when bytes are transferred after the operation finished, i.e: when a 
+     * stream returned by retrieveFileAsStream is read.
+     * 
+     * @param provider in context.
+     * @param operation is the name of the operation, i.e: retrieveFileAsStream.
+     * @param bytes is the amount of transferred bytes.
+     */
+    void recordBytes(UniversalProvider provider, String operation, long bytes);
+
+    /**
+     * This method will be called to report the current value of a gauge, i.e: the bytes of the pooled 
+     * buffers in use (buffers.heap.in_use).  The default implementation ignores the gauges.
+     * 
+     * @param provider in context.
+     * @param name of the gauge.
+     * @param value is the current value.
+     */
+    default void recordGauge(UniversalProvider provider, String name, long value) {
+    }
+}
@@ -0,0 +1,144 @@
+package com.universal.storage.metrics;
+
+import com.universal.storage.UniversalProvider;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class keeps the metrics of an operation for a provider: latencies, transferred bytes, 
+ * in-flight operations and errors by type.
+ */
+public class UniversalOperationStats implements UniversalOperationMXBean {
+    private final UniversalProvider provider;
+    private final String operation;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<String, LongAdder>();
+
+    /**
+     * This constructor instantiates a new UniversalOperationStats.
+     * 
+     * @param provider in context.
+     * @param operation in context.
+     */
+    public UniversalOperationStats(UniversalProvider provider, String operation) {
+        this.provider = provider;
+        this.operation = operation;
+    }
+
+    void started() {
+        this.inFlight.incrementAndGet();
+    }
+
+    void finished(long nanos, long bytes, Exception error) {
+        this.inFlight.decrementAndGet();
+        this.latencies.record(nanos);
+        this.bytes.add(bytes);
+
+        if (error != null) {
+            String type = error.getClass().getName();
+            LongAdder counter = this.errors.get(type);
+            if (counter == null) {
+                counter = this.errors.computeIfAbsent(type, k -> new LongAdder());
+            }
+
+            counter.increment();
+        }
+    }
+
+    void transferred(long bytes) {
+        this.bytes.add(bytes);
+    }
+
+    /**
+     * Returns the histogram of latencies in nanoseconds.
+     */
+    public LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+
+    public String getProvider() {
+        return this.provider.name();
+    }
+
+    public String getOperation() {
+        return this.operation;
+    }
+
+    public long getCount() {
+        return this.latencies.getCount();
+    }
+
+    public double getMeanMicros() {
+        return this.latencies.getMean() / 1000;
+    }
+
+    public long getP50Micros() {
+        return this.latencies.getPercentile(50) / 1000;
+    }
+
+    public long getP90Micros() {
+        return this.latencies.getPercentile(90) / 1000;
+    }
+
+    public long getP99Micros() {
+        return this.latencies.getPercentile(99) / 1000;
+    }
+
+    public long getMaxMicros() {
+        return this.latencies.getMax() / 1000;
+    }
+
+    public long getBytes() {
+        return this.bytes.sum();
+    }
+
+    public long getInFlight() {
+        return this.inFlight.get();
+    }
+
+    public long getErrors() {
+        long total = 0;
+        for (LongAdder counter : this.errors.values()) {
+            total += counter.sum();
+        }
+
+        return total;
+    }
+
+    public Map<String, Long> getErrorsByType() {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : this.errors.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+
+        return result;
+    }
+}
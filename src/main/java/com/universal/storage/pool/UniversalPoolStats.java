@@ -0,0 +1,98 @@
+package com.universal.storage.pool;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class represents a snapshot of the state of a session pool.
+ */
+public class UniversalPoolStats {
+    private final int maxSize;
+    private final int active;
+    private final int idle;
+    private final long created;
+    private final long destroyed;
+    private final long borrowed;
+    private final long timeouts;
+
+    /**
+     * This constructor instantiates a new UniversalPoolStats.
+     * 
+     * @param maxSize is the max amount of sessions.
+     * @param active is the amount of borrowed sessions.
+     * @param idle is the amount of sessions waiting within the pool.
+     * @param created is the amount of sessions created since the pool was created.
+     * @param destroyed is the amount of sessions destroyed since the pool was created.
+     * @param borrowed is the amount of borrow calls that got a session.
+     * @param timeouts is the amount of borrow calls that timed out waiting for a session.
+     */
+    public UniversalPoolStats(int maxSize, int active, int idle, long created, long destroyed, long borrowed, long timeouts) {
+        this.maxSize = maxSize;
+        this.active = active;
+        this.idle = idle;
+        this.created = created;
+        this.destroyed = destroyed;
+        this.borrowed = borrowed;
+        this.timeouts = timeouts;
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    public int getActive() {
+        return this.active;
+    }
+
+    public int getIdle() {
+        return this.idle;
+    }
+
+    public long getCreated() {
+        return this.created;
+    }
+
+    public long getDestroyed() {
+        return this.destroyed;
+    }
+
+    public long getBorrowed() {
+        return this.borrowed;
+    }
+
+    public long getTimeouts() {
+        return this.timeouts;
+    }
+
+    public String toString() {
+        return new StringBuilder(100)
+                .append("max=").append(this.maxSize)
+                .append(", active=").append(this.active)
+                .append(", idle=").append(this.idle)
+                .append(", created=").append(this.created)
+                .append(", destroyed=").append(this.destroyed)
+                .append(", borrowed=").append(this.borrowed)
+                .append(", timeouts=").append(this.timeouts)
+                .toString();
+    }
+}
@@ -0,0 +1,53 @@
+package com.universal.storage.pool;
+
+import com.universal.error.UniversalIOException;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This interface declares the methods used by a session pool to manage the sessions of a provider, 
+ * i.e: ftp connections.
+ */
+public interface UniversalSessionFactory<S> {
+    /**
+     * This method creates a new session, i.e: opens a connection and logs in.
+     * 
+     * @throws UniversalIOException when the session couldn't be created.
+     */
+    S create() throws UniversalIOException;
+
+    /**
+     * This method validates if the passed session is still usable, i.e: sends a noop command.
+     * 
+     * @param session in context.
+     */
+    boolean validate(S session);
+
+    /**
+     * This method releases the resources of the passed session, i.e: logs out and closes the connection.
+     * 
+     * @param session in context.
+     */
+    void destroy(S session);
+}
@@ -0,0 +1,331 @@
+package com.universal.storage.pool;
+
+import com.universal.error.UniversalIOException;
+import com.universal.util.ExecutorUtil;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class keeps a bounded set of provider sessions (i.e: logged in ftp connections), so the providers 
+ * reuse them instead of opening a new session per operation.
+ * 
+ * The most recently released session is borrowed first, the sessions that were idle longer than the idle 
+ * timeout or lived longer than the max lifetime are destroyed instead of being borrowed.  The expired idle 
+ * sessions are also evicted periodically by a shared daemon thread, so a pool that isn't used anymore doesn't 
+ * keep its sessions open.
+ */
+public class UniversalSessionPool<S> {
+    private static final long MIN_EVICTION_INTERVAL = 1000;
+    private static ScheduledThreadPoolExecutor evictor;
+
+    private final UniversalSessionFactory<S> factory;
+    private final int maxSize;
+    private final long idleTimeout;
+    private final long maxLifetime;
+    private final long borrowTimeout;
+    private final boolean validateOnBorrow;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Pooled<S>> idle = new LinkedBlockingDeque<Pooled<S>>();
+    private final Map<S, Pooled<S>> borrowed = Collections.synchronizedMap(new IdentityHashMap<S, Pooled<S>>());
+    private final ScheduledFuture<?> eviction;
+    private volatile boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * This constructor instantiates a new pool.
+     * 
+     * @param factory to create, validate and destroy the sessions.
+     * @param maxSize is the max amount of sessions (borrowed and idle).
+     * @param idleTimeout is the max amount of milliseconds a session can be idle, zero means no limit.
+     * @param maxLifetime is the max amount of milliseconds a session can live, zero means no limit.
+     * @param borrowTimeout is the max amount of milliseconds to wait for a session.
+     * @param validateOnBorrow indicates if the idle sessions will be validated before being borrowed.
+     */
+    public UniversalSessionPool(UniversalSessionFactory<S> factory, int maxSize, long idleTimeout, long maxLifetime, 
+                long borrowTimeout, boolean validateOnBorrow) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The max size must be greater than zero.");
+        }
+
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+        this.maxLifetime = maxLifetime;
+        this.borrowTimeout = borrowTimeout;
+        this.validateOnBorrow = validateOnBorrow;
+        this.permits = new Semaphore(maxSize, true);
+
+        long interval = Math.min(idleTimeout > 0 ? idleTimeout : Long.MAX_VALUE, maxLifetime > 0 ? maxLifetime : Long.MAX_VALUE);
+        if (interval == Long.MAX_VALUE) {
+            this.eviction = null;
+        } else {
+            interval = Math.max(interval / 2, MIN_EVICTION_INTERVAL);
+            this.eviction = getEvictor().scheduleWithFixedDelay(() -> evictIdle(), interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * This method borrows a session from the pool, a new session will be created if there isn't an idle one.
+     * The borrowed session must be returned through either release or invalidate.
+     * 
+     * @throws UniversalIOException when the pool is closed, the wait timed out or the session couldn't be created.
+     */
+    public S borrow() throws UniversalIOException {
+        if (this.closed) {
+            throw new UniversalIOException("The session pool is closed.");
+        }
+
+        try {
+            if (!this.permits.tryAcquire(this.borrowTimeout, TimeUnit.MILLISECONDS)) {
+                this.timeouts.incrementAndGet();
+                throw new UniversalIOException("Timeout waiting for a session after " + this.borrowTimeout + " ms.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UniversalIOException("Interrupted while waiting for a session.");
+        }
+
+        /*
+         * The permit is released by any failure, including an Error thrown by the factory.
+         */
+        boolean lent = false;
+        try {
+            long now = System.currentTimeMillis();
+            Pooled<S> pooled;
+            while ((pooled = this.idle.pollFirst()) != null) {
+                if (isExpired(pooled, now) || (this.validateOnBorrow && !validate(pooled.session))) {
+                    destroy(pooled);
+                    continue;
+                }
+
+                S session = lend(pooled);
+                lent = true;
+                return session;
+            }
+
+            pooled = new Pooled<S>(this.factory.create(), now);
+            this.created.incrementAndGet();
+            S session = lend(pooled);
+            lent = true;
+            return session;
+        } finally {
+            if (!lent) {
+                this.permits.release();
+            }
+        }
+    }
+
+    /**
+     * This method returns a borrowed session to the pool.
+     * 
+     * @param session in context.
+     */
+    public void release(S session) {
+        Pooled<S> pooled = this.borrowed.remove(session);
+        if (pooled == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (this.closed || (this.maxLifetime > 0 && now - pooled.createdAt > this.maxLifetime)) {
+            destroy(pooled);
+        } else {
+            pooled.lastUsed = now;
+            this.idle.offerFirst(pooled);
+
+            /*
+             * The pool could be closed after the check and before the offer, in that case the idle sessions 
+             * are drained again so the released session isn't leaked.
+             */
+            if (this.closed) {
+                drainIdle();
+            }
+        }
+
+        this.permits.release();
+        evictIdle();
+    }
+
+    /**
+     * This method destroys a borrowed session instead of returning it to the pool, i.e: the connection was broken.
+     * 
+     * @param session in context.
+     */
+    public void invalidate(S session) {
+        Pooled<S> pooled = this.borrowed.remove(session);
+        if (pooled == null) {
+            return;
+        }
+
+        destroy(pooled);
+        this.permits.release();
+    }
+
+    /**
+     * This method borrows a session, executes the callback and releases the session.  If the callback fails
+     * the session is validated through the factory, so an application error (i.e: file not found) returns 
+     * the session to the pool and only a broken session (i.e: the connection was closed) is invalidated.  
+     * The session is always invalidated if the callback throws an Error.
+     * 
+     * @param callback to be executed with a session.
+     * @returns the result of the callback.
+     */
+    public <T> T execute(SessionCallback<S, T> callback) throws UniversalIOException {
+        S session = borrow();
+        boolean usable = false;
+        try {
+            T result = callback.execute(session);
+            usable = true;
+            return result;
+        } catch (UniversalIOException e) {
+            usable = validate(session);
+            throw e;
+        } catch (RuntimeException e) {
+            usable = validate(session);
+            throw e;
+        } finally {
+            if (usable) {
+                release(session);
+            } else {
+                invalidate(session);
+            }
+        }
+    }
+
+    /**
+     * This method destroys the idle sessions that expired, the oldest idle sessions are at the end of the queue.
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<Pooled<S>> iterator = this.idle.descendingIterator();
+        while (iterator.hasNext()) {
+            Pooled<S> pooled = iterator.next();
+            if (isExpired(pooled, now) && this.idle.removeLastOccurrence(pooled)) {
+                destroy(pooled);
+            }
+        }
+    }
+
+    /**
+     * This method closes the pool, the idle sessions are destroyed and the borrowed sessions will be 
+     * destroyed when they are released.
+     */
+    public void close() {
+        this.closed = true;
+        if (this.eviction != null) {
+            this.eviction.cancel(false);
+        }
+
+        drainIdle();
+    }
+
+    /**
+     * Returns a snapshot of the state of this pool.
+     */
+    public UniversalPoolStats getStats() {
+        return new UniversalPoolStats(this.maxSize, this.borrowed.size(), this.idle.size(), this.created.get(), 
+                    this.destroyed.get(), this.borrowCount.get(), this.timeouts.get());
+    }
+
+    private void drainIdle() {
+        Pooled<S> pooled;
+        while ((pooled = this.idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    /**
+     * Returns the thread shared by the pools to evict their expired idle sessions, the thread is a daemon 
+     * so it won't block the jvm's shutdown.
+     */
+    private static synchronized ScheduledThreadPoolExecutor getEvictor() {
+        if (evictor == null) {
+            evictor = new ScheduledThreadPoolExecutor(1, ExecutorUtil.newThreadFactory("universal-storage-pool-evictor"));
+            evictor.setRemoveOnCancelPolicy(true);
+        }
+
+        return evictor;
+    }
+
+    private S lend(Pooled<S> pooled) {
+        this.borrowed.put(pooled.session, pooled);
+        this.borrowCount.incrementAndGet();
+        return pooled.session;
+    }
+
+    private boolean isExpired(Pooled<S> pooled, long now) {
+        return (this.idleTimeout > 0 && now - pooled.lastUsed > this.idleTimeout) 
+                    || (this.maxLifetime > 0 && now - pooled.createdAt > this.maxLifetime);
+    }
+
+    private boolean validate(S session) {
+        try {
+            return this.factory.validate(session);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void destroy(Pooled<S> pooled) {
+        this.destroyed.incrementAndGet();
+        try {this.factory.destroy(pooled.session);}catch(Exception ignore) {}
+    }
+
+    /**
+     * This interface represents the code executed with a borrowed session.
+     */
+    public interface SessionCallback<S, T> {
+        T execute(S session) throws UniversalIOException;
+    }
+
+    /**
+     * This class keeps a session with its creation and last usage times.
+     */
+    private static class Pooled<S> {
+        private final S session;
+        private final long createdAt;
+        private volatile long lastUsed;
+
+        private Pooled(S session, long createdAt) {
+            this.session = session;
+            this.createdAt = createdAt;
+            this.lastUsed = createdAt;
+        }
+    }
+}
@@ -5,11 +5,15 @@ import org.json.JSONObject;
 import org.json.JSONArray;
 import com.universal.error.UniversalStorageException;
 import com.universal.storage.UniversalProvider;
+import com.universal.util.BufferPool;
 import com.universal.util.FileUtil;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 
 /**
  * The MIT License (MIT)
@@ -57,6 +61,74 @@ public class UniversalSettings {
     private Map<String, String> tags;    
     private boolean encryption;
     private UniversalProvider provider;
+    private String fingerprint;
+
+    private String asyncExecutor = "fixed";
+    private int asyncThreads = Runtime.getRuntime().availableProcessors();
+    private int batchConcurrency = 4;
+    private long cacheMaxBytes;
+
+    private int poolMaxSize = 8;
+    private long poolIdleTimeout = 60000;
+    private long poolMaxLifetime = 1800000;
+    private long poolBorrowTimeout = 30000;
+    private boolean poolValidateOnBorrow = true;
+
+    private boolean eventsAsync;
+    private int eventsQueueSize = 1024;
+    private String eventsPolicy = "block";
+
+    private boolean metricsEnabled;
+    private String metricsImplementation;
+
+    private boolean multipartEnabled;
+    private long multipartPartSize = 8 * 1024 * 1024;
+    private int multipartParallelism = 4;
+    private long multipartThreshold = -1;
+    private int multipartRetries = 3;
+
+    private boolean downloadEnabled;
+    private long downloadSegmentSize = 8 * 1024 * 1024;
+    private int downloadParallelism = 4;
+    private long downloadThreshold = -1;
+    private int downloadRetries = 3;
+
+    private int listPageSize = 1000;
+
+    private Map<String, String> compressionRules = Collections.emptyMap();
+
+    private byte[] clientEncryptionKey;
+    private int clientEncryptionChunkSize = 64 * 1024;
+    private boolean clientEncryptionPlaintextAllowed;
+
+    private boolean checksumEnabled;
+    private boolean checksumSha256;
+
+    private boolean dedupEnabled;
+    private long dedupMinSize;
+
+    private long metadataTtl = 30000;
+    private int metadataMaxEntries = 10000;
+
+    private int removeParallelism = 8;
+    private int removeBatchSize = 100;
+
+    private boolean writeBehindEnabled;
+    private int writeBehindBatchSize = 16;
+    private int writeBehindMaxRetries = 5;
+    private long writeBehindRetryDelay = 1000;
+    private String writeBehindFolder;
+
+    private long inMemoryCapacity;
+    private boolean inMemorySpill = true;
+
+    private UniversalSettings tieredHot;
+    private UniversalSettings tieredCold;
+    private String tieredWritePolicy = "through";
+    private boolean tieredPromoteOnRead = true;
+    private long tieredMaxAge;
+    private long tieredMaxBytes;
+    private long tieredRetryDelay = 1000;
 
     private final static List<String> STORAGE_CLASSES = new ArrayList<String>();
 
@@ -73,8 +145,19 @@ public class UniversalSettings {
      * @param file for loading settings.
      */
     public UniversalSettings(File file) throws UniversalStorageException {
+        this(read(file));
+    }
+
+    /**
+     * This method loads the settings from a parsed json and sets the mandatory attributes, if one of them 
+     * is missing a error will be thrown.  The composite providers (i.e: tiered) load their inner settings 
+     * through this constructor.
+     * 
+     * @param json with the settings.
+     */
+    public UniversalSettings(JSONObject json) throws UniversalStorageException {
         try {
-            JSONObject json = new JSONObject(FileUtil.readAsString(file));
+            this.fingerprint = json.toString();
 
             this.root = json.getString("root");
             if (this.root == null) {
@@ -87,7 +170,227 @@ public class UniversalSettings {
             }
 
             this.tmp = FileUtil.completeFileSeparator(this.tmp);
-            //this.async = json.getBoolean("async"); 
+            JSONObject async = json.optJSONObject("async");
+            if (async != null) {
+                this.asyncExecutor = async.optString("executor", this.asyncExecutor);
+                if (!"fixed".equals(this.asyncExecutor) && !"cached".equals(this.asyncExecutor) 
+                        && !"virtual".equals(this.asyncExecutor)) {
+                    throw new IllegalStateException(this.asyncExecutor + " is a unknown async executor.");
+                }
+
+                this.asyncThreads = async.optInt("threads", this.asyncThreads);
+                if (this.asyncThreads <= 0) {
+                    throw new IllegalStateException("Invalid async threads");
+                }
+            }
+
+            JSONObject batch = json.optJSONObject("batch");
+            if (batch != null) {
+                this.batchConcurrency = batch.optInt("concurrency", this.batchConcurrency);
+                if (this.batchConcurrency <= 0) {
+                    throw new IllegalStateException("Invalid batch concurrency");
+                }
+            }
+
+            JSONObject cache = json.optJSONObject("cache");
+            if (cache != null) {
+                this.cacheMaxBytes = cache.getLong("max_bytes");
+                if (this.cacheMaxBytes < 0) {
+                    throw new IllegalStateException("Invalid cache max_bytes");
+                }
+            }
+
+            JSONObject pool = json.optJSONObject("pool");
+            if (pool != null) {
+                this.poolMaxSize = pool.optInt("max_size", this.poolMaxSize);
+                if (this.poolMaxSize <= 0) {
+                    throw new IllegalStateException("Invalid pool max_size");
+                }
+
+                this.poolIdleTimeout = pool.optLong("idle_timeout", this.poolIdleTimeout);
+                this.poolMaxLifetime = pool.optLong("max_lifetime", this.poolMaxLifetime);
+                this.poolBorrowTimeout = pool.optLong("borrow_timeout", this.poolBorrowTimeout);
+                if (this.poolIdleTimeout < 0 || this.poolMaxLifetime < 0 || this.poolBorrowTimeout < 0) {
+                    throw new IllegalStateException("Invalid pool timeouts");
+                }
+
+                this.poolValidateOnBorrow = pool.optBoolean("validate_on_borrow", this.poolValidateOnBorrow);
+            }
+
+            JSONObject events = json.optJSONObject("events");
+            if (events != null) {
+                this.eventsAsync = events.optBoolean("async", this.eventsAsync);
+                this.eventsQueueSize = events.optInt("queue_size", this.eventsQueueSize);
+                if (this.eventsQueueSize <= 0) {
+                    throw new IllegalStateException("Invalid events queue_size");
+                }
+
+                this.eventsPolicy = events.optString("policy", this.eventsPolicy);
+                if (!"block".equals(this.eventsPolicy) && !"drop".equals(this.eventsPolicy)) {
+                    throw new IllegalStateException(this.eventsPolicy + " is a unknown events policy.");
+                }
+            }
+
+            JSONObject metrics = json.optJSONObject("metrics");
+            if (metrics != null) {
+                this.metricsEnabled = metrics.optBoolean("enabled", true);
+                this.metricsImplementation = metrics.optString("implementation", null);
+            }
+
+            JSONObject multipart = json.optJSONObject("multipart");
+            if (multipart != null) {
+                this.multipartEnabled = multipart.optBoolean("enabled", true);
+                this.multipartPartSize = multipart.optLong("part_size", this.multipartPartSize);
+                if (this.multipartPartSize <= 0 || this.multipartPartSize > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Invalid multipart part_size");
+                }
+
+                this.multipartParallelism = multipart.optInt("parallelism", this.multipartParallelism);
+                if (this.multipartParallelism <= 0) {
+                    throw new IllegalStateException("Invalid multipart parallelism");
+                }
+
+                this.multipartThreshold = multipart.optLong("threshold", this.multipartThreshold);
+                this.multipartRetries = multipart.optInt("retries", this.multipartRetries);
+                if (this.multipartRetries < 0) {
+                    throw new IllegalStateException("Invalid multipart retries");
+                }
+            }
+
+            if (this.multipartThreshold < 0) {
+                this.multipartThreshold = this.multipartPartSize;
+            }
+
+            JSONObject download = json.optJSONObject("download");
+            if (download != null) {
+                this.downloadEnabled = download.optBoolean("enabled", true);
+                this.downloadSegmentSize = download.optLong("segment_size", this.downloadSegmentSize);
+                if (this.downloadSegmentSize <= 0) {
+                    throw new IllegalStateException("Invalid download segment_size");
+                }
+
+                this.downloadParallelism = download.optInt("parallelism", this.downloadParallelism);
+                if (this.downloadParallelism <= 0) {
+                    throw new IllegalStateException("Invalid download parallelism");
+                }
+
+                this.downloadThreshold = download.optLong("threshold", this.downloadThreshold);
+                this.downloadRetries = download.optInt("retries", this.downloadRetries);
+                if (this.downloadRetries < 0) {
+                    throw new IllegalStateException("Invalid download retries");
+                }
+            }
+
+            if (this.downloadThreshold < 0) {
+                this.downloadThreshold = this.downloadSegmentSize;
+            }
+
+            JSONObject list = json.optJSONObject("list");
+            if (list != null) {
+                this.listPageSize = list.optInt("page_size", this.listPageSize);
+                if (this.listPageSize <= 0) {
+                    throw new IllegalStateException("Invalid list page_size");
+                }
+            }
+
+            JSONObject compression = json.optJSONObject("compression");
+            if (compression != null) {
+                JSONArray rules = compression.optJSONArray("rules");
+                Map<String, String> compressionRules = new LinkedHashMap<String, String>();
+                for (int i = 0; rules != null && i < rules.length(); i++) {
+                    JSONObject rule = rules.getJSONObject(i);
+                    compressionRules.put(rule.getString("pattern"), rule.getString("codec"));
+                }
+
+                this.compressionRules = Collections.unmodifiableMap(compressionRules);
+            }
+
+            JSONObject clientEncryption = json.optJSONObject("client_encryption");
+            if (clientEncryption != null) {
+                try {
+                    this.clientEncryptionKey = Base64.getDecoder().decode(clientEncryption.getString("key"));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalStateException("Invalid client_encryption key, it must be encoded in base64");
+                }
+
+                if (this.clientEncryptionKey.length != 16 && this.clientEncryptionKey.length != 24 
+                            && this.clientEncryptionKey.length != 32) {
+                    throw new IllegalStateException("Invalid client_encryption key, it must have 128, 192 or 256 bits");
+                }
+
+                this.clientEncryptionChunkSize = clientEncryption.optInt("chunk_size", this.clientEncryptionChunkSize);
+                if (this.clientEncryptionChunkSize <= 0 || this.clientEncryptionChunkSize > BufferPool.MAX_SIZE) {
+                    throw new IllegalStateException("Invalid client_encryption chunk_size");
+                }
+
+                this.clientEncryptionPlaintextAllowed = clientEncryption.optBoolean("allow_plaintext", false);
+            }
+
+            JSONObject checksum = json.optJSONObject("checksum");
+            if (checksum != null) {
+                this.checksumEnabled = checksum.optBoolean("enabled", true);
+                this.checksumSha256 = checksum.optBoolean("sha256", this.checksumSha256);
+            }
+
+            JSONObject dedup = json.optJSONObject("dedup");
+            if (dedup != null) {
+                this.dedupEnabled = dedup.optBoolean("enabled", true);
+                this.dedupMinSize = dedup.optLong("min_size", this.dedupMinSize);
+                if (this.dedupMinSize < 0) {
+                    throw new IllegalStateException("Invalid dedup min_size");
+                }
+            }
+
+            JSONObject metadata = json.optJSONObject("metadata");
+            if (metadata != null) {
+                this.metadataTtl = metadata.optLong("ttl", this.metadataTtl);
+                this.metadataMaxEntries = metadata.optInt("max_entries", this.metadataMaxEntries);
+                if (this.metadataTtl < 0 || this.metadataMaxEntries < 0) {
+                    throw new IllegalStateException("Invalid metadata cache");
+                }
+            }
+
+            JSONObject remove = json.optJSONObject("remove");
+            if (remove != null) {
+                this.removeParallelism = remove.optInt("parallelism", this.removeParallelism);
+                if (this.removeParallelism <= 0) {
+                    throw new IllegalStateException("Invalid remove parallelism");
+                }
+
+                this.removeBatchSize = remove.optInt("batch_size", this.removeBatchSize);
+                if (this.removeBatchSize <= 0) {
+                    throw new IllegalStateException("Invalid remove batch_size");
+                }
+            }
+
+            JSONObject writeBehind = json.optJSONObject("write_behind");
+            if (writeBehind != null) {
+                this.writeBehindEnabled = writeBehind.optBoolean("enabled", true);
+                this.writeBehindBatchSize = writeBehind.optInt("batch_size", this.writeBehindBatchSize);
+                if (this.writeBehindBatchSize <= 0) {
+                    throw new IllegalStateException("Invalid write_behind batch_size");
+                }
+
+                this.writeBehindMaxRetries = writeBehind.optInt("max_retries", this.writeBehindMaxRetries);
+                this.writeBehindRetryDelay = writeBehind.optLong("retry_delay", this.writeBehindRetryDelay);
+                if (this.writeBehindMaxRetries < 0 || this.writeBehindRetryDelay < 0) {
+                    throw new IllegalStateException("Invalid write_behind retries");
+                }
+
+            }
+
+            /*
+             * The journal lives outside the tmp folder because the providers wipe the tmp folder when 
+             * they are cleaned.  The folder is resolved without the block too, the tiered provider journals 
+             * the uploads of its write back policy within it.
+             */
+            String folder = writeBehind == null ? "" : writeBehind.optString("folder", "");
+            if ("".equals(folder)) {
+                folder = this.tmp.substring(0, this.tmp.length() - File.separator.length()) + ".write-behind";
+            }
+
+            this.writeBehindFolder = FileUtil.completeFileSeparator(folder);
+
             this.provider = retrieveProvider(json.getString("provider"));
 
             if (this.provider == UniversalProvider.FILE_SYSTEM) {
@@ -130,6 +433,38 @@ public class UniversalSettings {
                 }
 
                 this.isFTPPassive = ftp.getBoolean("ftp_passive");                
+            } else if (this.provider == UniversalProvider.IN_MEMORY) {
+                JSONObject inMemory = json.optJSONObject("in_memory");
+                if (inMemory != null) {
+                    this.inMemoryCapacity = inMemory.optLong("capacity", this.inMemoryCapacity);
+                    if (this.inMemoryCapacity < 0) {
+                        throw new IllegalStateException("Invalid in_memory capacity");
+                    }
+
+                    this.inMemorySpill = inMemory.optBoolean("spill", this.inMemorySpill);
+                }
+            } else if (this.provider == UniversalProvider.TIERED) {
+                JSONObject tiered = json.getJSONObject("tiered");
+
+                this.tieredHot = new UniversalSettings(inheritTmp(tiered.getJSONObject("hot"), "hot"));
+                this.tieredCold = new UniversalSettings(inheritTmp(tiered.getJSONObject("cold"), "cold"));
+
+                this.tieredWritePolicy = tiered.optString("write", this.tieredWritePolicy);
+                if (!"through".equals(this.tieredWritePolicy) && !"back".equals(this.tieredWritePolicy)) {
+                    throw new IllegalStateException(this.tieredWritePolicy + " is a unknown tiered write policy.");
+                }
+
+                this.tieredPromoteOnRead = tiered.optBoolean("promote_on_read", this.tieredPromoteOnRead);
+                this.tieredMaxAge = tiered.optLong("max_age", this.tieredMaxAge);
+                this.tieredMaxBytes = tiered.optLong("max_bytes", this.tieredMaxBytes);
+                if (this.tieredMaxAge < 0 || this.tieredMaxBytes < 0) {
+                    throw new IllegalStateException("Invalid tiered demotion policy");
+                }
+
+                this.tieredRetryDelay = tiered.optLong("retry_delay", this.tieredRetryDelay);
+                if (this.tieredRetryDelay <= 0) {
+                    throw new IllegalStateException("Invalid tiered retry_delay");
+                }
             } else if (this.provider == UniversalProvider.DROPBOX) {
                 JSONObject dropbox = json.getJSONObject("dropbox");
 
@@ -222,6 +557,34 @@ public class UniversalSettings {
         }
     }
 
+    /**
+     * This method reads the json of a settings file.
+     * 
+     * @param file for loading settings.
+     */
+    private static JSONObject read(File file) throws UniversalStorageException {
+        try {
+            return new JSONObject(FileUtil.readAsString(file));
+        } catch (Exception e) {
+            throw new UniversalStorageException(e.getMessage());
+        }
+    }
+
+    /**
+     * This method sets a tmp folder within the tmp folder of these settings to the passed inner settings 
+     * when they don't declare their own, so the tiers don't share their retrieved files.
+     * 
+     * @param json of the inner settings.
+     * @param name of the tier.
+     */
+    private JSONObject inheritTmp(JSONObject json, String name) {
+        if (!json.has("tmp")) {
+            json.put("tmp", this.tmp + name);
+        }
+
+        return json;
+    }
+
     /**
      * This method validates the passed storage class.
      * 
@@ -249,11 +612,23 @@ public class UniversalSettings {
             return UniversalProvider.DROPBOX;
         } else if ("ftp".equals(p)) {
             return UniversalProvider.FTP;
+        } else if ("in.memory".equals(p)) {
+            return UniversalProvider.IN_MEMORY;
+        } else if ("tiered".equals(p)) {
+            return UniversalProvider.TIERED;
         }
 
         return UniversalProvider.UNKNOWN;
     }
 
+    /**
+     * This method returns a representation of the content of these settings, two settings with the same 
+     * content have the same fingerprint.
+     */
+    public String getFingerprint() {
+        return this.fingerprint;
+    }
+
     /**
      * This method returns the configured root from these settings. 
      */
@@ -379,4 +754,374 @@ public class UniversalSettings {
     public boolean isFTPPassive() {
         return this.isFTPPassive;
     }
+
+    /**
+     * Returns the kind of executor used by the async methods (fixed, cached or virtual).
+     */
+    public String getAsyncExecutor() {
+        return this.asyncExecutor;
+    }
+
+    /**
+     * Returns the amount of threads used by the fixed async executor.
+     */
+    public int getAsyncThreads() {
+        return this.asyncThreads;
+    }
+
+    /**
+     * Returns the max amount of items a batch operation will process concurrently.
+     */
+    public int getBatchConcurrency() {
+        return this.batchConcurrency;
+    }
+
+    /**
+     * Returns the max amount of bytes kept by the cache of retrieved files, zero means the cache is disabled.
+     */
+    public long getCacheMaxBytes() {
+        return this.cacheMaxBytes;
+    }
+
+    /**
+     * Returns the max amount of sessions within a provider's session pool.
+     */
+    public int getPoolMaxSize() {
+        return this.poolMaxSize;
+    }
+
+    /**
+     * Returns the max amount of milliseconds a pooled session can be idle, zero means no limit.
+     */
+    public long getPoolIdleTimeout() {
+        return this.poolIdleTimeout;
+    }
+
+    /**
+     * Returns the max amount of milliseconds a pooled session can live, zero means no limit.
+     */
+    public long getPoolMaxLifetime() {
+        return this.poolMaxLifetime;
+    }
+
+    /**
+     * Returns the max amount of milliseconds to wait for a pooled session.
+     */
+    public long getPoolBorrowTimeout() {
+        return this.poolBorrowTimeout;
+    }
+
+    /**
+     * Indicates if the pooled sessions will be validated before being borrowed.
+     */
+    public boolean isPoolValidateOnBorrow() {
+        return this.poolValidateOnBorrow;
+    }
+
+    /**
+     * Indicates if the listeners will be called from a dedicated thread instead of the storage's thread.
+     */
+    public boolean isEventsAsync() {
+        return this.eventsAsync;
+    }
+
+    /**
+     * Returns the max amount of pending events when the events are async.
+     */
+    public int getEventsQueueSize() {
+        return this.eventsQueueSize;
+    }
+
+    /**
+     * Returns what to do when the async events queue is full, either block (the caller waits) or drop.
+     */
+    public String getEventsPolicy() {
+        return this.eventsPolicy;
+    }
+
+    /**
+     * Indicates if the operations will be measured.
+     */
+    public boolean isMetricsEnabled() {
+        return this.metricsEnabled;
+    }
+
+    /**
+     * Returns the class name of the metrics implementation, null means the default JMX implementation.
+     */
+    public String getMetricsImplementation() {
+        return this.metricsImplementation;
+    }
+
+    /**
+     * Indicates if the large files will be uploaded in parts by the providers with multipart support.
+     */
+    public boolean isMultipartEnabled() {
+        return this.multipartEnabled;
+    }
+
+    /**
+     * Returns the size in bytes of every part of a multipart upload.
+     */
+    public long getMultipartPartSize() {
+        return this.multipartPartSize;
+    }
+
+    /**
+     * Returns the max amount of parts uploaded concurrently.
+     */
+    public int getMultipartParallelism() {
+        return this.multipartParallelism;
+    }
+
+    /**
+     * Returns the min size in bytes of a file to be uploaded in parts, by default the part size.
+     */
+    public long getMultipartThreshold() {
+        return this.multipartThreshold;
+    }
+
+    /**
+     * Returns the amount of retries of a failed part.
+     */
+    public int getMultipartRetries() {
+        return this.multipartRetries;
+    }
+
+    /**
+     * Indicates if the large files will be downloaded in parallel segments by the providers with range support.
+     */
+    public boolean isDownloadEnabled() {
+        return this.downloadEnabled;
+    }
+
+    /**
+     * Returns the size in bytes of every segment of a parallel download.
+     */
+    public long getDownloadSegmentSize() {
+        return this.downloadSegmentSize;
+    }
+
+    /**
+     * Returns the max amount of segments downloaded concurrently.
+     */
+    public int getDownloadParallelism() {
+        return this.downloadParallelism;
+    }
+
+    /**
+     * Returns the min size in bytes of a file to be downloaded in segments, by default the segment size.
+     */
+    public long getDownloadThreshold() {
+        return this.downloadThreshold;
+    }
+
+    /**
+     * Returns the amount of retries of a failed segment.
+     */
+    public int getDownloadRetries() {
+        return this.downloadRetries;
+    }
+
+    /**
+     * Returns the max amount of entries requested to the provider per page of a listing.
+     */
+    public int getListPageSize() {
+        return this.listPageSize;
+    }
+
+    /**
+     * Returns the compression rules, every glob pattern (i.e: **.log) with the name of its codec.  
+     * The rules are evaluated in order, the first matching rule wins.
+     */
+    public Map<String, String> getCompressionRules() {
+        return this.compressionRules;
+    }
+
+    /**
+     * Indicates if the files are encrypted before being sent to the provider, unlike getEncryption this 
+     * encryption doesn't depend on the provider.
+     */
+    public boolean isClientEncryptionEnabled() {
+        return this.clientEncryptionKey != null;
+    }
+
+    /**
+     * Returns the AES key of the client side encryption.
+     */
+    public byte[] getClientEncryptionKey() {
+        return this.clientEncryptionKey == null ? null : this.clientEncryptionKey.clone();
+    }
+
+    /**
+     * Returns the size in bytes of the plain content of every encrypted chunk.
+     */
+    public int getClientEncryptionChunkSize() {
+        return this.clientEncryptionChunkSize;
+    }
+
+    /**
+     * Indicates if the files stored without the client side encryption are returned as is, otherwise 
+     * reading them fails.
+     */
+    public boolean isClientEncryptionPlaintextAllowed() {
+        return this.clientEncryptionPlaintextAllowed;
+    }
+
+    /**
+     * Indicates if the checksums of the files are computed while they are transferred.
+     */
+    public boolean isChecksumEnabled() {
+        return this.checksumEnabled;
+    }
+
+    /**
+     * Indicates if the SHA-256 is computed along with the CRC32C.
+     */
+    public boolean isChecksumSha256Enabled() {
+        return this.checksumSha256;
+    }
+
+    /**
+     * Indicates if the content already stored is copied within the provider instead of being uploaded again.
+     */
+    public boolean isDedupEnabled() {
+        return this.dedupEnabled;
+    }
+
+    /**
+     * Returns the min size in bytes of a file to be hashed by the dedup storage.
+     */
+    public long getDedupMinSize() {
+        return this.dedupMinSize;
+    }
+
+    /**
+     * Returns the milliseconds the stats of the files are cached, 0 means the stats are not cached.
+     */
+    public long getMetadataTtl() {
+        return this.metadataTtl;
+    }
+
+    /**
+     * Returns the max amount of stats within the metadata cache.
+     */
+    public int getMetadataMaxEntries() {
+        return this.metadataMaxEntries;
+    }
+
+    /**
+     * Returns the max amount of batches removed concurrently by the tree removals.
+     */
+    public int getRemoveParallelism() {
+        return this.removeParallelism;
+    }
+
+    /**
+     * Returns the max amount of files per bulk delete of the tree removals.
+     */
+    public int getRemoveBatchSize() {
+        return this.removeBatchSize;
+    }
+
+    /**
+     * Indicates if the store operations return after persisting the file within the tmp folder, the files 
+     * are uploaded by a background thread.
+     */
+    public boolean isWriteBehindEnabled() {
+        return this.writeBehindEnabled;
+    }
+
+    /**
+     * Returns the max amount of files uploaded together by the write behind thread.
+     */
+    public int getWriteBehindBatchSize() {
+        return this.writeBehindBatchSize;
+    }
+
+    /**
+     * Returns the amount of retries of a failed write behind upload.
+     */
+    public int getWriteBehindMaxRetries() {
+        return this.writeBehindMaxRetries;
+    }
+
+    /**
+     * Returns the milliseconds before the first retry of a failed write behind upload, the delay is doubled per retry.
+     */
+    public long getWriteBehindRetryDelay() {
+        return this.writeBehindRetryDelay;
+    }
+
+    /**
+     * Returns the folder of the write behind journal and the files waiting to be uploaded, by default a 
+     * sibling of the tmp folder.
+     */
+    public String getWriteBehindFolder() {
+        return this.writeBehindFolder;
+    }
+
+    /**
+     * Returns the max amount of bytes the in memory provider keeps off-heap, zero means no limit.
+     */
+    public long getInMemoryCapacity() {
+        return this.inMemoryCapacity;
+    }
+
+    /**
+     * Indicates if the in memory provider writes the files that exceed its capacity within the tmp folder.
+     */
+    public boolean isInMemorySpill() {
+        return this.inMemorySpill;
+    }
+
+    /**
+     * Returns the settings of the hot (local) tier of the tiered provider.
+     */
+    public UniversalSettings getTieredHot() {
+        return this.tieredHot;
+    }
+
+    /**
+     * Returns the settings of the cold (canonical) tier of the tiered provider.
+     */
+    public UniversalSettings getTieredCold() {
+        return this.tieredCold;
+    }
+
+    /**
+     * Returns how the tiered provider writes the cold tier, either through (the caller waits) or back (async).
+     */
+    public String getTieredWritePolicy() {
+        return this.tieredWritePolicy;
+    }
+
+    /**
+     * Indicates if the tiered provider copies the files retrieved from the cold tier within the hot tier.
+     */
+    public boolean isTieredPromoteOnRead() {
+        return this.tieredPromoteOnRead;
+    }
+
+    /**
+     * Returns the max amount of milliseconds a file stays within the hot tier since its last access, zero means no limit.
+     */
+    public long getTieredMaxAge() {
+        return this.tieredMaxAge;
+    }
+
+    /**
+     * Returns the max amount of bytes within the hot tier, zero means no limit.
+     */
+    public long getTieredMaxBytes() {
+        return this.tieredMaxBytes;
+    }
+
+    /**
+     * Returns the milliseconds before retrying a failed write back upload of the tiered provider, the delay 
+     * is doubled per retry.
+     */
+    public long getTieredRetryDelay() {
+        return this.tieredRetryDelay;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.universal.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class limits the amount of bytes that can be read from the underlying stream.
+ */
+public class BoundedInputStream extends FilterInputStream {
+    private long remaining;
+
+    /**
+     * This constructor instantiates a new BoundedInputStream.
+     * 
+     * @param in is the underlying stream.
+     * @param length is the max amount of bytes to be read, a negative length means no limit.
+     */
+    public BoundedInputStream(InputStream in, long length) {
+        super(in);
+        this.remaining = length < 0 ? Long.MAX_VALUE : length;
+    }
+
+    /**
+     * This method skips the first bytes of the passed stream, if the stream ends before the offset the 
+     * stream is left at its end (a range beyond the end of a file is empty).
+     * 
+     * @param in is the stream in context.
+     * @param offset amount of bytes to be skipped.
+     * @returns the amount of skipped bytes.
+     */
+    public static long skip(InputStream in, long offset) throws IOException {
+        long remaining = offset;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    break;
+                }
+
+                skipped = 1;
+            }
+
+            remaining -= skipped;
+        }
+
+        return offset - remaining;
+    }
+
+    public int read() throws IOException {
+        if (this.remaining <= 0) {
+            return -1;
+        }
+
+        int read = this.in.read();
+        if (read != -1) {
+            this.remaining--;
+        }
+
+        return read;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (this.remaining <= 0) {
+            return -1;
+        }
+
+        int read = this.in.read(b, off, (int) Math.min(len, this.remaining));
+        if (read > 0) {
+            this.remaining -= read;
+        }
+
+        return read;
+    }
+
+    public long skip(long n) throws IOException {
+        long skipped = this.in.skip(Math.min(n, this.remaining));
+        this.remaining -= skipped;
+        return skipped;
+    }
+
+    public int available() throws IOException {
+        return (int) Math.min(this.in.available(), this.remaining);
+    }
+
+    public boolean markSupported() {
+        return false;
+    }
+}
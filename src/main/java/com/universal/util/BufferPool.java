@@ -0,0 +1,478 @@
+package com.universal.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class pools the buffers used to transfer bytes, so the concurrent transfers reuse their buffers 
+ * instead of allocating new ones per copy.  The buffers are grouped in size classes (powers of two from 
+ * MIN_SIZE until MAX_SIZE), a request is served with a buffer of the smallest class that fits and the 
+ * larger requests are allocated without pooling.
+ * 
+ * The released buffers are kept within a small cache of the releasing thread (only the classes up to 
+ * 64 KB, at most 256 KB per thread) and then within a free list shared by every thread.  Both the caches 
+ * and the free list are bounded by the max pooled bytes and reported as pooled bytes, the cache of a 
+ * terminated thread is discarded.  The virtual threads don't have a cache, there could be millions of 
+ * them.  There is a pool of heap buffers and a pool of direct buffers, the direct buffers are meant to 
+ * be written into channels.
+ * 
+ * A released buffer must not be used anymore, a buffer released twice would be shared by two callers.  
+ * With the system property universal.buffers.debug=true the acquired buffers are tracked: a buffer 
+ * released twice raises an error and a buffer collected without being released is reported (with 
+ * the stack trace of its acquisition) and counted as a leak.  The system property 
+ * universal.buffers.max_pooled sets the max pooled bytes of the shared pools (64 MB by default).
+ */
+public class BufferPool {
+    /**
+     * The size of the smallest class.
+     */
+    public static final int MIN_SIZE = 4 * 1024;
+
+    /**
+     * The size of the largest class, the larger buffers are not pooled.
+     */
+    public static final int MAX_SIZE = 16 * 1024 * 1024;
+
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE / MIN_SIZE) + 1;
+    private static final int MAX_CACHED_SIZE = 64 * 1024;
+    private static final int THREAD_CACHE_SIZE = 4;
+    private static final int THREAD_CACHE_BYTES = 256 * 1024;
+
+    private static final Logger LOGGER = Logger.getLogger(BufferPool.class.getName());
+
+    private static final long MAX_POOLED_BYTES = Long.getLong("universal.buffers.max_pooled", 64L * 1024 * 1024);
+    private static final boolean DEBUG = Boolean.getBoolean("universal.buffers.debug");
+
+    private static final Method IS_VIRTUAL = virtualMethod();
+
+    private static final BufferPool HEAP = new BufferPool(false, MAX_POOLED_BYTES, DEBUG);
+    private static final BufferPool DIRECT = new BufferPool(true, MAX_POOLED_BYTES, DEBUG);
+
+    private final boolean direct;
+    private final long maxPooledBytes;
+    private final boolean debug;
+
+    private final List<ConcurrentLinkedDeque<ByteBuffer>> free = new ArrayList<ConcurrentLinkedDeque<ByteBuffer>>(CLASSES);
+    private final ThreadLocal<Cache> cache = new ThreadLocal<Cache>() {
+        protected Cache initialValue() {
+            if (isVirtual(Thread.currentThread())) {
+                return null;
+            }
+
+            sweepCaches();
+
+            Cache created = new Cache(Thread.currentThread());
+            BufferPool.this.caches.add(created);
+            return created;
+        }
+    };
+    private final Queue<Cache> caches = new ConcurrentLinkedQueue<Cache>();
+
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong inUseBytes = new AtomicLong();
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+
+    private final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<ByteBuffer>();
+    private final Map<Integer, List<Tracker>> tracked = new HashMap<Integer, List<Tracker>>();
+
+    /**
+     * This constructor instantiates a new BufferPool, the shared pools are returned by heap and direct.
+     * 
+     * @param direct indicates if the buffers are direct buffers.
+     * @param maxPooledBytes is the max amount of bytes kept within the shared free list.
+     * @param debug indicates if the acquired buffers are tracked to detect leaks.
+     */
+    public BufferPool(boolean direct, long maxPooledBytes, boolean debug) {
+        this.direct = direct;
+        this.maxPooledBytes = maxPooledBytes;
+        this.debug = debug;
+        for (int i = 0; i < CLASSES; i++) {
+            this.free.add(new ConcurrentLinkedDeque<ByteBuffer>());
+        }
+    }
+
+    /**
+     * Returns the shared pool of heap buffers.
+     */
+    public static BufferPool heap() {
+        return HEAP;
+    }
+
+    /**
+     * Returns the shared pool of direct buffers.
+     */
+    public static BufferPool direct() {
+        return DIRECT;
+    }
+
+    /**
+     * This method returns a buffer with at least the passed size, the position of the buffer is zero and 
+     * its limit is the passed size.  The heap buffers are backed by an array starting at offset zero.
+     * 
+     * @param size is the amount of needed bytes.
+     * @returns a buffer that must be released when it's not needed anymore.
+     */
+    public ByteBuffer acquire(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The size must be a positive number.");
+        }
+
+        int index = classOf(size);
+        ByteBuffer buffer = index == -1 ? null : poll(index);
+        if (buffer == null) {
+            buffer = allocate(index == -1 ? size : MIN_SIZE << index);
+            this.allocations.incrementAndGet();
+        }
+
+        this.acquisitions.incrementAndGet();
+        this.inUseBytes.addAndGet(buffer.capacity());
+
+        buffer.limit(size);
+        return this.debug ? track(buffer) : buffer;
+    }
+
+    /**
+     * This method returns the passed buffer to the pool, null is ignored.
+     * 
+     * @param buffer acquired from this pool.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+
+        if (this.debug) {
+            buffer = untrack(buffer);
+        }
+
+        this.inUseBytes.addAndGet(-buffer.capacity());
+        recycle(buffer);
+    }
+
+    /**
+     * Indicates if this pool returns direct buffers.
+     */
+    public boolean isDirect() {
+        return this.direct;
+    }
+
+    /**
+     * Returns the amount of bytes of the acquired buffers that were not released.
+     */
+    public long getInUseBytes() {
+        return this.inUseBytes.get();
+    }
+
+    /**
+     * Returns the amount of bytes within the shared free list and the caches of the threads.
+     */
+    public long getPooledBytes() {
+        sweepCaches();
+        return this.pooledBytes.get();
+    }
+
+    /**
+     * Returns the amount of acquired buffers since this pool was created.
+     */
+    public long getAcquisitions() {
+        return this.acquisitions.get();
+    }
+
+    /**
+     * Returns the amount of buffers allocated because the pool didn't have a buffer of the needed class.
+     */
+    public long getAllocations() {
+        return this.allocations.get();
+    }
+
+    /**
+     * Returns the amount of buffers collected without being released, only tracked in debug mode.
+     */
+    public long getLeaks() {
+        if (this.debug) {
+            reportLeaks();
+        }
+
+        return this.leaks.get();
+    }
+
+    public String toString() {
+        return new StringBuilder(100)
+                .append(this.direct ? "direct" : "heap")
+                .append(", in use=").append(getInUseBytes())
+                .append(", pooled=").append(getPooledBytes())
+                .append(", acquisitions=").append(getAcquisitions())
+                .append(", allocations=").append(getAllocations())
+                .append(", leaks=").append(this.leaks.get())
+                .toString();
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return this.direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private ByteBuffer poll(int index) {
+        ByteBuffer buffer = null;
+        if ((MIN_SIZE << index) <= MAX_CACHED_SIZE) {
+            Cache local = this.cache.get();
+            buffer = local == null ? null : local.poll(index);
+        }
+
+        if (buffer == null) {
+            buffer = this.free.get(index).poll();
+        }
+
+        if (buffer != null) {
+            this.pooledBytes.addAndGet(-buffer.capacity());
+        }
+
+        return buffer;
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int index = classOf(capacity);
+        if (index == -1 || capacity != MIN_SIZE << index || buffer.isDirect() != this.direct || buffer.isReadOnly()) {
+            return;
+        }
+
+        buffer.clear();
+        if (this.pooledBytes.addAndGet(capacity) > this.maxPooledBytes) {
+            /*
+             * The pool is full, the buffer is left to the garbage collector.
+             */
+            this.pooledBytes.addAndGet(-capacity);
+            return;
+        }
+
+        if (capacity <= MAX_CACHED_SIZE) {
+            Cache local = this.cache.get();
+            if (local != null && local.offer(index, buffer)) {
+                return;
+            }
+        }
+
+        this.free.get(index).push(buffer);
+    }
+
+    /**
+     * This method discards the caches of the terminated threads, their bytes are not pooled anymore.
+     */
+    private void sweepCaches() {
+        for (Cache cached : this.caches) {
+            if (cached.owner.get() == null || !cached.owner.get().isAlive()) {
+                if (this.caches.remove(cached)) {
+                    this.pooledBytes.addAndGet(-cached.bytes);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method indicates if the passed thread is a virtual thread (Java 21), the method is looked up 
+     * through reflection so the pool runs on the older versions.
+     */
+    private static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static Method virtualMethod() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * This method returns the index of the smallest class that fits the passed size, -1 if the size 
+     * exceeds the largest class.
+     */
+    private static int classOf(int size) {
+        if (size > MAX_SIZE) {
+            return -1;
+        }
+
+        if (size <= MIN_SIZE) {
+            return 0;
+        }
+
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_SIZE);
+    }
+
+    /**
+     * This method returns a view of the passed buffer and tracks it, so the view can be detected when 
+     * it's collected without being released.
+     */
+    private ByteBuffer track(ByteBuffer buffer) {
+        reportLeaks();
+
+        ByteBuffer view = buffer.duplicate();
+        Tracker tracker = new Tracker(view, buffer, this.collected);
+        synchronized (this.tracked) {
+            List<Tracker> trackers = this.tracked.get(tracker.id);
+            if (trackers == null) {
+                trackers = new ArrayList<Tracker>(1);
+                this.tracked.put(tracker.id, trackers);
+            }
+
+            trackers.add(tracker);
+        }
+
+        return view;
+    }
+
+    /**
+     * This method stops tracking the passed view and returns its pooled buffer.
+     */
+    private ByteBuffer untrack(ByteBuffer view) {
+        reportLeaks();
+
+        int id = System.identityHashCode(view);
+        synchronized (this.tracked) {
+            List<Tracker> trackers = this.tracked.get(id);
+            if (trackers != null) {
+                Iterator<Tracker> iterator = trackers.iterator();
+                while (iterator.hasNext()) {
+                    Tracker tracker = iterator.next();
+                    if (tracker.get() == view) {
+                        iterator.remove();
+                        if (trackers.isEmpty()) {
+                            this.tracked.remove(id);
+                        }
+
+                        tracker.clear();
+                        return tracker.buffer;
+                    }
+                }
+            }
+        }
+
+        throw new IllegalArgumentException("The buffer was already released or it wasn't acquired from this pool.");
+    }
+
+    /**
+     * This method reports the tracked views collected without being released, their buffers are 
+     * returned to the pool.
+     */
+    private void reportLeaks() {
+        Reference<? extends ByteBuffer> reference;
+        while ((reference = this.collected.poll()) != null) {
+            Tracker tracker = (Tracker) reference;
+            synchronized (this.tracked) {
+                List<Tracker> trackers = this.tracked.get(tracker.id);
+                if (trackers != null && trackers.remove(tracker) && trackers.isEmpty()) {
+                    this.tracked.remove(tracker.id);
+                }
+            }
+
+            this.leaks.incrementAndGet();
+            this.inUseBytes.addAndGet(-tracker.buffer.capacity());
+            LOGGER.log(Level.WARNING, "A buffer of " + tracker.buffer.capacity() 
+                        + " bytes was collected without being released, it was acquired at:", tracker.origin);
+
+            recycle(tracker.buffer);
+        }
+    }
+
+    /**
+     * This class represents the cache of a thread, it's only used by its owner.  The cached bytes are 
+     * counted within the pooled bytes until the owner terminates.
+     */
+    private static class Cache {
+        private final WeakReference<Thread> owner;
+        private final List<ArrayDeque<ByteBuffer>> classes = new ArrayList<ArrayDeque<ByteBuffer>>(CLASSES);
+        private volatile long bytes;
+
+        private Cache(Thread owner) {
+            this.owner = new WeakReference<Thread>(owner);
+            for (int i = 0; i < CLASSES; i++) {
+                this.classes.add(new ArrayDeque<ByteBuffer>(THREAD_CACHE_SIZE));
+            }
+        }
+
+        private ByteBuffer poll(int index) {
+            ByteBuffer buffer = this.classes.get(index).poll();
+            if (buffer != null) {
+                this.bytes -= buffer.capacity();
+            }
+
+            return buffer;
+        }
+
+        private boolean offer(int index, ByteBuffer buffer) {
+            ArrayDeque<ByteBuffer> local = this.classes.get(index);
+            if (local.size() >= THREAD_CACHE_SIZE || this.bytes + buffer.capacity() > THREAD_CACHE_BYTES) {
+                return false;
+            }
+
+            local.push(buffer);
+            this.bytes += buffer.capacity();
+            return true;
+        }
+    }
+
+    /**
+     * This class tracks a view returned in debug mode, the view is weakly referenced so it's enqueued 
+     * when it's collected.
+     */
+    private static class Tracker extends WeakReference<ByteBuffer> {
+        private final int id;
+        private final ByteBuffer buffer;
+        private final Throwable origin;
+
+        private Tracker(ByteBuffer view, ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue) {
+            super(view, queue);
+            this.id = System.identityHashCode(view);
+            this.buffer = buffer;
+            this.origin = new Throwable("Buffer acquisition");
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.universal.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class computes the checksums of the bytes read from the underlying stream.
+ */
+public class ChecksumInputStream extends FilterInputStream {
+    private final TransferChecksum checksum;
+
+    /**
+     * This constructor instantiates a new ChecksumInputStream.
+     * 
+     * @param in is the underlying stream.
+     * @param checksum to be updated with the read bytes.
+     */
+    public ChecksumInputStream(InputStream in, TransferChecksum checksum) {
+        super(in);
+        this.checksum = checksum;
+    }
+
+    /**
+     * Returns the checksums of the bytes read so far.
+     */
+    public TransferChecksum getChecksum() {
+        return this.checksum;
+    }
+
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = this.in.read(b, off, len);
+        if (read > 0) {
+            this.checksum.update(b, off, read);
+        }
+
+        return read;
+    }
+
+    /**
+     * The skipped bytes are read, otherwise they would be missing within the checksums.
+     */
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+
+        ByteBuffer pooled = BufferPool.heap().acquire((int) Math.min(n, FileUtil.BUFFER_SIZE));
+        try {
+            byte[] buffer = pooled.array();
+            long skipped = 0;
+            int read;
+            while (skipped < n && (read = read(buffer, 0, (int) Math.min(pooled.limit(), n - skipped))) != -1) {
+                skipped += read;
+            }
+
+            return skipped;
+        } finally {
+            BufferPool.heap().release(pooled);
+        }
+    }
+
+    public boolean markSupported() {
+        return false;
+    }
+}
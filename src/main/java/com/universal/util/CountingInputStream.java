@@ -0,0 +1,79 @@
+package com.universal.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class counts the bytes read from the underlying stream.
+ */
+public class CountingInputStream extends FilterInputStream {
+    private long count;
+
+    /**
+     * This constructor instantiates a new CountingInputStream.
+     * 
+     * @param in is the underlying stream.
+     */
+    public CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Returns the amount of bytes read so far.
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    public int read() throws IOException {
+        int read = this.in.read();
+        if (read != -1) {
+            this.count++;
+        }
+
+        return read;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = this.in.read(b, off, len);
+        if (read > 0) {
+            this.count += read;
+        }
+
+        return read;
+    }
+
+    public long skip(long n) throws IOException {
+        long skipped = this.in.skip(n);
+        this.count += skipped;
+        return skipped;
+    }
+
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,84 @@
+package com.universal.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class provides methods to create the executors used by the async operations.
+ */
+public class ExecutorUtil {
+
+    /**
+     * This method creates a new executor according to the passed kind.
+     *
+     * The available kinds are:
+     * 1. fixed: a pool with a fixed amount of threads.
+     * 2. cached: a pool that creates threads on demand and reuses idle ones.
+     * 3. virtual: a new virtual thread per task, if the running jvm doesn't support virtual threads
+     *    a cached pool will be used instead.
+     *
+     * @param kind of executor.
+     * @param threads amount of threads for the fixed executor.
+     * @param name prefix for the created threads.
+     * @returns a new executor.
+     */
+    public static ExecutorService newExecutor(String kind, int threads, String name) {
+        if ("virtual".equals(kind)) {
+            try {
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) method.invoke(null);
+            } catch (Exception ignore) {
+                /*
+                 * Virtual threads are not available in this jvm.
+                 */
+            }
+
+            return Executors.newCachedThreadPool(newThreadFactory(name));
+        } else if ("cached".equals(kind)) {
+            return Executors.newCachedThreadPool(newThreadFactory(name));
+        }
+
+        return Executors.newFixedThreadPool(threads, newThreadFactory(name));
+    }
+
+    /**
+     * This method creates a thread factory of daemon threads, so the pending tasks won't block the jvm's shutdown.
+     *
+     * @param name prefix for the created threads.
+     */
+    public static ThreadFactory newThreadFactory(final String name) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -1,7 +1,14 @@
 package com.universal.util;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Scanner;
 
 /**
@@ -30,6 +37,10 @@ import java.util.Scanner;
  * This class provides a suite of utility methods to read files.
  */
 public class FileUtil {
+    /**
+     * The size of the buffers used to copy streams.
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
 
     /**
      * This method opens de file and reads the text within it.
@@ -64,4 +75,161 @@ public class FileUtil {
 
         return path;
     }
+
+    /**
+     * This method copies the bytes from the input stream to the output stream until the end of the input.  
+     * Neither stream will be closed.  If both streams are file streams the bytes are transferred between their 
+     * channels, otherwise (or if the input keeps growing) the bytes are copied through a buffer of the heap pool.
+     * 
+     * @param input to be read.
+     * @param output to be written.
+     * @returns the amount of copied bytes.
+     */
+    public static long copy(InputStream input, OutputStream output) throws IOException {
+        long total = 0;
+        if (input instanceof FileInputStream && output instanceof FileOutputStream) {
+            total = transfer(((FileInputStream) input).getChannel(), ((FileOutputStream) output).getChannel());
+        }
+
+        ByteBuffer pooled = BufferPool.heap().acquire(BUFFER_SIZE);
+        try {
+            byte[] buffer = pooled.array();
+            int read;
+            while ((read = input.read(buffer, 0, BUFFER_SIZE)) != -1) {
+                output.write(buffer, 0, read);
+                total += read;
+            }
+
+            return total;
+        } finally {
+            BufferPool.heap().release(pooled);
+        }
+    }
+
+    /**
+     * This method copies the source file into the target file using a zero-copy transfer, the target will be replaced.
+     * 
+     * @param source file to be copied.
+     * @param target file to be written.
+     * @returns the amount of copied bytes.
+     */
+    public static long copy(File source, File target) throws IOException {
+        FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try {
+            FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, 
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                return transfer(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * This method transfers the remaining bytes of the source channel into the target channel starting at 
+     * their current positions, the operating system will move the bytes whenever is possible (i.e: sendfile).
+     * A source without a known size (i.e: a pipe or stdin) is read through a buffer of the direct pool until 
+     * its end.
+     * 
+     * @param source channel to be read.
+     * @param target channel to be written.
+     * @returns the amount of transferred bytes.
+     */
+    public static long transfer(FileChannel source, FileChannel target) throws IOException {
+        if (!hasSize(source)) {
+            ByteBuffer buffer = BufferPool.direct().acquire(BUFFER_SIZE);
+            try {
+                long total = 0;
+                int read;
+                while ((read = source.read(buffer)) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+
+                    buffer.clear();
+                    total += read;
+                }
+
+                return total;
+            } finally {
+                BufferPool.direct().release(buffer);
+            }
+        }
+
+        long position = source.position();
+        long size = source.size();
+        long total = 0;
+        while (position + total < size) {
+            long transferred = source.transferTo(position + total, size - position - total, target);
+            if (transferred <= 0) {
+                break;
+            }
+
+            total += transferred;
+        }
+
+        source.position(position + total);
+        return total;
+    }
+
+    /**
+     * This method returns whether the passed channel has a known size, the pipes and the special files 
+     * (i.e: stdin) report neither a size nor a position.
+     * 
+     * @param channel in context.
+     */
+    private static boolean hasSize(FileChannel channel) {
+        try {
+            return channel.size() > 0 && channel.position() >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * This method returns the name of the passed path, i.e: the last segment after the separator.
+     * 
+     * @param path in context.
+     */
+    public static String getName(String path) {
+        int index = lastSeparator(path);
+        return index == -1 ? path : path.substring(index + 1);
+    }
+
+    /**
+     * This method returns the parent of the passed path, if the path doesn't have a parent an empty string is returned.
+     * 
+     * @param path in context.
+     */
+    public static String getParent(String path) {
+        int index = lastSeparator(path);
+        return index == -1 ? "" : path.substring(0, index);
+    }
+
+    /**
+     * This method appends the passed name to the parent path using / as separator.
+     * 
+     * @param parent path, could be null or empty.
+     * @param name to be appended.
+     */
+    public static String join(String parent, String name) {
+        if (parent == null || "".equals(parent)) {
+            return name;
+        }
+
+        return parent.endsWith("/") || parent.endsWith(File.separator) ? parent + name : parent + "/" + name;
+    }
+
+    /**
+     * This method returns the index of the last separator (either / or the system file separator).
+     * 
+     * @param path in context.
+     */
+    private static int lastSeparator(String path) {
+        return Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package com.universal.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class computes the CRC of a file transferred in segments (i.e: the parts of a multipart upload), 
+ * every segment is checksummed by the thread that transfers it and the CRCs of the segments are combined 
+ * in order when the value is requested, so the file is not read again.
+ */
+public class SegmentChecksum {
+    private final Map<Long, long[]> segments = new TreeMap<Long, long[]>();
+
+    /**
+     * This method records the CRC of a transferred segment.
+     * 
+     * @param offset of the segment within the file.
+     * @param length of the segment.
+     * @param crc of the segment (see TransferChecksum.getCrc).
+     */
+    public synchronized void add(long offset, long length, long crc) {
+        this.segments.put(offset, new long[] {length, crc});
+    }
+
+    /**
+     * Returns the CRC of the file, i.e: crc32c:1a2b3c4d.
+     * 
+     * @param length of the file.
+     * @returns the CRC, null if the recorded segments don't cover the whole file.
+     */
+    public synchronized String getValue(long length) {
+        long crc = 0;
+        long position = 0;
+        for (Map.Entry<Long, long[]> segment : this.segments.entrySet()) {
+            if (segment.getKey() != position) {
+                return null;
+            }
+
+            crc = TransferChecksum.combine(crc, segment.getValue()[1], segment.getValue()[0]);
+            position += segment.getValue()[0];
+        }
+
+        return position == length ? TransferChecksum.format(crc) : null;
+    }
+}
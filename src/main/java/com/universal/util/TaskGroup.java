@@ -0,0 +1,166 @@
+package com.universal.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class runs a group of tasks through an executor with the participation of the calling thread.  The 
+ * tasks that weren't started by the executor when the caller joins the group are run by the caller, so a 
+ * caller that is a thread of the same executor (i.e: a parallel transfer within a batch) never waits for 
+ * a task queued behind itself.
+ */
+public class TaskGroup {
+    private final Executor executor;
+    private final Queue<Task> queued = new ConcurrentLinkedQueue<Task>();
+    private final Object lock = new Object();
+    private int pending;
+    private Throwable failure;
+
+    /**
+     * This constructor instantiates a new group of tasks run by the passed executor.
+     * 
+     * @param executor in context.
+     */
+    public TaskGroup(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * This method queues a task, the task is run either by a thread of the executor or by the caller of 
+     * help or join, whichever starts it first.
+     * 
+     * @param runnable to be run.
+     */
+    public void fork(Runnable runnable) {
+        final Task task = new Task(runnable);
+        synchronized (this.lock) {
+            this.pending++;
+        }
+
+        this.queued.add(task);
+        try {
+            this.executor.execute(() -> run(task));
+        } catch (RejectedExecutionException ignore) {
+            /*
+             * The executor was shutdown, the task will be run by the caller.
+             */
+        }
+    }
+
+    /**
+     * This method runs a queued task within the calling thread.
+     * 
+     * @returns false if there wasn't a queued task.
+     */
+    public boolean help() {
+        Task task;
+        while ((task = this.queued.poll()) != null) {
+            if (run(task)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * This method runs the queued tasks within the calling thread and waits for the tasks started by the 
+     * executor.  The first error thrown by a task is thrown again.  An interruption doesn't stop the wait, 
+     * the interrupted status is restored before returning.
+     */
+    public void join() {
+        while (help()) {}
+
+        boolean interrupted = false;
+        Throwable error;
+        synchronized (this.lock) {
+            while (this.pending > 0) {
+                try {
+                    this.lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            error = this.failure;
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    /**
+     * This method runs the passed task if it wasn't started yet.
+     * 
+     * @returns true if the task was run by the calling thread.
+     */
+    private boolean run(Task task) {
+        if (!task.started.compareAndSet(false, true)) {
+            return false;
+        }
+
+        Throwable error = null;
+        try {
+            task.runnable.run();
+        } catch (Throwable e) {
+            error = e;
+        } finally {
+            synchronized (this.lock) {
+                if (error != null && this.failure == null) {
+                    this.failure = error;
+                }
+
+                this.pending--;
+                this.lock.notifyAll();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * This class represents a task of the group.
+     */
+    private static class Task {
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final Runnable runnable;
+
+        private Task(Runnable runnable) {
+            this.runnable = runnable;
+        }
+    }
+}
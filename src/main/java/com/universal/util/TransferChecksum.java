@@ -0,0 +1,284 @@
+package com.universal.util;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2015 Dynamicloud
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * 
+ * This class computes the checksums of a transfer while the bytes are copied, the CRC32C is always 
+ * computed and the SHA-256 is optional.  The CRC32C (and the update of a checksum from a buffer) is loaded 
+ * by reflection because it's only available since Java 9, the CRC32 is used with older runtimes.
+ * 
+ * The values have the form algorithm:hex (i.e: crc32c:1a2b3c4d), the same form used by the providers 
+ * to report the hash of a file (see UniversalFileStat.getHash).
+ */
+public class TransferChecksum {
+    private static final Class<?> CRC32C = lookup();
+    private static final Method UPDATE_BUFFER = bufferUpdate();
+    private static final long POLYNOMIAL = CRC32C == null ? 0xedb88320L : 0x82f63b78L;
+
+    private final Checksum crc;
+    private final MessageDigest sha256;
+    private String sha256Value;
+    private long bytes;
+
+    /**
+     * This constructor instantiates a new TransferChecksum.
+     * 
+     * @param sha256 indicates if the SHA-256 is computed too.
+     */
+    public TransferChecksum(boolean sha256) {
+        this.crc = newCrc();
+        try {
+            this.sha256 = sha256 ? MessageDigest.getInstance("SHA-256") : null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the name of the CRC algorithm of this runtime, either crc32c or crc32.
+     */
+    public static String getAlgorithm() {
+        return CRC32C == null ? "crc32" : "crc32c";
+    }
+
+    /**
+     * This method updates the checksums with the passed bytes.
+     */
+    public void update(byte[] b, int off, int len) {
+        this.crc.update(b, off, len);
+        if (this.sha256 != null) {
+            this.sha256.update(b, off, len);
+        }
+
+        this.bytes += len;
+    }
+
+    /**
+     * This method updates the checksums with the remaining bytes of the passed buffer, the position of the 
+     * buffer is moved to its limit.  The direct buffers are read in place whenever the runtime allows it.
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+
+        if (this.crc instanceof CRC32 || UPDATE_BUFFER != null) {
+            int length = buffer.remaining();
+            if (this.sha256 != null) {
+                this.sha256.update(buffer.duplicate());
+            }
+
+            if (this.crc instanceof CRC32) {
+                ((CRC32) this.crc).update(buffer);
+            } else {
+                try {
+                    UPDATE_BUFFER.invoke(this.crc, buffer);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e.getMessage());
+                }
+            }
+
+            this.bytes += length;
+            return;
+        }
+
+        ByteBuffer pooled = BufferPool.heap().acquire(FileUtil.BUFFER_SIZE);
+        try {
+            byte[] chunk = pooled.array();
+            while (buffer.hasRemaining()) {
+                int n = Math.min(FileUtil.BUFFER_SIZE, buffer.remaining());
+                buffer.get(chunk, 0, n);
+                update(chunk, 0, n);
+            }
+        } finally {
+            BufferPool.heap().release(pooled);
+        }
+    }
+
+    /**
+     * Returns the amount of bytes computed so far.
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Returns the CRC of the computed bytes, i.e: crc32c:1a2b3c4d.
+     */
+    public String getValue() {
+        return format(this.crc.getValue());
+    }
+
+    /**
+     * Returns the CRC of the computed bytes as a number.
+     */
+    public long getCrc() {
+        return this.crc.getValue();
+    }
+
+    /**
+     * This method returns the passed CRC with the form algorithm:hex, i.e: crc32c:1a2b3c4d.
+     */
+    public static String format(long crc) {
+        return getAlgorithm() + ":" + String.format("%08x", crc);
+    }
+
+    /**
+     * This method parses a CRC with the form algorithm:hex.
+     * 
+     * @returns the CRC, -1 if the value doesn't have the algorithm of this runtime.
+     */
+    public static long parse(String value) {
+        String prefix = getAlgorithm() + ":";
+        if (value == null || !value.startsWith(prefix)) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(value.substring(prefix.length()), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * This method combines the CRCs of two consecutive blocks of bytes into the CRC of the whole block, 
+     * so the CRC of a file can be computed from the CRCs of its parts (zlib's crc32_combine).
+     * 
+     * @param first is the CRC of the first block.
+     * @param second is the CRC of the second block.
+     * @param length of the second block.
+     */
+    public static long combine(long first, long second, long length) {
+        if (length <= 0) {
+            return first;
+        }
+
+        /*
+         * The first CRC is moved through the length of the second block by the operator of one zero bit 
+         * squared repeatedly (2, 4, 8... zero bits), applying the operators of the bits set within the length.
+         */
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        odd[0] = POLYNOMIAL;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+
+        square(even, odd);
+        square(odd, even);
+
+        long crc = first;
+        do {
+            square(even, odd);
+            if ((length & 1) != 0) {
+                crc = times(even, crc);
+            }
+
+            length >>= 1;
+            if (length == 0) {
+                break;
+            }
+
+            square(odd, even);
+            if ((length & 1) != 0) {
+                crc = times(odd, crc);
+            }
+
+            length >>= 1;
+        } while (length != 0);
+
+        return crc ^ second;
+    }
+
+    /**
+     * Returns the SHA-256 of the computed bytes as hexadecimal, null if the SHA-256 is not computed.  
+     * After this call the checksums must not be updated.
+     */
+    public synchronized String getSha256() {
+        if (this.sha256 != null && this.sha256Value == null) {
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : this.sha256.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+
+            this.sha256Value = hex.toString();
+        }
+
+        return this.sha256Value;
+    }
+
+    private static long times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+
+        return sum;
+    }
+
+    private static void square(long[] target, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            target[n] = times(matrix, matrix[n]);
+        }
+    }
+
+    private static Checksum newCrc() {
+        if (CRC32C != null) {
+            try {
+                return (Checksum) CRC32C.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException ignore) {}
+        }
+
+        return new CRC32();
+    }
+
+    private static Method bufferUpdate() {
+        try {
+            return Checksum.class.getMethod("update", ByteBuffer.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Class<?> lookup() {
+        try {
+            return Class.forName("java.util.zip.CRC32C");
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+}